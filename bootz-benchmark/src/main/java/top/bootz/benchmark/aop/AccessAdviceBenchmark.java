@@ -0,0 +1,98 @@
+package top.bootz.benchmark.aop;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import top.bootz.core.base.aop.BaseAccessHandlerAdvice;
+import top.bootz.core.log.AccessLog;
+import top.bootz.core.log.AccessLogPipeline;
+import top.bootz.core.log.AccessLogPipeline.OverloadPolicy;
+import top.bootz.core.log.AccessLogService;
+
+/**
+ * {@link BaseAccessHandlerAdvice}每次调用的开销
+ * <p>
+ * 用AspectJProxyFactory把切面织入{@link SampleController}，与直接调用目标方法的耗时之差即为切面的开销。
+ * 访问日志交给一个不写mongodb的管道，只测量请求线程上的工作：读取方法元数据、采集参数和返回值、提交日志。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessAdviceBenchmark {
+
+    private SampleController target;
+
+    private SampleController advised;
+
+    private AccessLogPipeline pipeline;
+
+    @Setup
+    public void setUp() {
+        AccessLogService accessLogService = new AccessLogService();
+        pipeline = new AccessLogPipeline(accessLogService, 1 << 16, 512, 100L, OverloadPolicy.DROP, 1D) {
+            @Override
+            protected void write(List<AccessLog> batch) {
+                // 丢弃，不访问mongodb
+            }
+        };
+        pipeline.start();
+        BaseAccessHandlerAdvice advice = new BaseAccessHandlerAdvice();
+        ReflectionTestUtils.setField(advice, "accessLogService", accessLogService);
+        ReflectionTestUtils.setField(advice, "accessLogPipeline", pipeline);
+
+        target = new SampleController();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(advice);
+        advised = factory.getProxy();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/sample/1");
+        request.setRemoteAddr("127.0.0.1");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        pipeline.stop();
+    }
+
+    @Benchmark
+    public Map<String, Object> direct() {
+        return target.find(1L, "bootz");
+    }
+
+    @Benchmark
+    public Map<String, Object> advised() {
+        return advised.find(1L, "bootz");
+    }
+
+    @Benchmark
+    public void advisedVoid() {
+        advised.touch(1L);
+    }
+
+}
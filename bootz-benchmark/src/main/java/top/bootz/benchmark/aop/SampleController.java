@@ -0,0 +1,24 @@
+package top.bootz.benchmark.aop;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 供{@link AccessAdviceBenchmark}使用的controller，类名以Controller结尾，会被访问日志切面拦截
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+public class SampleController {
+
+    public Map<String, Object> find(Long id, String keyword) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", id);
+        result.put("keyword", keyword);
+        return result;
+    }
+
+    public void touch(Long id) {
+        // do nothing
+    }
+
+}
@@ -0,0 +1,97 @@
+package top.bootz.benchmark.queue;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.bootz.commons.queue.MpscChunkedQueue;
+
+/**
+ * 多个生产者竞争入队时{@link MpscChunkedQueue}与ConcurrentLinkedQueue的吞吐量对比
+ * <p>
+ * 与HashedWheelTimer的用法一致：4个生产者逐个入队，1个消费者批量取出；入队前在计数器上占位，超过上限时拒绝，
+ * 对应maxPendingTimeouts的背压，避免生产者快于消费者时队列无限增长。应比较offer的得分，
+ * drain的得分是批量取出的次数。生产者数可用 -tg 8,1 之类的参数调整。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MpscQueueBenchmark {
+
+    private static final long MAX_PENDING = 1 << 20;
+
+    private static final int DRAIN_LIMIT = 1024;
+
+    private static final Object ITEM = new Object();
+
+    @Param({ "mpsc", "clq" })
+    private String queue;
+
+    private final AtomicLong pending = new AtomicLong();
+
+    private MpscChunkedQueue<Object> mpscQueue;
+
+    private Queue<Object> linkedQueue;
+
+    @Setup
+    public void setUp() {
+        mpscQueue = new MpscChunkedQueue<>();
+        linkedQueue = new ConcurrentLinkedQueue<>();
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(4)
+    public boolean offer() {
+        if (pending.incrementAndGet() > MAX_PENDING) {
+            pending.decrementAndGet();
+            return false;
+        }
+        if ("mpsc".equals(queue)) {
+            mpscQueue.offer(ITEM);
+        } else {
+            linkedQueue.offer(ITEM);
+        }
+        return true;
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public int drain() {
+        int drained = 0;
+        if ("mpsc".equals(queue)) {
+            drained = mpscQueue.drain(item -> {
+            }, DRAIN_LIMIT);
+        } else {
+            while (drained < DRAIN_LIMIT && linkedQueue.poll() != null) {
+                drained++;
+            }
+        }
+        if (drained > 0) {
+            pending.addAndGet(-drained);
+        }
+        return drained;
+    }
+
+}
@@ -0,0 +1,80 @@
+package top.bootz.benchmark.snowflake;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.bootz.commons.snowflake.AtomicIdGenerator;
+import top.bootz.commons.snowflake.IdGenerator;
+
+/**
+ * 比较加锁的{@link IdGenerator}与无锁的{@link AtomicIdGenerator}在1、8、32个线程下的发号吞吐量
+ * <p>
+ * 两者每个节点每毫秒最多4096个ID，吞吐量接近4096 ops/ms时瓶颈已经是位布局而不是实现，
+ * 此时应比较等待下一毫秒的开销(见getWaitForNextMillisNanos)，而不是继续增加线程。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private static final int BATCH = 64;
+
+    @Param({ "synchronized", "lockFree" })
+    private String generator;
+
+    private IdGenerator idGenerator;
+
+    @Setup
+    public void setUp() {
+        idGenerator = "lockFree".equals(generator) ? new AtomicIdGenerator() : new IdGenerator();
+        idGenerator.setWorkerId(1L);
+        idGenerator.setDataCenterId(1L);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long threads01() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long threads08() {
+        return idGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public long threads32() {
+        return idGenerator.nextId();
+    }
+
+    /**
+     * 8个线程每次批量取64个ID，结果按ID个数计
+     */
+    @Benchmark
+    @Threads(8)
+    @OperationsPerInvocation(BATCH)
+    public long[] batchThreads08() {
+        return idGenerator.nextIds(BATCH);
+    }
+
+}
@@ -0,0 +1,87 @@
+package top.bootz.benchmark.snowflake;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.bootz.commons.snowflake.IdGenerator;
+import top.bootz.commons.snowflake.SystemClock;
+
+/**
+ * 比较{@link SystemClock}粗粒度时钟与System.currentTimeMillis()/System.nanoTime()的单次读取开销，
+ * 用于判断何时值得开启{@link IdGenerator#setClock(boolean)}
+ * <p>
+ * 单线程和8个线程各测一次：8个线程同时读取缓存值时，后台线程每个精度周期的写入会使各线程的缓存行失效，
+ * 这部分开销只有多线程下才能看出来。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SystemClockBenchmark {
+
+    /**
+     * 粗粒度时钟的刷新精度(毫秒)
+     */
+    @Param({ "1", "10" })
+    private long resolutionMillis;
+
+    @Setup
+    public void setUp() {
+        SystemClock.setResolution(resolutionMillis, TimeUnit.MILLISECONDS);
+        // 提前启动后台线程，避免把懒加载计入第一轮预热
+        SystemClock.coarseMillis();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long coarseMillis() {
+        return SystemClock.coarseMillis();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long coarseNanos() {
+        return SystemClock.coarseNanos();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long currentTimeMillisThreads08() {
+        return System.currentTimeMillis();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long coarseMillisThreads08() {
+        return SystemClock.coarseMillis();
+    }
+
+}
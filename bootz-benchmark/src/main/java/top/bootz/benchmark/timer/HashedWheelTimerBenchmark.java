@@ -0,0 +1,122 @@
+package top.bootz.benchmark.timer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.TimerTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import top.bootz.commons.timer.HashedWheelTimer;
+
+/**
+ * 比较单层时间轮与多层时间轮在100万个待执行任务(延迟均匀分布在24小时内)下每格的开销
+ * <p>
+ * worker线程在后台按格转动，无法由基准方法直接驱动，因此每次调用等待{@link #WINDOW_MILLIS}毫秒，
+ * 用ThreadMXBean统计这段时间内worker线程消耗的CPU时间，按经过的格数折算为每格的CPU纳秒数(辅助计数器workerCpuNanosPerTick)。
+ * 单层时间轮每格都要遍历当前格中的全部远期任务(约100万/512个)，多层时间轮每格只处理真正到期的任务。
+ * <p>
+ * 使用默认的100ms一格、512格。worker等待下一格时最后不足10ms的部分是忙等，这部分CPU时间两种模式相同，应比较两者的差值。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class HashedWheelTimerBenchmark {
+
+    private static final int PENDING = 1000000;
+
+    private static final long SPREAD_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private static final long TICK_MILLIS = 100L;
+
+    private static final long WINDOW_MILLIS = 10000L;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({ "false", "true" })
+    private boolean hierarchical;
+
+    private HashedWheelTimer timer;
+
+    private volatile Thread workerThread;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, "benchmark-wheel-timer");
+            thread.setDaemon(true);
+            workerThread = thread;
+            return thread;
+        }, TICK_MILLIS, TimeUnit.MILLISECONDS, 512, -1, hierarchical);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < PENDING; i++) {
+            // 最短1小时，保证测量期间不会有任务到期执行
+            timer.newTimeout(new NoopTask(), TimeUnit.HOURS.toMillis(1) + random.nextLong(SPREAD_MILLIS),
+                    TimeUnit.MILLISECONDS);
+        }
+        // worker每格最多转移100000个任务，等全部进入时间轮后再开始测量
+        while (timer.queuedTimeouts() > 0) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        timer.stop();
+    }
+
+    /**
+     * worker线程CPU时间，按每次调用计
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WorkerCpu {
+
+        public double workerCpuNanosPerTick;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            workerCpuNanosPerTick = 0;
+        }
+
+    }
+
+    @Benchmark
+    public void tick(WorkerCpu cpu) throws InterruptedException {
+        long threadId = workerThread.getId();
+        long cpuBegin = THREADS.getThreadCpuTime(threadId);
+        long begin = System.nanoTime();
+        Thread.sleep(WINDOW_MILLIS);
+        long ticks = (System.nanoTime() - begin) / TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+        cpu.workerCpuNanosPerTick = (double) (THREADS.getThreadCpuTime(threadId) - cpuBegin) / ticks;
+    }
+
+    private static final class NoopTask extends TimerTask {
+
+        @Override
+        public void run() {
+            // do nothing
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package top.bootz.benchmark.token;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * 以密码模式签发的token为样本
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+final class TokenSamples {
+
+    private TokenSamples() {
+    }
+
+    static DefaultOAuth2AccessToken accessToken(OAuth2RefreshToken refreshToken) {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setExpiration(new Date(System.currentTimeMillis() + 7200 * 1000L));
+        token.setRefreshToken(refreshToken);
+        token.setScope(new HashSet<>(Arrays.asList("read", "write")));
+        return token;
+    }
+
+    static OAuth2RefreshToken refreshToken() {
+        return new DefaultExpiringOAuth2RefreshToken(UUID.randomUUID().toString(),
+                new Date(System.currentTimeMillis() + 30 * 24 * 3600 * 1000L));
+    }
+
+    static OAuth2Authentication authentication(String username) {
+        List<GrantedAuthority> authorities = Arrays.asList(new SimpleGrantedAuthority("ROLE_USER"),
+                new SimpleGrantedAuthority("ROLE_ADMIN"));
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("grant_type", "password");
+        parameters.put("scope", "read write");
+        parameters.put("username", username);
+        parameters.put("client_id", "client1");
+        OAuth2Request request = new OAuth2Request(parameters, "client1",
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_CLIENT")), true,
+                new HashSet<>(Arrays.asList("read", "write")), new HashSet<>(Arrays.asList("resource1", "resource2")),
+                null, new HashSet<>(), new LinkedHashMap<String, Serializable>());
+        User principal = new User(username, "", true, true, true, true, authorities);
+        principal.eraseCredentials();
+        UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken(principal, null,
+                authorities);
+        user.setDetails(parameters);
+        return new OAuth2Authentication(request, user);
+    }
+
+}
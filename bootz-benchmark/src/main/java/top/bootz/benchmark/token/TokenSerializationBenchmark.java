@@ -0,0 +1,81 @@
+package top.bootz.benchmark.token;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.redis.JdkSerializationStrategy;
+import org.springframework.security.oauth2.provider.token.store.redis.RedisTokenStoreSerializationStrategy;
+
+import top.bootz.security.token.serialization.CompactSerializationStrategy;
+
+/**
+ * 比较JDK序列化与{@link CompactSerializationStrategy}序列化和反序列化token的耗时
+ * <p>
+ * 序列化后的字节数与耗时无关，不在这里统计：同一个样本JDK格式的access token为779字节、authentication为2338字节，
+ * 紧凑格式分别为111和288字节。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenSerializationBenchmark {
+
+    @Param({ "JDK", "COMPACT" })
+    private String serialization;
+
+    private RedisTokenStoreSerializationStrategy strategy;
+
+    private OAuth2AccessToken accessToken;
+
+    private OAuth2Authentication authentication;
+
+    private byte[] serializedAccessToken;
+
+    private byte[] serializedAuthentication;
+
+    @Setup
+    public void setUp() {
+        strategy = "JDK".equals(serialization) ? new JdkSerializationStrategy() : new CompactSerializationStrategy();
+        accessToken = TokenSamples.accessToken(TokenSamples.refreshToken());
+        authentication = TokenSamples.authentication("zhangsan");
+        serializedAccessToken = strategy.serialize(accessToken);
+        serializedAuthentication = strategy.serialize(authentication);
+    }
+
+    @Benchmark
+    public byte[] serializeAccessToken() {
+        return strategy.serialize(accessToken);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken deserializeAccessToken() {
+        return strategy.deserialize(serializedAccessToken, OAuth2AccessToken.class);
+    }
+
+    @Benchmark
+    public byte[] serializeAuthentication() {
+        return strategy.serialize(authentication);
+    }
+
+    @Benchmark
+    public OAuth2Authentication deserializeAuthentication() {
+        return strategy.deserialize(serializedAuthentication, OAuth2Authentication.class);
+    }
+
+}
@@ -0,0 +1,171 @@
+package top.bootz.benchmark.token;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import top.bootz.security.token.CustomRedisTokenStore;
+import top.bootz.security.token.serialization.CompactSerializationStrategy;
+
+/**
+ * 比较lua脚本和pipeline两种方式下{@link CustomRedisTokenStore}签发、刷新和删除token的吞吐量
+ * <p>
+ * 签发与DefaultTokenServices一致：存储refresh token再存储access token；刷新为按refresh token删除旧的access token
+ * 再存储新的access token，每个线程刷新自己的token，不会互相竞争；issueAndRemove签发后立即删除，减去issue的耗时即为删除的耗时。
+ * <p>
+ * 需要一个单机redis，用 -p host=... -p port=... 指定，默认localhost:6379，线程数可用 -t 调整。
+ * 使用的键以benchmark:开头，每轮结束后删除本轮生成的token。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class TokenStoreBenchmark {
+
+    private static final int USERS = 1000;
+
+    @Param("localhost")
+    private String host;
+
+    @Param("6379")
+    private int port;
+
+    @Param({ "script", "pipeline" })
+    private String mode;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private CustomRedisTokenStore tokenStore;
+
+    private OAuth2Authentication[] authentications;
+
+    private final AtomicInteger threadIndex = new AtomicInteger();
+
+    /**
+     * 本轮签发的token和各线程正在刷新的token，每轮结束后删除
+     */
+    private final Queue<OAuth2AccessToken> issued = new ConcurrentLinkedQueue<>();
+
+    private final Queue<ThreadTokens> threadTokens = new ConcurrentLinkedQueue<>();
+
+    @Setup
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(host, port);
+        connectionFactory.afterPropertiesSet();
+        tokenStore = new CustomRedisTokenStore(connectionFactory);
+        tokenStore.setSerializationStrategy(new CompactSerializationStrategy());
+        tokenStore.setPrefix("benchmark:");
+        tokenStore.setUseScripts("script".equals(mode));
+        authentications = new OAuth2Authentication[USERS];
+        for (int i = 0; i < USERS; i++) {
+            authentications[i] = TokenSamples.authentication("user" + i);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeTokens() {
+        OAuth2AccessToken token;
+        while ((token = issued.poll()) != null) {
+            remove(token);
+        }
+        for (ThreadTokens tokens : threadTokens) {
+            if (tokens.current != null) {
+                remove(tokens.current);
+                tokens.current = null;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    /**
+     * 每个线程以不同的用户签发token
+     */
+    @State(Scope.Thread)
+    public static class ThreadTokens {
+
+        private OAuth2Authentication authentication;
+
+        /**
+         * refresh中不断刷新的token
+         */
+        private OAuth2AccessToken current;
+
+    }
+
+    @Benchmark
+    public OAuth2AccessToken issue(ThreadTokens tokens) {
+        OAuth2AccessToken accessToken = issue(authentication(tokens));
+        issued.add(accessToken);
+        return accessToken;
+    }
+
+    @Benchmark
+    public OAuth2AccessToken refresh(ThreadTokens tokens) {
+        OAuth2Authentication authentication = authentication(tokens);
+        if (tokens.current == null) {
+            tokens.current = issue(authentication);
+        }
+        OAuth2RefreshToken refreshToken = tokens.current.getRefreshToken();
+        tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+        DefaultOAuth2AccessToken accessToken = TokenSamples.accessToken(refreshToken);
+        tokenStore.storeAccessToken(accessToken, authentication);
+        tokens.current = accessToken;
+        return accessToken;
+    }
+
+    @Benchmark
+    public void issueAndRemove(ThreadTokens tokens) {
+        remove(issue(authentication(tokens)));
+    }
+
+    private OAuth2Authentication authentication(ThreadTokens tokens) {
+        if (tokens.authentication == null) {
+            tokens.authentication = authentications[threadIndex.getAndIncrement() % USERS];
+            threadTokens.add(tokens);
+        }
+        return tokens.authentication;
+    }
+
+    private OAuth2AccessToken issue(OAuth2Authentication authentication) {
+        DefaultOAuth2AccessToken accessToken = TokenSamples.accessToken(TokenSamples.refreshToken());
+        tokenStore.storeRefreshToken(accessToken.getRefreshToken(), authentication);
+        tokenStore.storeAccessToken(accessToken, authentication);
+        return accessToken;
+    }
+
+    private void remove(OAuth2AccessToken accessToken) {
+        tokenStore.removeAccessToken(accessToken);
+        tokenStore.removeRefreshToken(accessToken.getRefreshToken());
+    }
+
+}
@@ -12,6 +12,7 @@ import org.apache.commons.lang3.StringUtils;
 
 import top.bootz.commons.constant.PatternConstants;
 import top.bootz.commons.exception.BaseRuntimeException;
+import top.bootz.commons.snowflake.SystemClock;
 
 /**
  * 日期处理相关的工具方法
@@ -840,7 +841,7 @@ public final class DateHelper {
      * @return
      */
     public static Date now() {
-        return new Date();
+        return new Date(SystemClock.now());
     }
 
     /**
@@ -1,6 +1,7 @@
 package top.bootz.commons.helper;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -19,6 +20,11 @@ public final class JsonHelper {
 
     public static final String DATE_FORMAT_DATETIME = "yyyy-MM-dd HH:mm:ss";
 
+    /**
+     * 超出字节上限被截断时追加的后缀
+     */
+    public static final String TRUNCATED_SUFFIX = "...[truncated]";
+
     private static ObjectMapper objectMapper = new ObjectMapper();
 
     private JsonHelper() {
@@ -60,6 +66,50 @@ public final class JsonHelper {
         }
     }
 
+    /**
+     * 序列化为json字符串，输出超过maxBytes(按UTF-8计算)时立即中止序列化，返回已输出的前缀并追加{@link #TRUNCATED_SUFFIX}，
+     * 不会先生成完整的字符串再截取
+     *
+     * @param maxBytes
+     *            字节上限，小于0表示不限制
+     */
+    public static <T> String toJSON(T t, int maxBytes) {
+        if (maxBytes < 0) {
+            return toJSON(t);
+        }
+        BoundedWriter writer = new BoundedWriter(maxBytes);
+        try {
+            objectMapper.writeValue(writer, t);
+        } catch (IOException e) {
+            // 超出上限时的异常可能被jackson包装过，以writer的状态为准
+            if (!writer.exceeded) {
+                throw new BaseRuntimeException(e.getMessage(), e);
+            }
+        }
+        return writer.exceeded ? writer.toString() + TRUNCATED_SUFFIX : writer.toString();
+    }
+
+    /**
+     * 按UTF-8字节数截断字符串
+     *
+     * @param maxBytes
+     *            字节上限，小于0表示不限制
+     */
+    public static String truncate(String content, int maxBytes) {
+        if (content == null || maxBytes < 0 || content.length() * 3L <= maxBytes) {
+            return content;
+        }
+        int bytes = 0;
+        for (int i = 0; i < content.length(); i++) {
+            bytes += BoundedWriter.utf8Length(content.charAt(i));
+            if (bytes > maxBytes) {
+                int end = i > 0 && Character.isHighSurrogate(content.charAt(i - 1)) ? i - 1 : i;
+                return content.substring(0, end) + TRUNCATED_SUFFIX;
+            }
+        }
+        return content;
+    }
+
     public static boolean isJsonStr(String content) {
         boolean isJsonStr;
         try {
@@ -88,4 +138,90 @@ public final class JsonHelper {
         return JSONArray.parseArray(payload);
     }
 
+    /**
+     * 带字节上限的Writer，写满后抛出异常中止序列化
+     */
+    private static final class BoundedWriter extends Writer {
+
+        private static final IOException BUDGET_EXCEEDED = new IOException("json byte budget exceeded") {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public synchronized Throwable fillInStackTrace() {
+                return this;
+            }
+        };
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        private int remaining;
+
+        private boolean exceeded;
+
+        BoundedWriter(int maxBytes) {
+            this.remaining = maxBytes;
+        }
+
+        static int utf8Length(char c) {
+            if (c < 0x80) {
+                return 1;
+            }
+            // 代理对的两个char合计4个字节
+            return c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                writeChar(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                writeChar(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            writeChar((char) c);
+        }
+
+        private void writeChar(char c) throws IOException {
+            if (exceeded) {
+                throw BUDGET_EXCEEDED;
+            }
+            int size = utf8Length(c);
+            if (size > remaining) {
+                exceeded = true;
+                int length = buffer.length();
+                if (length > 0 && Character.isHighSurrogate(buffer.charAt(length - 1))) {
+                    // 不留下半个代理对
+                    buffer.setLength(length - 1);
+                }
+                throw BUDGET_EXCEEDED;
+            }
+            remaining -= size;
+            buffer.append(c);
+        }
+
+        @Override
+        public void flush() {
+            // nothing to flush
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+
+        @Override
+        public String toString() {
+            return buffer.toString();
+        }
+    }
+
 }
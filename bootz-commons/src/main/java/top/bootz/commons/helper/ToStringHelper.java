@@ -50,6 +50,26 @@ public final class ToStringHelper {
         return jsonObj.toString();
     }
 
+    /**
+     * 输出Json风格的字符串，超过字节上限时在序列化过程中截断
+     *
+     * @param obj
+     *            转换实体
+     * @param wrapClassName
+     *            是否在外侧包裹类名
+     * @param maxBytes
+     *            json内容的字节上限，小于0表示不限制
+     * @return json字符串
+     */
+    public static String toJSON(Object obj, boolean wrapClassName, int maxBytes) {
+        if (!wrapClassName) {
+            return JsonHelper.toJSON(obj, maxBytes);
+        }
+        JSONObject jsonObj = new JSONObject();
+        jsonObj.put(obj.getClass().getSimpleName(), JsonHelper.toJSON(obj, maxBytes));
+        return jsonObj.toString();
+    }
+
     private static String arrayToString(Object obj, ToStringStyle style) {
         StringBuilder sb = new StringBuilder();
         int length = Array.getLength(obj);
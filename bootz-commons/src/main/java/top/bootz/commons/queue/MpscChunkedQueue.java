@@ -0,0 +1,239 @@
+package top.bootz.commons.queue;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 多生产者单消费者(MPSC)的分块数组队列
+ * <p>
+ * 元素存放在固定大小的数组块中，块与块之间单向链接。生产者通过一次getAndIncrement(批量时为getAndAdd)领取下标后直接写入对应槽位，
+ * 不像ConcurrentLinkedQueue那样每个元素都要分配一个链表节点，只有在写满一个块时才会分配下一个块；消费者读完一个块后该块即可被回收，
+ * 因此内存占用只与队列中的元素数成正比。
+ * <p>
+ * 队列本身不限容量，容量控制由调用方在入队前完成(例如HashedWheelTimer的maxPendingTimeouts)。
+ * <p>
+ * 只允许一个线程调用{@link #poll()}和{@link #drain(Consumer, int)}；生产者领取下标与写入槽位之间存在短暂的窗口，
+ * 此时消费者会认为队列暂时为空，下次再读即可，不会丢失元素。
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+public class MpscChunkedQueue<E> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscChunkedQueue, Chunk> PRODUCER_CHUNK_UPDATER = AtomicReferenceFieldUpdater
+            .newUpdater(MpscChunkedQueue.class, Chunk.class, "producerChunk");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<MpscChunkedQueue> CONSUMER_INDEX_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(MpscChunkedQueue.class, "consumerIndex");
+
+    private final int chunkSize;
+
+    /** 下一个可领取的下标，单独的对象，避免与消费者下标伪共享 */
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    /** 生产者定位块的起点，只会向后移动，且总不超过任何后续领取到的下标所在的块 */
+    private volatile Chunk<E> producerChunk;
+
+    /** 下一个要读取的下标，只由消费者线程写入 */
+    private volatile long consumerIndex;
+
+    /** 消费者当前所在的块，只由消费者线程访问 */
+    private Chunk<E> consumerChunk;
+
+    public MpscChunkedQueue() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize
+     *            每个块的槽位数，会被规整为2的幂次
+     */
+    public MpscChunkedQueue(int chunkSize) {
+        Preconditions.checkArgument(chunkSize > 0 && chunkSize <= 1 << 30,
+                "chunkSize must be greater than 0 and not greater than 2^30");
+        int normalized = 1;
+        while (normalized < chunkSize) {
+            normalized <<= 1;
+        }
+        this.chunkSize = normalized;
+        Chunk<E> first = new Chunk<>(0L, normalized);
+        this.producerChunk = first;
+        this.consumerChunk = first;
+    }
+
+    /**
+     * 入队，可由任意线程调用
+     */
+    public void offer(E e) {
+        Preconditions.checkNotNull(e, "element must not be null");
+        // 必须先读块再领下标，保证读到的块不会越过自己领到的下标
+        Chunk<E> chunk = producerChunk;
+        long index = producerIndex.getAndIncrement();
+        chunk = chunkOf(chunk, index);
+        chunk.slots.lazySet((int) (index - chunk.base), e);
+        advanceProducerChunk(chunk);
+    }
+
+    /**
+     * 批量入队，整批只领取一次下标，可由任意线程调用
+     */
+    public void offerAll(Collection<? extends E> elements) {
+        // 先拷贝为数组，保证写入的元素个数与领取的下标个数严格一致，否则消费者会卡在永远不会被写入的槽位上
+        Object[] array = elements.toArray();
+        if (array.length == 0) {
+            return;
+        }
+        for (Object e : array) {
+            Preconditions.checkNotNull(e, "element must not be null");
+        }
+        Chunk<E> chunk = producerChunk;
+        long index = producerIndex.getAndAdd(array.length);
+        for (Object e : array) {
+            chunk = chunkOf(chunk, index);
+            chunk.slots.lazySet((int) (index - chunk.base), e);
+            index++;
+        }
+        advanceProducerChunk(chunk);
+    }
+
+    /**
+     * 出队，只能由消费者线程调用
+     *
+     * @return 队首元素，队列为空(或队首元素尚未写入完成)时返回null
+     */
+    public E poll() {
+        Chunk<E> chunk = consumerChunk;
+        long index = consumerIndex;
+        int offset = (int) (index - chunk.base);
+        if (offset == chunkSize) {
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                return null;
+            }
+            consumerChunk = chunk = next;
+            offset = 0;
+        }
+        @SuppressWarnings("unchecked")
+        E e = (E) chunk.slots.get(offset);
+        if (e == null) {
+            return null;
+        }
+        chunk.slots.lazySet(offset, null);
+        CONSUMER_INDEX_UPDATER.lazySet(this, index + 1);
+        return e;
+    }
+
+    /**
+     * 批量出队，只能由消费者线程调用。整批结束后才更新一次消费者下标
+     *
+     * @param consumer
+     *            元素处理逻辑
+     * @param limit
+     *            本次最多处理的元素个数
+     * @return 实际处理的元素个数
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        Chunk<E> chunk = consumerChunk;
+        long index = consumerIndex;
+        int drained = 0;
+        try {
+            while (drained < limit) {
+                int offset = (int) (index - chunk.base);
+                if (offset == chunkSize) {
+                    Chunk<E> next = chunk.next;
+                    if (next == null) {
+                        break;
+                    }
+                    consumerChunk = chunk = next;
+                    offset = 0;
+                }
+                @SuppressWarnings("unchecked")
+                E e = (E) chunk.slots.get(offset);
+                if (e == null) {
+                    break;
+                }
+                chunk.slots.lazySet(offset, null);
+                index++;
+                drained++;
+                consumer.accept(e);
+            }
+        } finally {
+            if (drained > 0) {
+                CONSUMER_INDEX_UPDATER.lazySet(this, index);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * @return 队列中的元素个数(近似值，包含已领取下标但尚未写入完成的元素)，O(1)
+     */
+    public long size() {
+        long consumer = consumerIndex;
+        long producer = producerIndex.get();
+        return Math.max(0L, producer - consumer);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0L;
+    }
+
+    /**
+     * 从给定的块开始向后找到下标所在的块，途中遇到还不存在的块则创建并链接上
+     */
+    private Chunk<E> chunkOf(Chunk<E> chunk, long index) {
+        while (index - chunk.base >= chunkSize) {
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                next = new Chunk<>(chunk.base + chunkSize, chunkSize);
+                // 多个生产者同时跨块时只有一个能链接成功，其余的丢弃自己创建的块
+                if (!chunk.casNext(next)) {
+                    next = chunk.next;
+                }
+            }
+            chunk = next;
+        }
+        return chunk;
+    }
+
+    private void advanceProducerChunk(Chunk<E> chunk) {
+        Chunk<E> current = producerChunk;
+        if (current.base < chunk.base) {
+            // 失败说明已被其他生产者推进到更靠后的块，无需重试
+            PRODUCER_CHUNK_UPDATER.compareAndSet(this, current, chunk);
+        }
+    }
+
+    private static final class Chunk<E> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT_UPDATER = AtomicReferenceFieldUpdater
+                .newUpdater(Chunk.class, Chunk.class, "next");
+
+        /** 块中第一个槽位对应的全局下标 */
+        private final long base;
+
+        private final AtomicReferenceArray<Object> slots;
+
+        private volatile Chunk<E> next;
+
+        Chunk(long base, int size) {
+            this.base = base;
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        boolean casNext(Chunk<E> next) {
+            return NEXT_UPDATER.compareAndSet(this, null, next);
+        }
+    }
+
+}
@@ -0,0 +1,339 @@
+package top.bootz.commons.snowflake;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Preconditions;
+
+import top.bootz.commons.exception.BaseRuntimeException;
+
+/**
+ * 基于CAS的无锁Snowflake ID生成器，ID的位结构与{@link IdGenerator}完全一致<br>
+ * 将"时间戳偏移量 + 毫秒内序列"打包存放在一个原子long中(高位时间戳，低位序列)，
+ * 每次取号只需一次compareAndSet，多核高并发下不再争抢同一把monitor锁。<br>
+ * 同时支持批量预留：{@link #reserveRange(int)}一次CAS即可领取同一毫秒内的一段连续ID，
+ * {@link #nextIds(int)}在此基础上返回任意数量的ID。<br>
+ * 条带模式({@link #setStripes(int)})：把12位序列再拆成"条带号 + 条带内序列"，线程按线程号落到各自的条带上，
+ * 每个条带独立维护时间戳和序列，线程之间不再竞争同一个CAS。本条带当前毫秒的序列用完时依次借用其他条带的序列，
+ * 所有条带都用完才等待下一毫秒，因此单个线程仍能用满每毫秒4096个ID，条带只分散竞争，不分割容量。
+ * 条带号占据序列的高位，ID依然全局唯一且基本按时间有序；单节点每毫秒的总容量仍是4096个。<br>
+ * 借用未来时间({@link #setMaxLeadMillis(long)})：时钟回拨或序列耗尽时各条带的逻辑时钟在上限内领先系统时钟继续发号，不阻塞也不报错。
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+public class AtomicIdGenerator extends IdGenerator {
+
+    /**
+     * 条带数上限：最多从12位序列中拆出6位作为条带号，每个条带每毫秒至少保留64个序列
+     */
+    public static final int MAX_STRIPES = 64;
+
+    /**
+     * 可容忍的时钟回拨毫秒数，回拨幅度在此范围内时沿用上次的时间戳继续发号，否则抛出异常
+     */
+    private static final long MAX_BACKWARD_MILLIS = 5L;
+
+    /**
+     * 每个条带的状态在数组中占用的槽位数(16个long即128字节)，避免相邻条带的伪共享
+     */
+    private static final int PADDING = 16;
+
+    /**
+     * 状态数组中条带时钟偏差所在槽位相对条带状态的偏移
+     */
+    private static final int CLOCK_OFFSET_SLOT = 1;
+
+    private volatile Stripes stripes = new Stripes(1);
+
+    /**
+     * 最近一次确认的系统时钟与单调时钟之差(毫秒)。时钟平稳时各条带只读取不写入，
+     * 只有系统时钟跳变或累计漂移超过1毫秒时才更新
+     */
+    private final AtomicLong clockOffset = new AtomicLong();
+
+    /**
+     * 设置条带数，会被规整为2的幂次，必须在开始发号之前调用
+     *
+     * @param stripes
+     *            条带数(1~64)，1表示不拆分条带
+     */
+    public void setStripes(int stripes) {
+        Preconditions.checkArgument(stripes > 0 && stripes <= MAX_STRIPES,
+                String.format("stripes can't be greater than %d or less than 1", MAX_STRIPES));
+        Preconditions.checkState(!this.stripes.isUsed(), "stripes must be set before generating any id");
+        this.stripes = new Stripes(stripes);
+    }
+
+    public int getStripes() {
+        return stripes.count;
+    }
+
+    /**
+     * 获得下一个ID (无锁，线程安全)
+     *
+     * @return SnowflakeId
+     */
+    @Override
+    public long nextId() {
+        Stripes current = stripes;
+        return reserve(current, current.stripeOfCurrentThread(), 1L);
+    }
+
+    /**
+     * 批量获取n个ID，每次CAS领取当前毫秒内剩余的一整段序列，直至凑满n个
+     *
+     * @param n
+     *            需要的ID个数
+     * @return 按生成顺序排列的ID数组
+     */
+    @Override
+    public long[] nextIds(int n) {
+        Preconditions.checkArgument(n > 0, "n must be greater than 0");
+        long[] ids = new long[n];
+        int filled = 0;
+        while (filled < n) {
+            IdRange range = reserveRange(n - filled);
+            for (int i = 0; i < range.getCount(); i++) {
+                ids[filled++] = range.get(i);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 一次CAS预留一段连续的ID。同一毫秒内的ID在数值上连续，因此返回的区间最多只能覆盖当前毫秒(当前条带)剩余的序列，
+     * 实际数量以{@link IdRange#getCount()}为准，可能小于n。
+     *
+     * @param n
+     *            期望预留的ID个数
+     * @return 预留到的ID区间
+     */
+    public IdRange reserveRange(int n) {
+        Preconditions.checkArgument(n > 0, "n must be greater than 0");
+        Stripes current = stripes;
+        long first = reserve(current, current.stripeOfCurrentThread(), n);
+        // ID的低位就是条带内序列
+        return new IdRange(first, current.countOf(first, n));
+    }
+
+    /**
+     * 领取最多n个序列，返回区间的起始ID。先在本线程的条带上领取，该条带当前毫秒的序列用完时依次借用其他条带，
+     * 所有条带都用完后才在本条带上借用未来时间或等待下一毫秒
+     */
+    private long reserve(Stripes stripes, int home, long n) {
+        long node = nodeBits();
+        for (;;) {
+            for (int i = 0; i < stripes.count; i++) {
+                int stripe = (home + i) & (stripes.count - 1);
+                long start = tryReserve(stripes, stripe, n);
+                if (start >= 0) {
+                    return toId(stripes, node, stripe, start);
+                }
+            }
+            long start = advance(stripes, home, n);
+            if (start >= 0) {
+                return toId(stripes, node, home, start);
+            }
+        }
+    }
+
+    /**
+     * 在条带当前的毫秒内领取序列，返回区间起始位置的打包状态，该毫秒的序列已用完时返回-1
+     */
+    private long tryReserve(Stripes stripes, int stripe, long n) {
+        int slot = stripe * PADDING;
+        for (;;) {
+            // 先读状态再读时钟，状态中的时间戳不会晚于随后读到的系统时钟(除非时钟回拨或借用了未来时间)
+            long current = stripes.states.get(slot);
+            long lastTimestamp = current >>> stripes.sequenceBits;
+            long timestamp = timeGen() - EPOCH;
+
+            long start;
+            if (timestamp > lastTimestamp) {
+                observeWallClock(stripes, stripe);
+                // 时间戳改变，毫秒内序列从随机数开始，保证id末尾数字分布均匀
+                start = (timestamp << stripes.sequenceBits) | ThreadLocalRandom.current().nextLong(0, 9);
+            } else {
+                long lead = lastTimestamp - timestamp;
+                long maxLead = getMaxLeadMillis();
+                if (lead > (maxLead > 0 ? maxLead : MAX_BACKWARD_MILLIS)) {
+                    observeWallClock(stripes, stripe);
+                    throw new BaseRuntimeException(String.format(
+                            "Clock is moving backwards, last time is %d milliseconds, current time is %d milliseconds",
+                            lastTimestamp + EPOCH, timestamp + EPOCH));
+                }
+                if ((current & stripes.sequenceMask) == stripes.sequenceMask) {
+                    return -1L;
+                }
+                start = current + 1;
+            }
+
+            if (stripes.states.compareAndSet(slot, current, start + stripes.countOf(start, n) - 1)) {
+                return start;
+            }
+        }
+    }
+
+    /**
+     * 所有条带当前毫秒的序列都已用完：允许时把条带的逻辑时钟推进到下一毫秒(借用未来时间)，
+     * 否则等待系统时钟追上来。返回区间起始位置的打包状态，需要重新领取时返回-1
+     */
+    private long advance(Stripes stripes, int stripe, long n) {
+        int slot = stripe * PADDING;
+        long current = stripes.states.get(slot);
+        long lastTimestamp = current >>> stripes.sequenceBits;
+        long timestamp = timeGen() - EPOCH;
+        if (lastTimestamp < timestamp || (current & stripes.sequenceMask) != stripes.sequenceMask) {
+            // 期间其他线程已经推进了该条带
+            return -1L;
+        }
+        long maxLead = getMaxLeadMillis();
+        if (lastTimestamp - timestamp + 1 > maxLead) {
+            // 不允许继续借用未来时间，等系统时钟追上来再重新竞争
+            tilNextMillis(lastTimestamp - maxLead + EPOCH);
+            return -1L;
+        }
+        long start = ((lastTimestamp + 1) << stripes.sequenceBits) | ThreadLocalRandom.current().nextLong(0, 9);
+        if (stripes.states.compareAndSet(slot, current, start + stripes.countOf(start, n) - 1)) {
+            recordBorrowedMillis();
+            return start;
+        }
+        return -1L;
+    }
+
+    /**
+     * 在条带跨毫秒时记录系统时钟，识别时钟回拨
+     * <p>
+     * 比较的是系统时钟与单调时钟之差而不是系统时钟本身，借用未来时间不会被误认为回拨。
+     * 每个条带在自己的槽位上记录上次的差值(与条带状态在同一缓存行)，差值变化超过1毫秒时才与全局记录比较，
+     * 第一个观测到的条带更新全局记录并计数，其他条带随后观测到同一次回拨时全局记录已经一致，不再重复计数
+     */
+    private void observeWallClock(Stripes stripes, int stripe) {
+        long offset = sampleClockOffset();
+        if (offset == Long.MIN_VALUE) {
+            return;
+        }
+        int slot = stripe * PADDING + CLOCK_OFFSET_SLOT;
+        long previous = stripes.states.get(slot);
+        stripes.states.lazySet(slot, offset);
+        long global = clockOffset.get();
+        if (Math.abs(offset - global) <= 1L) {
+            return;
+        }
+        // 条带自身的差值平稳说明只是累计漂移，只同步全局记录
+        boolean jumpedBack = previous != 0L && previous - offset > 1L && offset < global;
+        if (clockOffset.compareAndSet(global, offset) && jumpedBack) {
+            recordBackwardJump();
+        }
+    }
+
+    /**
+     * 读取系统时钟与单调时钟之差，读取期间线程被挂起超过1毫秒时结果不可信，返回Long.MIN_VALUE。
+     * 不使用timeGen()：开启粗粒度时钟时，后台线程刷新不及时造成的滞后会被误认为回拨
+     */
+    private long sampleClockOffset() {
+        long before = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long after = System.nanoTime();
+        if (after - before > 1000000L) {
+            return Long.MIN_VALUE;
+        }
+        return now - (before + (after - before) / 2) / 1000000L;
+    }
+
+    /**
+     * @return 各条带中逻辑时钟领先系统时钟的最大毫秒数
+     */
+    @Override
+    public long getCurrentLeadMillis() {
+        Stripes current = stripes;
+        long timestamp = timeGen() - EPOCH;
+        long lead = 0L;
+        for (int i = 0; i < current.count; i++) {
+            lead = Math.max(lead, (current.states.get(i * PADDING) >>> current.sequenceBits) - timestamp);
+        }
+        return lead;
+    }
+
+    private long toId(Stripes stripes, long node, int stripe, long packed) {
+        return ((packed >>> stripes.sequenceBits) << TIMESTAMP_LEFT_SHIFT) | node
+                | ((long) stripe << stripes.sequenceBits) | (packed & stripes.sequenceMask);
+    }
+
+    /**
+     * 条带划分及各条带的状态：(时间戳 - EPOCH) << sequenceBits | 条带内序列
+     */
+    private static final class Stripes {
+
+        private final int count;
+
+        private final long sequenceBits;
+
+        private final long sequenceMask;
+
+        private final AtomicLongArray states;
+
+        Stripes(int stripes) {
+            int normalized = 1;
+            while (normalized < stripes) {
+                normalized <<= 1;
+            }
+            this.count = normalized;
+            this.sequenceBits = SEQUENCE_BITS - Integer.numberOfTrailingZeros(normalized);
+            this.sequenceMask = -1L ^ (-1L << sequenceBits);
+            this.states = new AtomicLongArray(normalized * PADDING);
+        }
+
+        int stripeOfCurrentThread() {
+            return count == 1 ? 0 : (int) (Thread.currentThread().getId() & (count - 1));
+        }
+
+        int countOf(long start, long n) {
+            return (int) Math.min(n, sequenceMask + 1 - (start & sequenceMask));
+        }
+
+        boolean isUsed() {
+            for (int i = 0; i < count; i++) {
+                if (states.get(i * PADDING) != 0L) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 一段数值连续的ID：[first, first + count)
+     */
+    public static final class IdRange {
+
+        private final long first;
+
+        private final int count;
+
+        IdRange(long first, int count) {
+            this.first = first;
+            this.count = count;
+        }
+
+        public long getFirst() {
+            return first;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long get(int index) {
+            Preconditions.checkElementIndex(index, count);
+            return first + index;
+        }
+
+        @Override
+        public String toString() {
+            return "IdRange[" + first + ", " + (first + count) + ")";
+        }
+    }
+
+}
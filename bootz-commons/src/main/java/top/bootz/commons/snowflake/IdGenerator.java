@@ -1,6 +1,7 @@
 package top.bootz.commons.snowflake;
 
 import java.util.Calendar;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.lang3.RandomUtils;
 
@@ -27,7 +28,7 @@ public class IdGenerator {
     /**
      * 起始时间戳，用于用当前时间戳减去这个时间戳，算出偏移量
      */
-    private static final long EPOCH;
+    static final long EPOCH;
 
     /**
      * workerId占用的位数5（表示只允许workId的范围为：0-1023）
@@ -52,22 +53,22 @@ public class IdGenerator {
     /**
      * 序列在id中占的位数
      */
-    private static final long SEQUENCE_BITS = 12L;
+    static final long SEQUENCE_BITS = 12L;
 
     /**
      * 机器ID向左移12位
      */
-    private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
+    static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
 
     /**
      * 数据标识id向左移17位(12+5)
      */
-    private static final long DATACENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+    static final long DATACENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
 
     /**
      * 时间截向左移22位(5+5+12)
      */
-    private static final long TIMESTAMP_LEFT_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATACENTER_ID_BITS;
+    static final long TIMESTAMP_LEFT_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATACENTER_ID_BITS;
 
     /**
      * 生成序列的掩码，这里为4095 (0b111111111111=0xfff=4095)
@@ -84,6 +85,11 @@ public class IdGenerator {
      */
     private long dataCenterId;
 
+    /**
+     * 已移位的dataCenterId和workerId，两者作为一个整体发布，切换槽位时发号不会拼出新旧混合的节点位。-1表示已暂停发号
+     */
+    private volatile long nodeBits = 0L;
+
     /**
      * 毫秒内序列(0~4095)
      */
@@ -99,6 +105,41 @@ public class IdGenerator {
      */
     private boolean isClock = false;
 
+    /**
+     * 因毫秒内序列耗尽而等待下一毫秒的次数
+     */
+    private final LongAdder waitForNextMillisCount = new LongAdder();
+
+    /**
+     * 等待下一毫秒累计耗费的纳秒数
+     */
+    private final LongAdder waitForNextMillisNanos = new LongAdder();
+
+    /**
+     * 逻辑时钟允许领先系统时钟的最大毫秒数，大于0时开启"借用未来时间"模式，0表示关闭
+     */
+    private volatile long maxLeadMillis = 0L;
+
+    /**
+     * 检测到系统时钟回拨的次数
+     */
+    private final LongAdder backwardJumpCount = new LongAdder();
+
+    /**
+     * 借用未来时间(逻辑时钟越过系统时钟前进一毫秒)的次数
+     */
+    private final LongAdder borrowedMillisCount = new LongAdder();
+
+    /**
+     * 已观测到的系统时钟最大值，用于识别时钟回拨，只在nextId的锁内读写
+     */
+    private long wallClockHighWater = 0L;
+
+    /**
+     * 最近一次发号使用的逻辑时间戳，每毫秒最多更新一次，供监控读取而不必获取发号的锁
+     */
+    private volatile long publishedTimestamp = -1L;
+
     static {
         Calendar calendar = Calendar.getInstance();
         calendar.set(2016, Calendar.NOVEMBER, 1);
@@ -115,10 +156,13 @@ public class IdGenerator {
      * @param workerId
      *            工作进程Id
      */
-    public void setWorkerId(final Long workerId) {
-        Preconditions.checkArgument(workerId >= 0L && workerId < MAX_WORKER_ID,
+    public synchronized void setWorkerId(final Long workerId) {
+        Preconditions.checkArgument(workerId >= 0L && workerId <= MAX_WORKER_ID,
                 String.format("worker id can't be greater than %d or less than 0", MAX_WORKER_ID));
         this.workerId = workerId;
+        if (nodeBits >= 0L) {
+            nodeBits = (dataCenterId << DATACENTER_ID_SHIFT) | (workerId << WORKER_ID_SHIFT);
+        }
     }
 
     /**
@@ -127,26 +171,131 @@ public class IdGenerator {
      * @param dataCenterId
      *            数据中心Id
      */
-    public void setDataCenterId(final Long dataCenterId) {
-        Preconditions.checkArgument(dataCenterId >= 0L && dataCenterId < MAX_DATACENTER_ID,
+    public synchronized void setDataCenterId(final Long dataCenterId) {
+        Preconditions.checkArgument(dataCenterId >= 0L && dataCenterId <= MAX_DATACENTER_ID,
+                String.format("dataCenter id can't be greater than %d or less than 0", MAX_DATACENTER_ID));
+        this.dataCenterId = dataCenterId;
+        if (nodeBits >= 0L) {
+            nodeBits = (dataCenterId << DATACENTER_ID_SHIFT) | (workerId << WORKER_ID_SHIFT);
+        }
+    }
+
+    /**
+     * 同时切换数据中心Id和工作进程Id，并恢复被{@link #suspend()}暂停的发号。用于节点槽位租约丢失后改用新领取的槽位
+     *
+     * @param dataCenterId
+     *            数据中心Id
+     * @param workerId
+     *            工作进程Id
+     */
+    public synchronized void setNode(long dataCenterId, long workerId) {
+        Preconditions.checkArgument(dataCenterId >= 0L && dataCenterId <= MAX_DATACENTER_ID,
                 String.format("dataCenter id can't be greater than %d or less than 0", MAX_DATACENTER_ID));
+        Preconditions.checkArgument(workerId >= 0L && workerId <= MAX_WORKER_ID,
+                String.format("worker id can't be greater than %d or less than 0", MAX_WORKER_ID));
         this.dataCenterId = dataCenterId;
+        this.workerId = workerId;
+        this.nodeBits = (dataCenterId << DATACENTER_ID_SHIFT) | (workerId << WORKER_ID_SHIFT);
+    }
+
+    /**
+     * 暂停发号：当前节点不再确定独占dataCenterId和workerId(例如槽位租约丢失)时调用，
+     * 之后nextId直接抛出异常，直到{@link #setNode(long, long)}设置新的节点Id
+     */
+    public void suspend() {
+        nodeBits = -1L;
+    }
+
+    public boolean isSuspended() {
+        return nodeBits < 0L;
     }
 
     public void setClock(boolean clock) {
         isClock = clock;
     }
 
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public long getDataCenterId() {
+        return dataCenterId;
+    }
+
+    /**
+     * 开启"借用未来时间"模式：时钟回拨或毫秒内序列耗尽时，不再等待或抛出异常，而是沿用(或推进)一个领先于系统时钟的逻辑时钟继续发号，
+     * 逻辑时钟不再前进后，系统时钟会逐毫秒追上来。领先幅度超过maxLeadMillis时才会等待，回拨幅度超过maxLeadMillis时仍然抛出异常。
+     *
+     * @param maxLeadMillis
+     *            逻辑时钟允许领先系统时钟的最大毫秒数，0表示关闭该模式
+     */
+    public void setMaxLeadMillis(long maxLeadMillis) {
+        Preconditions.checkArgument(maxLeadMillis >= 0L, "maxLeadMillis must not be less than 0");
+        this.maxLeadMillis = maxLeadMillis;
+    }
+
+    public long getMaxLeadMillis() {
+        return maxLeadMillis;
+    }
+
+    /**
+     * @return 检测到系统时钟回拨的次数
+     */
+    public long getBackwardJumpCount() {
+        return backwardJumpCount.sum();
+    }
+
+    /**
+     * @return 借用未来时间的次数
+     */
+    public long getBorrowedMillisCount() {
+        return borrowedMillisCount.sum();
+    }
+
+    /**
+     * @return 逻辑时钟当前领先系统时钟的毫秒数
+     */
+    public long getCurrentLeadMillis() {
+        return Math.max(0L, publishedTimestamp - timeGen());
+    }
+
+    /**
+     * @return 因毫秒内序列耗尽而等待下一毫秒的次数
+     */
+    public long getWaitForNextMillisCount() {
+        return waitForNextMillisCount.sum();
+    }
+
+    /**
+     * @return 等待下一毫秒累计耗费的纳秒数
+     */
+    public long getWaitForNextMillisNanos() {
+        return waitForNextMillisNanos.sum();
+    }
+
     /**
      * 获得下一个ID (该方法是线程安全的)
      *
      * @return SnowflakeId
      */
     public synchronized long nextId() {
+        long node = nodeBits();
         long timestamp = timeGen();
 
+        // 借用未来时间：时钟回拨幅度在允许的领先范围内时，沿用逻辑时钟继续发号
+        if (timestamp < lastTimestamp && maxLeadMillis > 0) {
+            observeWallClock();
+            if (lastTimestamp - timestamp > maxLeadMillis) {
+                throw new BaseRuntimeException(String.format(
+                        "Clock is moving backwards, last time is %d milliseconds, current time is %d milliseconds",
+                        lastTimestamp, timestamp));
+            }
+            timestamp = lastTimestamp;
+        }
+
         // 闰秒：如果当前时间小于上一次ID生成的时间戳，说明系统时钟回退过这个时候应当抛出异常
         if (timestamp < lastTimestamp) {
+            observeWallClock();
             long offset = lastTimestamp - timestamp;
             if (offset <= 5) {
                 try {
@@ -171,9 +320,10 @@ public class IdGenerator {
         if (lastTimestamp == timestamp) {
             // 通过位与运算保证计算的结果范围始终是 0-4095
             if (0L == (sequence = ++sequence & SEQUENCE_MASK)) {
-                timestamp = this.tilNextMillis(lastTimestamp);
+                timestamp = maxLeadMillis > 0 ? borrowNextMillis(lastTimestamp) : this.tilNextMillis(lastTimestamp);
             }
         } else {
+            observeWallClock();
             /*
              * 时间戳改变，毫秒内序列重置，这里之所以生成随机数，是为了保证id末尾一个数字在0-9上分布均匀，
              * 数据库分库分表时，不至于出现数据分布不均匀
@@ -182,11 +332,94 @@ public class IdGenerator {
         }
 
         // 上次生成ID的时间截
+        if (lastTimestamp != timestamp) {
+            publishedTimestamp = timestamp;
+        }
         lastTimestamp = timestamp;
 
         // 移位并通过或运算拼到一起组成64位的ID
-        return ((timestamp - EPOCH) << TIMESTAMP_LEFT_SHIFT) | (dataCenterId << DATACENTER_ID_SHIFT)
-                | (workerId << WORKER_ID_SHIFT) | sequence;
+        return ((timestamp - EPOCH) << TIMESTAMP_LEFT_SHIFT) | node | sequence;
+    }
+
+    /**
+     * 从ID中解析出生成时的时间戳
+     *
+     * @param id
+     *            由本类或子类生成的ID
+     * @return 生成ID时的毫秒时间戳
+     */
+    public static long timestampOf(long id) {
+        return (id >>> TIMESTAMP_LEFT_SHIFT) + EPOCH;
+    }
+
+    /**
+     * 批量获取n个ID，适用于批量插入等场景
+     *
+     * @param n
+     *            需要的ID个数
+     * @return 按生成顺序排列的ID数组
+     */
+    public long[] nextIds(int n) {
+        Preconditions.checkArgument(n > 0, "n must be greater than 0");
+        long[] ids = new long[n];
+        synchronized (this) {
+            for (int i = 0; i < n; i++) {
+                ids[i] = nextId();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 借用未来时间：直接把逻辑时钟推进到下一毫秒，只有领先幅度将超过上限时才等待系统时钟追上来
+     *
+     * @param lastTimestamp
+     *            上次生成ID的时间截
+     * @return 下一毫秒的逻辑时间戳
+     */
+    private long borrowNextMillis(long lastTimestamp) {
+        long next = lastTimestamp + 1;
+        long lead = next - timeGen();
+        if (lead > maxLeadMillis) {
+            tilNextMillis(next - maxLeadMillis - 1);
+        } else if (lead > 0) {
+            recordBorrowedMillis();
+        }
+        return next;
+    }
+
+    /**
+     * @return 已移位的节点位，已暂停发号时抛出异常
+     */
+    long nodeBits() {
+        long node = nodeBits;
+        if (node < 0L) {
+            throw new BaseRuntimeException("Id generator is suspended, the worker id of this node is not leased");
+        }
+        return node;
+    }
+
+    void recordBorrowedMillis() {
+        borrowedMillisCount.increment();
+    }
+
+    void recordBackwardJump() {
+        backwardJumpCount.increment();
+    }
+
+    /**
+     * 记录观测到的系统时钟，比历史最大值小1毫秒以上即视为一次时钟回拨。
+     * 识别到回拨后把最大值重置为当前时间，使同一次回拨只被统计一次。只在nextId的锁内调用。
+     * 直接读取System.currentTimeMillis()，粗粒度时钟的刷新延迟会被误认为回拨
+     */
+    private void observeWallClock() {
+        long now = System.currentTimeMillis();
+        if (now > wallClockHighWater) {
+            wallClockHighWater = now;
+        } else if (wallClockHighWater - now > 1L) {
+            wallClockHighWater = now;
+            recordBackwardJump();
+        }
     }
 
     /**
@@ -196,11 +429,14 @@ public class IdGenerator {
      *            上次生成ID的时间截
      * @return 当前时间戳
      */
-    private long tilNextMillis(long lastTimestamp) {
+    long tilNextMillis(long lastTimestamp) {
+        long begin = System.nanoTime();
         long timestamp = timeGen();
         while (timestamp <= lastTimestamp) {
             timestamp = timeGen();
         }
+        waitForNextMillisCount.increment();
+        waitForNextMillisNanos.add(System.nanoTime() - begin);
         return timestamp;
     }
 
@@ -209,12 +445,12 @@ public class IdGenerator {
      *
      * @return 当前时间(毫秒)
      */
-    private long timeGen() {
+    long timeGen() {
         if (isClock) {
             // 解决高并发下获取时间戳的性能问题
-            return SystemClock.now();
+            return SystemClock.coarseMillis();
         } else {
-            return System.currentTimeMillis();
+            return SystemClock.now();
         }
     }
 
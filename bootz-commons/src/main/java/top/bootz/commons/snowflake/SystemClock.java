@@ -1,89 +1,107 @@
 package top.bootz.commons.snowflake;
 
 import java.sql.Timestamp;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
 
 /**
  * 高并发场景下System.currentTimeMillis()的性能问题的优化
  * <p>
+ * 提供两种视图：墙上时钟{@link #now()}(毫秒)和单调时钟{@link #nanoTime()}(纳秒)，供IdGenerator、DateHelper、访问日志切面等共用。
  * <p>
- * System.currentTimeMillis()的调用比new一个普通对象要耗时的多（具体耗时高出多少我还没测试过，有人说是100倍左右）
- * <p>
- * System.currentTimeMillis()之所以慢是因为去跟系统打了一次交道
- * <p>
- * 后台定时更新时钟，JVM退出时，线程自动回收
- * <p>
- * 10亿：43410,206,210.72815533980582%
+ * 默认直接返回System.currentTimeMillis()/System.nanoTime()；通过{@link #setCoarse(boolean)}或启动参数
+ * -Dbootz.clock.coarse=true开启粗粒度模式后，改为读取后台线程按固定精度刷新的缓存值。
  * <p>
- * 1亿：4699,29,162.0344827586207%
+ * 后台线程在第一次读取粗粒度时钟时才会启动(懒加载)，刷新精度可通过{@link #setResolution(long, TimeUnit)}或启动参数
+ * -Dbootz.clock.resolution.millis调整，线程为守护线程，JVM退出时自动回收。
  * <p>
- * 1000万：480,12,40.0%
- * <p>
- * 100万：50,10,5.0%
- * <p>
- * 
+ * Linux上System.currentTimeMillis()走vDSO，本身只有几十纳秒，粗粒度时钟省下的是这部分开销，代价是一个常驻线程的周期性唤醒和
+ * 最多一个精度周期的误差，只有在取时间的调用极其密集时才值得开启。
+ *
  * @author lry
  */
-public class SystemClock {
-    private final long period;
-    private final AtomicLong now;
-    ExecutorService executor = Executors.newSingleThreadExecutor();
-
-    private SystemClock(long period) {
-        this.period = period;
-        this.now = new AtomicLong(System.currentTimeMillis());
-        scheduleClockUpdating();
+public final class SystemClock {
+
+    private static volatile boolean coarse = Boolean.getBoolean("bootz.clock.coarse");
+
+    private static volatile long resolutionNanos = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("bootz.clock.resolution.millis", 1L));
+
+    private volatile long millis;
+
+    private volatile long nanos;
+
+    private SystemClock() {
+        this.millis = System.currentTimeMillis();
+        this.nanos = System.nanoTime();
+        Thread updater = new Thread(this::update, "System Clock");
+        updater.setDaemon(true);
+        updater.start();
     }
 
     private static class InstanceHolder {
-        public static final SystemClock INSTANCE = new SystemClock(1);
+        public static final SystemClock INSTANCE = new SystemClock();
     }
 
-    private static SystemClock instance() {
-        return InstanceHolder.INSTANCE;
+    private void update() {
+        for (;;) {
+            LockSupport.parkNanos(resolutionNanos);
+            millis = System.currentTimeMillis();
+            nanos = System.nanoTime();
+        }
     }
 
-    private void scheduleClockUpdating() {
-        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable runnable) {
-                Thread thread = new Thread(runnable, "System Clock");
-                thread.setDaemon(true);
-                return thread;
-            }
-        });
-        scheduler.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                now.set(System.currentTimeMillis());
-            }
-        }, period, period, TimeUnit.MILLISECONDS);
+    /**
+     * 开启或关闭粗粒度模式，影响{@link #now()}和{@link #nanoTime()}
+     */
+    public static void setCoarse(boolean coarse) {
+        SystemClock.coarse = coarse;
     }
 
-    private long currentTimeMillis() {
-        return now.get();
+    public static boolean isCoarse() {
+        return coarse;
     }
 
+    /**
+     * 设置粗粒度时钟的刷新精度，可随时调整，下一个周期生效
+     */
+    public static void setResolution(long resolution, TimeUnit unit) {
+        Preconditions.checkArgument(resolution > 0, "resolution must be greater than 0");
+        resolutionNanos = unit.toNanos(resolution);
+    }
+
+    /**
+     * @return 当前墙上时钟(毫秒)
+     */
     public static long now() {
-        return instance().currentTimeMillis();
+        return coarse ? coarseMillis() : System.currentTimeMillis();
     }
 
-    public static String nowDate() {
-        return new Timestamp(instance().currentTimeMillis()).toString();
+    /**
+     * @return 单调时钟(纳秒)，只能用于计算时间间隔
+     */
+    public static long nanoTime() {
+        return coarse ? coarseNanos() : System.nanoTime();
+    }
+
+    /**
+     * @return 缓存的墙上时钟(毫秒)，不受粗粒度模式开关影响
+     */
+    public static long coarseMillis() {
+        return InstanceHolder.INSTANCE.millis;
     }
 
-    /*
-     * public static void main(String[] args) { Properties props =
-     * System.getProperties(); for (Object propKey : props.keySet()) {
-     * System.out.println(propKey + " <> " + props.get(propKey)); }
-     * System.out.println("++++++++++++++++"); Map<String, String> envs =
-     * System.getenv(); for (Map.Entry<String, String> env : envs.entrySet()) {
-     * System.out.println(env.getKey() + " <> " + env.getValue()); } }
+    /**
+     * @return 缓存的单调时钟(纳秒)，不受粗粒度模式开关影响
      */
+    public static long coarseNanos() {
+        return InstanceHolder.INSTANCE.nanos;
+    }
+
+    public static String nowDate() {
+        return new Timestamp(now()).toString();
+    }
 
 }
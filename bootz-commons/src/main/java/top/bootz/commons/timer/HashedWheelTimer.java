@@ -1,14 +1,15 @@
 package top.bootz.commons.timer;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
@@ -17,6 +18,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +27,7 @@ import com.google.common.collect.Lists;
 
 import top.bootz.commons.helper.DateHelper;
 import top.bootz.commons.helper.RandomHelper;
+import top.bootz.commons.queue.MpscChunkedQueue;
 
 /**
  * 将netty实现的hashedWheelTimer算法搬过来，将一些netty自己实现的类转为java原生类；
@@ -64,16 +67,36 @@ public class HashedWheelTimer {
 	private final HashedWheelBucket[] wheel;
 
 	private final int mask;
+
+	/** 是否使用多层时间轮，远期任务放入逐层放大的溢出轮，到期前再逐层降级，避免每格都扫描远期任务 */
+	private final boolean hierarchical;
+
+	/** 每层时间轮格数对应的位数，即log2(wheel.length) */
+	private final int wheelBits;
+
+	/** 溢出轮：overflowWheels[i]为第i+1层，每格跨度为tickDuration * wheel.length^(i+1)，按需创建 */
+	private final HashedWheelBucket[][] overflowWheels;
 	private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
-	private final Queue<HashedWheelTimeout> timeouts = new ConcurrentLinkedQueue<HashedWheelTimer.HashedWheelTimeout>();
-	private final Queue<HashedWheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<HashedWheelTimer.HashedWheelTimeout>();
 
-	/** 当前timer里剩余的未执行任务数 */
+	/** 新提交、待转移到时间轮中的任务，提交时不再为每个任务分配链表节点，worker每格批量取出 */
+	private final MpscChunkedQueue<HashedWheelTimeout> timeouts = new MpscChunkedQueue<HashedWheelTimeout>();
+	private final MpscChunkedQueue<HashedWheelTimeout> cancelledTimeouts = new MpscChunkedQueue<HashedWheelTimeout>();
+
+	/** 当前timer里剩余的未执行任务数，提交前先在这里占位，因此同时限制了timeouts队列的长度 */
 	private final AtomicLong pendingTimeouts = new AtomicLong(0);
 
 	/** 允许最大的等待执行任务数，超过这个数量，程序会拒绝该任务，并抛出错误 */
 	private final long maxPendingTimeouts;
 
+	/** 到期任务的执行器，为null时直接在worker线程上执行 */
+	private final Executor taskExecutor;
+
+	/** 最近一格实际开始处理的时间相对于理论时间的延迟(纳秒) */
+	private volatile long tickLagNanos;
+
+	/** 启动以来最大的单格延迟(纳秒) */
+	private volatile long maxTickLagNanos;
+
 	/** 当前timer的唯一标识 */
 	private int id;
 	private static final AtomicInteger INSTANCE_ID = new AtomicInteger(1); 
@@ -108,6 +131,27 @@ public class HashedWheelTimer {
 
 	public HashedWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit,
 			int ticksPerWheel, long maxPendingTimeouts) {
+		this(threadFactory, tickDuration, unit, ticksPerWheel, maxPendingTimeouts, false);
+	}
+
+	/**
+	 * @param hierarchical
+	 *            是否使用多层时间轮。开启后超出一轮的远期任务放入溢出轮，每格只处理当前格中真正到期的任务，
+	 *            适合大量小时级延迟任务(验证码、会话、token过期等)的场景
+	 */
+	public HashedWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit,
+			int ticksPerWheel, long maxPendingTimeouts, boolean hierarchical) {
+		this(threadFactory, tickDuration, unit, ticksPerWheel, maxPendingTimeouts, hierarchical, null);
+	}
+
+	/**
+	 * @param taskExecutor
+	 *            到期任务的执行器，为null时在worker线程上串行执行。传入线程池(JDK21及以上也可以是
+	 *            Executors.newVirtualThreadPerTaskExecutor())后，慢任务不再拖慢后续格的处理；
+	 *            执行器的生命周期由调用方管理，执行器拒绝任务时退回到worker线程上执行
+	 */
+	public HashedWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit,
+			int ticksPerWheel, long maxPendingTimeouts, boolean hierarchical, Executor taskExecutor) {
 
 		this.id = INSTANCE_ID.getAndIncrement();
 		
@@ -128,6 +172,13 @@ public class HashedWheelTimer {
 		wheel = createWheel(ticksPerWheel);
 		mask = wheel.length - 1;
 
+		this.hierarchical = hierarchical;
+		this.wheelBits = Integer.numberOfTrailingZeros(wheel.length);
+		if (hierarchical && wheelBits == 0) {
+			throw new IllegalArgumentException("ticksPerWheel must be greater than 1 in hierarchical mode");
+		}
+		this.overflowWheels = hierarchical ? new HashedWheelBucket[63 / wheelBits][] : null;
+
 		// Convert tickDuration to nanos.
 		long duration = unit.toNanos(tickDuration);
 
@@ -150,6 +201,7 @@ public class HashedWheelTimer {
 		workerThread = threadFactory.newThread(worker);
 
 		this.maxPendingTimeouts = maxPendingTimeouts;
+		this.taskExecutor = taskExecutor;
 
 		if (INSTANCE_COUNTER.incrementAndGet() > INSTANCE_COUNT_LIMIT
 				&& WARNED_TOO_MANY_INSTANCES.compareAndSet(false, true)) {
@@ -293,10 +345,59 @@ public class HashedWheelTimer {
 			deadline = Long.MAX_VALUE;
 		}
 		HashedWheelTimeout timeout = new HashedWheelTimeout(this, task, deadline);
-		timeouts.add(timeout);
+		timeouts.offer(timeout);
 		return timeout;
 	}
 
+	/**
+	 * 批量提交延迟相同的一组任务，整批只做一次容量检查，并一次性挂到timeouts队列上，
+	 * 适合一次性提交成千上万个任务的场景
+	 * 
+	 * @return 与tasks顺序一致的timeout列表
+	 */
+	public List<HashedWheelTimeout> newTimeouts(Collection<? extends TimerTask> tasks, long delay, TimeUnit unit) {
+		if (tasks == null) {
+			throw new NullPointerException("tasks");
+		}
+		if (unit == null) {
+			throw new NullPointerException("unit");
+		}
+		for (TimerTask task : tasks) {
+			if (task == null) {
+				throw new NullPointerException("task");
+			}
+		}
+		int count = tasks.size();
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+
+		long pendingTimeoutsCount = pendingTimeouts.addAndGet(count);
+
+		if (maxPendingTimeouts > 0 && pendingTimeoutsCount > maxPendingTimeouts) {
+			pendingTimeouts.addAndGet(-count);
+			throw new RejectedExecutionException("Number of pending timeouts (" + pendingTimeoutsCount
+					+ ") is greater than or equal to maximum allowed pending " + "timeouts (" + maxPendingTimeouts
+					+ ")");
+		}
+
+		start();
+
+		long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+
+		// Guard against overflow.
+		if (delay > 0 && deadline < 0) {
+			deadline = Long.MAX_VALUE;
+		}
+		List<HashedWheelTimeout> batch = new ArrayList<HashedWheelTimeout>(count);
+		for (TimerTask task : tasks) {
+			batch.add(new HashedWheelTimeout(this, task, deadline));
+		}
+		// 整批只领取一次队列下标
+		timeouts.offerAll(batch);
+		return batch;
+	}
+
 	/**
 	 * Returns the number of pending timeouts of this {@link Timer}.
 	 */
@@ -304,6 +405,34 @@ public class HashedWheelTimer {
 		return pendingTimeouts.get();
 	}
 
+	/**
+	 * @return 已提交但还未转移到时间轮中的任务数，持续增长说明提交速度超过了worker的转移速度(每格最多100000个)
+	 */
+	public long queuedTimeouts() {
+		return timeouts.size();
+	}
+
+	/**
+	 * @return 已取消但还未被worker处理的任务数
+	 */
+	public long queuedCancellations() {
+		return cancelledTimeouts.size();
+	}
+
+	/**
+	 * @return 最近一格的处理延迟(纳秒)，即worker实际开始处理该格的时间与理论时间之差
+	 */
+	public long tickLagNanos() {
+		return tickLagNanos;
+	}
+
+	/**
+	 * @return 启动以来最大的单格处理延迟(纳秒)
+	 */
+	public long maxTickLagNanos() {
+		return maxTickLagNanos;
+	}
+
 	private static void reportTooManyInstances() {
 		if (logger.isErrorEnabled()) {
 			String resourceType = HashedWheelTimer.class.getSimpleName();
@@ -318,6 +447,22 @@ public class HashedWheelTimer {
 
 		private long tick;
 
+		private final Consumer<HashedWheelTimeout> transfer = timeout -> {
+			if (timeout.state() != HashedWheelTimeout.ST_CANCELLED) {
+				placeTimeout(timeout);
+			}
+		};
+
+		private final Consumer<HashedWheelTimeout> removal = timeout -> {
+			try {
+				timeout.remove();
+			} catch (Exception t) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("An exception was thrown while process a cancellation task", t);
+				}
+			}
+		};
+
 		@Override
 		public void run() {
 			// Initialize the startTime.
@@ -335,9 +480,13 @@ public class HashedWheelTimer {
 			do {
 				final long deadline = waitForNextTick();
 				if (deadline > 0) {
+					recordTickLag(deadline - tickDuration * (tick + 1));
 					int idx = (int) (tick & mask);
 					processCancelledTasks();
 					HashedWheelBucket bucket = wheel[idx];
+					if (hierarchical) {
+						cascadeOverflowWheels();
+					}
 					transferTimeoutsToBuckets();
 					bucket.expireTimeouts(deadline);
 					tick++;
@@ -349,64 +498,102 @@ public class HashedWheelTimer {
 			for (HashedWheelBucket bucket : wheel) {
 				bucket.clearTimeouts(unprocessedTimeouts);
 			}
-			for (;;) {
-				HashedWheelTimeout timeout = timeouts.poll();
-				if (timeout == null) {
-					break;
+			if (hierarchical) {
+				for (HashedWheelBucket[] overflow : overflowWheels) {
+					if (overflow != null) {
+						for (HashedWheelBucket bucket : overflow) {
+							bucket.clearTimeouts(unprocessedTimeouts);
+						}
+					}
 				}
+			}
+			timeouts.drain(timeout -> {
 				if (!timeout.isCancelled()) {
 					unprocessedTimeouts.add(timeout);
 				}
-			}
+			}, Integer.MAX_VALUE);
 			processCancelledTasks();
 		}
 
+		private void recordTickLag(long lag) {
+			tickLagNanos = lag;
+			if (lag > maxTickLagNanos) {
+				maxTickLagNanos = lag;
+			}
+		}
+
 		private void transferTimeoutsToBuckets() {
 			// transfer only max. 100000 timeouts per tick to prevent a thread
 			// to stale the workerThread when it just
 			// adds new timeouts in a loop.
-			for (int i = 0; i < 100000; i++) {
-				HashedWheelTimeout timeout = timeouts.poll();
-				if (timeout == null) {
-					// all processed
-					break;
-				}
-				if (timeout.state() == HashedWheelTimeout.ST_CANCELLED) {
-					// Was cancelled in the meantime.
-					continue;
-				}
+			// Timeouts cancelled in the meantime are skipped by transfer.
+			timeouts.drain(transfer, 100000);
+		}
 
-				long calculated = timeout.deadline / tickDuration;
+		private void placeTimeout(HashedWheelTimeout timeout) {
+			long calculated = timeout.deadline / tickDuration;
+			final long ticks = Math.max(calculated, tick); // Ensure we don't
+															// schedule for
+															// past.
+			if (!hierarchical) {
 				timeout.remainingRounds = (calculated - tick) / wheel.length;
+				wheel[(int) (ticks & mask)].addTimeout(timeout);
+				return;
+			}
 
-				final long ticks = Math.max(calculated, tick); // Ensure we
-																// don't
-																// schedule for
-																// past.
-				int stopIndex = (int) (ticks & mask);
+			// 找到能够容纳该任务的最低一层：该层上任务所在格与当前格的距离小于一轮
+			timeout.remainingRounds = 0;
+			int level = 0;
+			while (level < overflowWheels.length && (ticks >>> (level * wheelBits))
+					- (tick >>> (level * wheelBits)) >= wheel.length) {
+				level++;
+			}
+			if (level == 0) {
+				wheel[(int) (ticks & mask)].addTimeout(timeout);
+			} else {
+				overflowWheel(level)[(int) ((ticks >>> (level * wheelBits)) & mask)].addTimeout(timeout);
+			}
+		}
 
-				HashedWheelBucket bucket = wheel[stopIndex];
-				bucket.addTimeout(timeout);
+		private HashedWheelBucket[] overflowWheel(int level) {
+			HashedWheelBucket[] overflow = overflowWheels[level - 1];
+			if (overflow == null) {
+				overflow = createWheel(wheel.length);
+				overflowWheels[level - 1] = overflow;
 			}
+			return overflow;
 		}
 
-		private void processCancelledTasks() {
-			for (;;) {
-				HashedWheelTimeout timeout = cancelledTimeouts.poll();
-				if (timeout == null) {
-					// all processed
-					break;
+		/**
+		 * 当前格恰好是某一层溢出轮的格边界时，把该层当前格中的任务取出重新放置，它们会落入更低的一层。
+		 * 每个任务最多被降级层数次，每格的开销与远期任务总数无关。
+		 */
+		private void cascadeOverflowWheels() {
+			for (int level = overflowWheels.length; level >= 1; level--) {
+				int shift = level * wheelBits;
+				HashedWheelBucket[] overflow = overflowWheels[level - 1];
+				if (overflow == null || (tick & ((1L << shift) - 1)) != 0) {
+					continue;
 				}
-				try {
-					timeout.remove();
-				} catch (Exception t) {
-					if (logger.isWarnEnabled()) {
-						logger.warn("An exception was thrown while process a cancellation task", t);
+				HashedWheelBucket bucket = overflow[(int) ((tick >>> shift) & mask)];
+				for (;;) {
+					HashedWheelTimeout timeout = bucket.pollTimeout();
+					if (timeout == null) {
+						break;
 					}
+					if (timeout.isCancelled()) {
+						// 取消的任务会在下一格的processCancelledTasks中计数
+						continue;
+					}
+					placeTimeout(timeout);
 				}
 			}
 		}
 
+		private void processCancelledTasks() {
+			cancelledTimeouts.drain(removal, Integer.MAX_VALUE);
+		}
+
 		/**
 		 * calculate goal nanoTime from startTime and current tick number, then
 		 * wait until that goal has been reached.
@@ -501,9 +688,9 @@ public class HashedWheelTimer {
 			// will be processed on each tick.
 			// So this means that we will have a GC latency of max. 1 tick
 			// duration which is good enough. This way
-			// we can make again use of our MpscLinkedQueue and so minimize the
+			// we can make again use of our MpscChunkedQueue and so minimize the
 			// locking / overhead as much as possible.
-			timer.cancelledTimeouts.add(this);
+			timer.cancelledTimeouts.offer(this);
 			return true;
 		}
 
@@ -537,6 +724,23 @@ public class HashedWheelTimer {
 				return;
 			}
 
+			Executor executor = timer.taskExecutor;
+			if (executor == null) {
+				runTask();
+				return;
+			}
+			try {
+				executor.execute(this::runTask);
+			} catch (RejectedExecutionException e) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("Task executor rejected " + TimerTask.class.getSimpleName()
+							+ ", run it on the worker thread.", e);
+				}
+				runTask();
+			}
+		}
+
+		private void runTask() {
 			try {
 				task.run();
 			} catch (Exception t) {
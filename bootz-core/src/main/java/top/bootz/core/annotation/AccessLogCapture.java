@@ -0,0 +1,44 @@
+package top.bootz.core.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import top.bootz.core.log.CapturePolicy;
+
+/**
+ * 访问日志采集策略注解，标注在controller的方法或类上，决定访问日志中如何采集请求参数和返回值。
+ * 配置文件中针对同一方法(或类)的策略优先于注解
+ *
+ * @author Zhangq
+ *
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AccessLogCapture {
+
+    /**
+     * 采集模式
+     *
+     * @return
+     */
+    CapturePolicy.Mode mode() default CapturePolicy.Mode.FULL;
+
+    /**
+     * SAMPLED模式下的采样比例(0~1)
+     *
+     * @return
+     */
+    double sampleRate() default 1D;
+
+    /**
+     * TRUNCATED模式下每个参数及返回值的字节上限
+     *
+     * @return
+     */
+    int maxBytes() default CapturePolicy.DEFAULT_MAX_BYTES;
+
+}
@@ -0,0 +1,24 @@
+package top.bootz.core.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Import;
+
+import top.bootz.core.outbox.OutboxConfig;
+
+/**
+ * 启用消息发件箱，标注在配置类上。启用后{@link top.bootz.core.base.message.BaseMessageSender#sendViaOutbox}才可用
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Import(OutboxConfig.class)
+public @interface EnableOutbox {
+
+}
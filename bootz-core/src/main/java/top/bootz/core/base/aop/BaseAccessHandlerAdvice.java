@@ -3,7 +3,10 @@ package top.bootz.core.base.aop;
 import java.lang.reflect.Method;
 import java.time.LocalDateTime;
 import java.util.Date;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -18,6 +21,7 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
+import org.springframework.core.MethodClassKey;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -30,10 +34,13 @@ import top.bootz.commons.constant.ExceptionConstants;
 import top.bootz.commons.exception.ApiException;
 import top.bootz.commons.helper.DateHelper;
 import top.bootz.commons.helper.HttpHelper;
-import top.bootz.commons.helper.ReflectionHelper;
+import top.bootz.commons.helper.JsonHelper;
 import top.bootz.commons.helper.ToStringHelper;
+import top.bootz.commons.snowflake.SystemClock;
 import top.bootz.core.log.AccessLog;
+import top.bootz.core.log.AccessLogPipeline;
 import top.bootz.core.log.AccessLogService;
+import top.bootz.core.log.CapturePolicyRegistry;
 
 /**
  * 记录请求日志信息的切面
@@ -55,6 +62,23 @@ public class BaseAccessHandlerAdvice {
 	@Autowired
 	private AccessLogService accessLogService;
 
+	/**
+	 * 访问日志批量写入管道，未配置时退回到逐条异步保存
+	 */
+	@Autowired(required = false)
+	private AccessLogPipeline accessLogPipeline;
+
+	/**
+	 * 请求参数和返回值的采集策略，未配置时按注解或默认完整采集
+	 */
+	@Autowired(required = false)
+	private CapturePolicyRegistry capturePolicyRegistry = new CapturePolicyRegistry();
+
+	/**
+	 * controller方法元数据缓存。同一个方法可能被继承到多个controller中，因此以方法和目标类共同作为key
+	 */
+	private final Map<MethodClassKey, EndpointDescriptor> endpoints = new ConcurrentHashMap<>();
+
 	@Pointcut(CONTROLLER_EXECUTION)
 	private void pointcutInControllerLayer() {
 		// do nothing
@@ -68,13 +92,13 @@ public class BaseAccessHandlerAdvice {
 	@Around(value = "pointcutInControllerLayer()")
 	public Object doAroundInControllerLayer(ProceedingJoinPoint joinPoint) throws Throwable {
 		HttpServletRequest request = null;
-		Method method = null;
-		boolean isAccessible = false;
 		Object object = null;
 		boolean successed = true;
 		Date exceptionTime = null;
+		boolean captured = false;
+		int byteBudget = -1;
 		AccessLog accessLog = new AccessLog();
-		long start = 0L;
+		long start = SystemClock.nanoTime();
 
 		try {
 			Optional<HttpServletRequest> requestOpt = getHttpServletRequest();
@@ -84,12 +108,9 @@ public class BaseAccessHandlerAdvice {
 				throw new ApiException(ExceptionConstants.ErrorMessageKey.BAD_REQUEST);
 			}
 
-			MethodSignature methodSignature = getMethodSignature(joinPoint);
-			method = methodSignature.getMethod();
-			isAccessible = method.isAccessible();
-			method.setAccessible(true);
-			String[] paramNames = methodSignature.getParameterNames();
-			String returnType = methodSignature.getReturnType().getSimpleName();
+			EndpointDescriptor endpoint = getEndpoint(joinPoint);
+			captured = endpoint.getCapturePolicy().shouldCapture();
+			byteBudget = endpoint.getCapturePolicy().byteBudget();
 
 			// visitor
 			String token = request.getHeader(CommonSecurityConstants.HEADER_AUTH_TOKEN);
@@ -105,17 +126,17 @@ public class BaseAccessHandlerAdvice {
 			// requestUrl
 			accessLog.setRequestUrl(request.getRequestURL().toString());
 			// className
-			accessLog.setClassName(joinPoint.getTarget().getClass().getName());
+			accessLog.setClassName(endpoint.getClassName());
 			// methodName
-			accessLog.setMethodName(joinPoint.getSignature().getName());
+			accessLog.setMethodName(endpoint.getMethodName());
 			// inputParamMap
 			Object[] args = joinPoint.getArgs();
-			if (!ArrayUtils.isEmpty(args)) {
-				putInputParams(paramNames, accessLog, args);
+			if (captured && !ArrayUtils.isEmpty(args)) {
+				putInputParams(endpoint, accessLog, args, byteBudget);
 			}
 			// hasResponse
-			accessLog.setReturned(!"void".equalsIgnoreCase(returnType));
-			start = System.currentTimeMillis();
+			accessLog.setReturned(endpoint.isReturned());
+			start = SystemClock.nanoTime();
 			
 			object = joinPoint.proceed();
 		} catch (Throwable e) {
@@ -132,50 +153,73 @@ public class BaseAccessHandlerAdvice {
 			throw e;
 		} finally {
 			// response
-			if (accessLog.isReturned() && object != null) {
-				accessLog.setResponse(ToStringHelper.toJSON(object, false));
+			if (captured && accessLog.isReturned() && object != null) {
+				accessLog.setResponse(ToStringHelper.toJSON(object, false, byteBudget));
 			}
 			// tookMillSeconds
-			accessLog.setTookMillSeconds(System.currentTimeMillis() - start);
+			accessLog.setTookMillSeconds(TimeUnit.NANOSECONDS.toMillis(SystemClock.nanoTime() - start));
 			// successed
 			accessLog.setSuccessed(successed);
 			if (!accessLog.isSuccessed() && exceptionTime != null) {
 				accessLog.setExceptionTime(DateHelper.date2str(exceptionTime));
 			}
-			if (method != null) {
-				method.setAccessible(isAccessible);
-			}
 			accessLog.setCreateTime(LocalDateTime.now());
 
 			// 将访问日志保存到mongodb中
-			if (accessLogService != null) {
-			    accessLogService.asyncSave(accessLog);
+			if (accessLogPipeline != null) {
+				// 由管道的后台线程打印并批量写入，请求线程不做任何序列化和IO
+				accessLogPipeline.submit(accessLog);
+			} else {
+				if (accessLogService != null) {
+					accessLogService.asyncSave(accessLog);
+				}
+				log.info(accessLog.toJson());
 			}
-			log.info(accessLog.toJson());
 		}
 		return object;
 	}
 
-	private void putInputParams(String[] paramNames, AccessLog accessLog, Object[] args) {
+	/**
+	 * @param byteBudget
+	 *            每个参数序列化结果的字节上限，小于0表示不限制
+	 */
+	private void putInputParams(EndpointDescriptor endpoint, AccessLog accessLog, Object[] args, int byteBudget) {
 		for (int i = 0; i < args.length; i++) {
-		    if (args[i] == null) {
-		        accessLog.putInputParam("args_index_" + i, null);
-		        continue;
-		    }
-			Class<?> clz = args[i].getClass();
-			boolean isInnerAppClass = clz.getName().startsWith("com.orion");
-			boolean isSimpleClass = ReflectionHelper.isBaseClassOrString(clz) || ReflectionHelper.isCollection(clz)
-					|| ReflectionHelper.isMap(clz);
-			// 异常处理切面中方法的参数太过于复杂，这里没有必要作为日志打印详细信息，故排除掉
-			boolean isNotExceptionClass = !clz.getName().endsWith("Exception");
-			if ((isInnerAppClass || isSimpleClass) && isNotExceptionClass) {
-				accessLog.putInputParam(paramNames[i], ToStringHelper.toJSON(args[i], true));
+			if (args[i] == null) {
+				accessLog.putInputParam(endpoint.getNullParamName(i), null);
+				continue;
+			}
+			if (endpoint.isJsonCaptured(i, args[i])) {
+				accessLog.putInputParam(endpoint.getParamName(i), ToStringHelper.toJSON(args[i], true, byteBudget));
 			} else {
-				accessLog.putInputParam(paramNames[i], args[i].toString());
+				accessLog.putInputParam(endpoint.getParamName(i), JsonHelper.truncate(args[i].toString(), byteBudget));
 			}
 		}
 	}
 
+	/**
+	 * 第一次调用时解析并缓存方法元数据及采集策略，之后直接从缓存读取，采集策略配置刷新后重新解析一次
+	 */
+	private EndpointDescriptor getEndpoint(ProceedingJoinPoint joinPoint) {
+		MethodSignature methodSignature = getMethodSignature(joinPoint);
+		Method method = methodSignature.getMethod();
+		Class<?> targetClass = joinPoint.getTarget().getClass();
+		MethodClassKey key = new MethodClassKey(method, targetClass);
+		EndpointDescriptor endpoint = endpoints.get(key);
+		int version = capturePolicyRegistry.getVersion();
+		if (endpoint == null) {
+			// 先get再computeIfAbsent，避免JDK8的computeIfAbsent在key已存在时仍然加锁
+			endpoint = endpoints.computeIfAbsent(key, k -> new EndpointDescriptor(targetClass, method,
+					methodSignature.getParameterNames(), capturePolicyRegistry.resolve(targetClass, method), version));
+		} else if (endpoint.getPolicyVersion() != version) {
+			// 采集策略配置已刷新，按新配置重新解析
+			endpoint = new EndpointDescriptor(targetClass, method, methodSignature.getParameterNames(),
+					capturePolicyRegistry.resolve(targetClass, method), version);
+			endpoints.put(key, endpoint);
+		}
+		return endpoint;
+	}
+
 	private String getErrMsg(HttpServletRequest request, Throwable e) {
 		String errMsg;
 		if (e instanceof ApiException) {
@@ -0,0 +1,128 @@
+package top.bootz.core.base.aop;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.springframework.util.ClassUtils;
+
+import top.bootz.commons.helper.ReflectionHelper;
+import top.bootz.core.log.CapturePolicy;
+
+/**
+ * controller方法的元数据，由访问日志切面在第一次调用时解析并缓存，之后每次请求直接读取，不再做任何反射
+ *
+ * @author Zhangq
+ */
+final class EndpointDescriptor {
+
+    /**
+     * 按参数的运行时类型缓存是否以json形式记录，ClassValue的查找不涉及反射
+     */
+    private static final ClassValue<Boolean> JSON_CAPTURED = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> clz) {
+            return isJsonCaptured(clz);
+        }
+    };
+
+    private final String className;
+
+    private final String methodName;
+
+    private final String[] paramNames;
+
+    /**
+     * 参数值为null时使用的参数名
+     */
+    private final String[] nullParamNames;
+
+    /**
+     * 各参数是否以json形式记录，参数声明类型不可被继承时预先确定，否则为null，按运行时类型判断
+     */
+    private final Boolean[] jsonCaptured;
+
+    private final boolean returned;
+
+    private final CapturePolicy capturePolicy;
+
+    /**
+     * 解析capturePolicy时采集策略配置的版本号
+     */
+    private final int policyVersion;
+
+    EndpointDescriptor(Class<?> targetClass, Method method, String[] paramNames, CapturePolicy capturePolicy,
+            int policyVersion) {
+        this.className = targetClass.getName();
+        this.methodName = method.getName();
+        Class<?>[] paramTypes = method.getParameterTypes();
+        this.paramNames = new String[paramTypes.length];
+        this.nullParamNames = new String[paramTypes.length];
+        this.jsonCaptured = new Boolean[paramTypes.length];
+        for (int i = 0; i < paramTypes.length; i++) {
+            this.nullParamNames[i] = nullParamName(i);
+            this.paramNames[i] = paramNames != null && i < paramNames.length ? paramNames[i] : nullParamNames[i];
+            Class<?> paramType = ClassUtils.resolvePrimitiveIfNecessary(paramTypes[i]);
+            // 数组类型总是final，但Object[]参数的运行时类型可能是其子类型数组，因此排除
+            if (!paramType.isArray() && Modifier.isFinal(paramType.getModifiers())) {
+                this.jsonCaptured[i] = isJsonCaptured(paramType);
+            }
+        }
+        this.returned = method.getReturnType() != void.class && method.getReturnType() != Void.class;
+        this.capturePolicy = capturePolicy;
+        this.policyVersion = policyVersion;
+    }
+
+    /**
+     * 判断逻辑与原先逐次判断时一致：项目内的类以及基本类型、字符串、集合、Map以json形式记录，异常类及其他类型记录toString
+     */
+    private static boolean isJsonCaptured(Class<?> clz) {
+        boolean isInnerAppClass = clz.getName().startsWith("com.orion");
+        boolean isSimpleClass = ReflectionHelper.isBaseClassOrString(clz) || ReflectionHelper.isCollection(clz)
+                || ReflectionHelper.isMap(clz);
+        // 异常处理切面中方法的参数太过于复杂，这里没有必要作为日志打印详细信息，故排除掉
+        boolean isNotExceptionClass = !clz.getName().endsWith("Exception");
+        return (isInnerAppClass || isSimpleClass) && isNotExceptionClass;
+    }
+
+    private static String nullParamName(int index) {
+        return "args_index_" + index;
+    }
+
+    /**
+     * @param arg
+     *            第index个参数的值，不能为null
+     */
+    boolean isJsonCaptured(int index, Object arg) {
+        Boolean captured = index < jsonCaptured.length ? jsonCaptured[index] : null;
+        return captured != null ? captured : JSON_CAPTURED.get(arg.getClass());
+    }
+
+    String getParamName(int index) {
+        return index < paramNames.length ? paramNames[index] : nullParamName(index);
+    }
+
+    String getNullParamName(int index) {
+        return index < nullParamNames.length ? nullParamNames[index] : nullParamName(index);
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    String getMethodName() {
+        return methodName;
+    }
+
+    boolean isReturned() {
+        return returned;
+    }
+
+    CapturePolicy getCapturePolicy() {
+        return capturePolicy;
+    }
+
+    int getPolicyVersion() {
+        return policyVersion;
+    }
+
+}
@@ -1,13 +1,29 @@
 package top.bootz.core.base.controller;
 
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 import top.bootz.commons.constant.CommonSecurityConstants;
@@ -17,6 +33,9 @@ import top.bootz.core.base.message.ErrorMessage;
 import top.bootz.core.base.message.RestMessage;
 import top.bootz.core.dictionary.MessageStatusEnum;
 import top.bootz.core.dictionary.SourceTypeEnum;
+import top.bootz.core.supporter.ExportFormat;
+import top.bootz.core.supporter.RowSource;
+import top.bootz.core.supporter.RowStreamWriter;
 
 /**
  * 提供所有Controller中的通用方法
@@ -26,6 +45,14 @@ import top.bootz.core.dictionary.SourceTypeEnum;
 @Slf4j
 public class BaseController {
 
+    /**
+     * 流式导出的异步超时时间，大结果集的导出需要较长时间，只作用于导出请求，不影响其他异步请求的默认超时
+     */
+    protected static final long STREAMING_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * 构造查询成功的消息体
      * 
@@ -89,6 +116,82 @@ public class BaseController {
         return new RestMessage<>(MessageStatusEnum.WARNING, warning, error);
     }
 
+    /**
+     * 构造流式导出的响应，用于导出大结果集
+     * <p>
+     * 响应体在mvc的异步线程中边读边写，以chunked方式返回，不经过RestMessage和SimpleListData，内存占用与记录数无关。
+     * 客户端读得慢时写操作阻塞，数据源随之暂停读取；客户端断开时写操作失败，数据源停止迭代并关闭游标。
+     * 数据源在异步线程中执行，jpa的Stream必须在数据源内部开启的只读事务中读取，不能依赖请求线程的事务。
+     * 异步超时时间为{@link #STREAMING_TIMEOUT_MILLIS}。
+     *
+     * @param fileName 下载的文件名，不含扩展名
+     * @param columns 导出的字段，CSV必须指定，JSON_LINES为空时输出整个对象
+     * @param source 数据源，如service中按条件遍历的方法
+     */
+    protected <T> ResponseEntity<StreamingResponseBody> buildStreamingResponse(String fileName, ExportFormat format,
+            List<String> columns, RowSource<T> source) {
+        return buildStreamingResponse(fileName, format, columns, source, STREAMING_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 构造流式导出的响应，指定异步超时时间
+     *
+     * @param timeoutMillis 异步超时时间(毫秒)，从响应体开始写入时算起
+     * @see #buildStreamingResponse(String, ExportFormat, List, RowSource)
+     */
+    protected <T> ResponseEntity<StreamingResponseBody> buildStreamingResponse(String fileName, ExportFormat format,
+            List<String> columns, RowSource<T> source, long timeoutMillis) {
+        applyStreamingTimeout(timeoutMillis);
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setContentType(MediaType.parseMediaType(format.getMediaType() + ";charset=UTF-8"));
+        responseHeaders.set(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + fileName + "." + format.getExtension() + "\"");
+        responseHeaders.setCacheControl(CacheControl.noStore());
+        // 关闭nginx的响应缓冲，否则代理会先缓存整个响应
+        responseHeaders.set("X-Accel-Buffering", "no");
+        StreamingResponseBody body = out -> {
+            RowStreamWriter<T> writer = new RowStreamWriter<>(out, format, objectMapper, columns);
+            try {
+                source.forEach(writer);
+                writer.close();
+                log.debug("export [{}] finished, {} rows written", fileName, writer.getRows());
+            } catch (UncheckedIOException e) {
+                log.warn("export [{}] aborted after {} rows: {}", fileName, writer.getRows(), e.getMessage());
+                throw e.getCause();
+            }
+        };
+        return new ResponseEntity<>(body, responseHeaders, HttpStatus.OK);
+    }
+
+    /**
+     * StreamingResponseBody由mvc包装成Callable异步执行，使用的是全局的异步超时时间。
+     * 在当前请求上注册拦截器，在异步处理开始前把本次请求的超时时间改为timeoutMillis
+     */
+    private static void applyStreamingTimeout(long timeoutMillis) {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder
+                .currentRequestAttributes();
+        WebAsyncUtils.getAsyncManager(attributes.getRequest()).registerCallableInterceptor(
+                StreamingTimeoutInterceptor.class.getName(), new StreamingTimeoutInterceptor(timeoutMillis));
+    }
+
+    private static final class StreamingTimeoutInterceptor implements CallableProcessingInterceptor {
+
+        private final long timeoutMillis;
+
+        private StreamingTimeoutInterceptor(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+            // 此时尚未调用startAsync，设置的超时时间会作用于本次异步处理
+            if (request instanceof AsyncWebRequest) {
+                ((AsyncWebRequest) request).setTimeout(timeoutMillis);
+            }
+        }
+
+    }
+
     /**
      * 获取请求Base Url
      *
@@ -0,0 +1,450 @@
+package top.bootz.core.base.message;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.context.SmartLifecycle;
+
+import com.google.common.base.Preconditions;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.core.base.service.Changes;
+import top.bootz.core.log.RabbitMessageLog;
+import top.bootz.core.log.RabbitMessageLogService;
+
+/**
+ * 批量消费消息的基础通用类
+ * <p>
+ * 每个消费者独占一个channel和一个线程，按prefetch预取消息，收到第一条消息后最多等待maxWaitMillis凑满batchSize条，
+ * 整批交给{@link #onMessages(List)}处理，处理成功后整批的接收状态交给消息日志写入器批量写入，并以multiple=true一次确认整批消息。
+ * 无法解析的消息单独拒绝。整批处理抛出异常时改为逐条处理，只拒绝仍然处理失败的消息，其余消息照常确认；
+ * 拒绝时不重新入队，队列配置了死信交换器时转入死信队列，与原先逐条手动确认时的处理方式一致。
+ * 存在{@link ProcessedMessageFilter}时，已经处理过的重复投递直接确认，不再交给{@link #onMessages(List)}。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Slf4j
+public abstract class BaseBatchReceiver implements SmartLifecycle {
+
+	/**
+	 * 没有消息时检查是否需要停止的间隔(毫秒)
+	 */
+	private static final long POLL_INTERVAL_MILLIS = 1000L;
+
+	/**
+	 * channel异常关闭后重新建立的间隔(毫秒)
+	 */
+	private static final long RECOVERY_INTERVAL_MILLIS = 5000L;
+
+	private final String queue;
+
+	private final ConnectionFactory connectionFactory;
+
+	private final MessageConverter messageConverter;
+
+	private final RabbitMessageLogService rabbitMessageLogService;
+
+	private final BatchReceiverSettings settings;
+
+	private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private final LongAdder acked = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder duplicated = new LongAdder();
+
+	private final ProcessedMessageFilter processedMessageFilter;
+
+	private volatile boolean running;
+
+	/**
+	 * @param processedMessageFilter
+	 *            为null时不去重，每次投递都交给{@link #onMessages(List)}
+	 */
+	protected BaseBatchReceiver(String queue, ConnectionFactory connectionFactory, MessageConverter messageConverter,
+			RabbitMessageLogService rabbitMessageLogService, BatchReceiverSettings settings,
+			ProcessedMessageFilter processedMessageFilter) {
+		Preconditions.checkArgument(settings.getConcurrency() > 0, "concurrency must be greater than 0");
+		Preconditions.checkArgument(settings.getBatchSize() > 0, "batchSize must be greater than 0");
+		Preconditions.checkArgument(settings.getPrefetch() >= settings.getBatchSize(),
+				"prefetch must not be less than batchSize");
+		Preconditions.checkArgument(settings.getMaxWaitMillis() >= 0, "maxWaitMillis must not be less than 0");
+		this.queue = queue;
+		this.connectionFactory = connectionFactory;
+		this.messageConverter = messageConverter;
+		this.rabbitMessageLogService = rabbitMessageLogService;
+		this.settings = settings;
+		this.processedMessageFilter = processedMessageFilter;
+	}
+
+	/**
+	 * 处理一批消息。抛出异常时会对其中每条消息单独再调用一次，因此批量处理中途失败时已经生效的部分必须能够安全地重复执行
+	 */
+	protected abstract void onMessages(List<RabbitMessage> messages) throws Exception;
+
+	@Override
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		workers.clear();
+		for (int i = 0; i < settings.getConcurrency(); i++) {
+			Thread thread = new Thread(new Worker(), queue + "-receiver-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			workers.add(thread);
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		running = false;
+		for (Thread worker : workers) {
+			try {
+				worker.join(POLL_INTERVAL_MILLIS + settings.getMaxWaitMillis() + 5000L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	/**
+	 * 最后启动、最先停止
+	 */
+	@Override
+	public int getPhase() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return 已处理并确认的消息数
+	 */
+	public long getAckedCount() {
+		return acked.sum();
+	}
+
+	/**
+	 * @return 被拒绝的消息数
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return 因已经处理过而跳过的重复消息数
+	 */
+	public long getDuplicatedCount() {
+		return duplicated.sum();
+	}
+
+	private final class Worker implements Runnable {
+
+		private BlockingQueue<Delivery> deliveries;
+
+		private Channel channel;
+
+		private String consumerTag;
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					if (channel == null || !channel.isOpen()) {
+						open();
+					}
+					receive();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (Exception e) {
+					log.error("An unknown error has occurred when consuming queue [" + queue + "]", e);
+					close();
+					sleepBeforeRecovery();
+				}
+			}
+			close();
+		}
+
+		private void open() throws IOException {
+			// channel重建后原有的deliveryTag全部失效，未处理的消息由broker重新投递
+			BlockingQueue<Delivery> queued = new LinkedBlockingQueue<>();
+			Channel created = connectionFactory.createConnection().createChannel(false);
+			created.basicQos(settings.getPrefetch());
+			String tag = created.basicConsume(queue, false, new DefaultConsumer(created) {
+				@Override
+				public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+						byte[] body) {
+					queued.offer(new Delivery(envelope, properties, body));
+				}
+			});
+			this.deliveries = queued;
+			this.channel = created;
+			this.consumerTag = tag;
+		}
+
+		private void receive() throws InterruptedException, IOException {
+			Delivery first = deliveries.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			if (first == null) {
+				return;
+			}
+			List<Delivery> batch = new ArrayList<>(settings.getBatchSize());
+			batch.add(first);
+			deliveries.drainTo(batch, settings.getBatchSize() - 1);
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getMaxWaitMillis());
+			while (batch.size() < settings.getBatchSize()) {
+				Delivery next = deliveries.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (next == null) {
+					break;
+				}
+				batch.add(next);
+				deliveries.drainTo(batch, settings.getBatchSize() - batch.size());
+			}
+			process(batch);
+		}
+
+		private void process(List<Delivery> batch) throws IOException {
+			List<RabbitMessage> messages = new ArrayList<>(batch.size());
+			List<Long> tags = new ArrayList<>(batch.size());
+			Set<Long> logged = new HashSet<>();
+			// 最后一条可以确认的消息，单独拒绝过的消息不能再参与multiple确认
+			long lastTag = -1L;
+			for (Delivery delivery : batch) {
+				long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+				RabbitMessage message = convert(delivery);
+				if (message == null) {
+					channel.basicNack(deliveryTag, false, false);
+					rejected.increment();
+				} else {
+					messages.add(message);
+					tags.add(deliveryTag);
+					lastTag = deliveryTag;
+					if (isLogged(delivery, message)) {
+						logged.add(message.getId());
+					}
+				}
+			}
+			if (messages.isEmpty()) {
+				return;
+			}
+			boolean[] processed = findProcessed(messages);
+			List<RabbitMessage> unprocessed = new ArrayList<>(messages.size());
+			for (int i = 0; i < processed.length; i++) {
+				if (!processed[i]) {
+					unprocessed.add(messages.get(i));
+				}
+			}
+			if (unprocessed.isEmpty()) {
+				channel.basicAck(lastTag, true);
+				return;
+			}
+			try {
+				onMessages(unprocessed);
+			} catch (Exception e) {
+				log.error("An unknown error has occurred when handle " + unprocessed.size() + " messages, handle them one by one. queue ["
+						+ queue + "]", e);
+				processOneByOne(messages, tags, processed, logged);
+				return;
+			}
+			markProcessed(unprocessed);
+			markReceived(unprocessed, logged);
+			channel.basicAck(lastTag, true);
+			acked.add(unprocessed.size());
+		}
+
+		/**
+		 * 整批处理失败后逐条处理，只拒绝处理失败的消息，已经处理过的重复消息和处理成功的消息逐条确认
+		 */
+		private void processOneByOne(List<RabbitMessage> messages, List<Long> tags, boolean[] processed,
+				Set<Long> logged) throws IOException {
+			List<RabbitMessage> succeeded = new ArrayList<>(messages.size());
+			List<Long> succeededTags = new ArrayList<>(messages.size());
+			for (int i = 0; i < messages.size(); i++) {
+				if (processed[i]) {
+					channel.basicAck(tags.get(i), false);
+					continue;
+				}
+				RabbitMessage message = messages.get(i);
+				try {
+					onMessages(Collections.singletonList(message));
+				} catch (Exception e) {
+					log.error("An unknown error has occurred when handle message [" + message.getId() + "]. queue [" + queue
+							+ "]", e);
+					channel.basicNack(tags.get(i), false, false);
+					rejected.increment();
+					continue;
+				}
+				succeeded.add(message);
+				succeededTags.add(tags.get(i));
+			}
+			if (succeeded.isEmpty()) {
+				return;
+			}
+			markProcessed(succeeded);
+			markReceived(succeeded, logged);
+			for (Long tag : succeededTags) {
+				channel.basicAck(tag, false);
+			}
+			acked.add(succeeded.size());
+		}
+
+		/**
+		 * 经由{@link BaseMessageSender}发出的消息，AMQP的messageId与消息编号相同，发送端会为它写入日志记录
+		 */
+		private boolean isLogged(Delivery delivery, RabbitMessage message) {
+			return message.getId() != null && String.valueOf(message.getId()).equals(delivery.getProperties().getMessageId());
+		}
+
+		private RabbitMessage convert(Delivery delivery) {
+			try {
+				Message message = new Message(delivery.getBody(), messagePropertiesConverter
+						.toMessageProperties(delivery.getProperties(), delivery.getEnvelope(), "UTF-8"));
+				Object payload = messageConverter.fromMessage(message);
+				if (payload instanceof RabbitMessage) {
+					return (RabbitMessage) payload;
+				}
+				log.error("The received message is illegal. queue [{}], payload: {}", queue, payload);
+			} catch (Exception e) {
+				log.error("The received message can not be converted. queue [" + queue + "]", e);
+			}
+			return null;
+		}
+
+		private void close() {
+			if (channel != null && channel.isOpen()) {
+				// 先取消消费，broker不再向该channel投递新消息，关闭channel后未确认的消息重新入队
+				if (consumerTag != null) {
+					try {
+						channel.basicCancel(consumerTag);
+					} catch (Exception e) {
+						log.debug("cancel consumer fail.", e);
+					}
+				}
+				try {
+					channel.close();
+				} catch (Exception e) {
+					log.debug("close channel fail.", e);
+				}
+			}
+			channel = null;
+			consumerTag = null;
+		}
+
+		private void sleepBeforeRecovery() {
+			try {
+				Thread.sleep(RECOVERY_INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+	/**
+	 * @return 与messages一一对应，true表示已经处理过，随同整批一起确认
+	 */
+	private boolean[] findProcessed(List<RabbitMessage> messages) {
+		if (processedMessageFilter == null) {
+			return new boolean[messages.size()];
+		}
+		List<Long> messageIds = new ArrayList<>(messages.size());
+		for (RabbitMessage message : messages) {
+			messageIds.add(message.getId());
+		}
+		boolean[] processed = processedMessageFilter.isProcessed(queue, messageIds);
+		for (int i = 0; i < processed.length; i++) {
+			if (processed[i]) {
+				log.info("skip processed message, queue [{}], messageId [{}]", queue, messageIds.get(i));
+				duplicated.increment();
+			}
+		}
+		return processed;
+	}
+
+	private void markProcessed(List<RabbitMessage> messages) {
+		if (processedMessageFilter == null) {
+			return;
+		}
+		List<Long> messageIds = new ArrayList<>(messages.size());
+		for (RabbitMessage message : messages) {
+			if (message.getId() != null) {
+				messageIds.add(message.getId());
+			}
+		}
+		processedMessageFilter.markProcessed(queue, messageIds);
+	}
+
+	/**
+	 * 记录接收状态。发送端的发送日志交给{@link RabbitMessageLogService#submitState(Long, Changes)}后最多延迟一个刷新周期才写入，
+	 * 消费者通常在此之前就已确认，因此由本系统发出的消息的接收状态同样提交给日志写入器，按消息编号upsert，与发送状态合并到同一条记录，
+	 * 先后顺序无关；其他来源的消息没有发送日志，只按消息编号更新已有的记录，不新建记录
+	 */
+	private void markReceived(List<RabbitMessage> messages, Set<Long> logged) {
+		LocalDateTime now = LocalDateTime.now();
+		Map<Long, Changes> received = new LinkedHashMap<>();
+		for (RabbitMessage message : messages) {
+			Long messageId = message.getId();
+			if (messageId == null) {
+				continue;
+			}
+			Changes changes = Changes.create(2).set(RabbitMessageLog.RECEIVED, Boolean.TRUE)
+					.set(RabbitMessageLog.RECEIVED_TIME, now);
+			if (!logged.contains(messageId)) {
+				received.put(messageId, changes);
+			} else if (!rabbitMessageLogService.submitState(messageId, changes)) {
+				log.warn("rabbit message log buffer is full, received state dropped. queue [{}], messageId [{}]", queue,
+						messageId);
+			}
+		}
+		if (received.isEmpty()) {
+			return;
+		}
+		try {
+			rabbitMessageLogService.updateByMessageId(received);
+		} catch (Exception e) {
+			log.warn("bulk update of received rabbit message logs failed. queue [" + queue + "]", e);
+		}
+	}
+
+}
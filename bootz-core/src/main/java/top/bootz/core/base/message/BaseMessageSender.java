@@ -1,27 +1,40 @@
 package top.bootz.core.base.message;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.support.CorrelationData;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.common.base.Preconditions;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import top.bootz.commons.snowflake.IdGenerator;
+import top.bootz.core.base.service.Changes;
 import top.bootz.core.log.RabbitMessageLog;
 import top.bootz.core.log.RabbitMessageLogService;
+import top.bootz.core.outbox.OutboxService;
 
 /**
  * 发送消息的基础通用类
+ * <p>
+ * 已发送但尚未收到broker确认的消息记录在内存中的待确认表里(以消息编号为key)，确认回调直接从表中取出，
+ * 消息日志的各个状态变更只提交给{@link RabbitMessageLogService#submitState(Long, Changes)}，由后台线程合并后批量upsert，
+ * 发送线程和回调线程都不再访问mongodb。
  *
  * @author John
  * @time 2018年6月24日 下午8:03:43
@@ -31,12 +44,36 @@ import top.bootz.core.log.RabbitMessageLogService;
 @NoArgsConstructor
 public class BaseMessageSender {
 
+    /**
+     * 批量发送时等待broker确认的默认超时时间(毫秒)
+     */
+    public static final long DEFAULT_BATCH_CONFIRM_TIMEOUT_MILLIS = 30000L;
+
+    /**
+     * 按超时处理的消息在该倍数的确认超时时间内仍接受迟到的确认
+     */
+    private static final int LATE_CONFIRM_WINDOW_FACTOR = 10;
+
     private RabbitMessageLogService rabbitMessageLogService;
 
     private RabbitTemplate rabbitTemplate;
 
     private IdGenerator idGenerator;
 
+    @Autowired(required = false)
+    private OutboxService outboxService;
+
+    /**
+     * 待确认表：已发送但尚未收到broker确认的消息。多个发送器共用同一个RabbitTemplate时只有第一个发送器的确认回调生效，
+     * 因此所有发送器共用一张表，消息编号全局唯一
+     */
+    private static final Map<Long, OutstandingConfirm> OUTSTANDING_CONFIRMS = new ConcurrentHashMap<>();
+
+    /**
+     * 已按确认超时处理的消息编号及其超时时间(System.nanoTime())，迟到的确认据此更正消息日志中的确认状态
+     */
+    private static final Map<Long, Long> EXPIRED_CONFIRMS = new ConcurrentHashMap<>();
+
     /**
      * 由子类注入
      */
@@ -71,33 +108,230 @@ public class BaseMessageSender {
         }
         message.setId(messageId);
 
+        // 先登记到待确认表再发送，确认回调可能早于convertAndSend返回
+        OUTSTANDING_CONFIRMS.put(messageId, new OutstandingConfirm(exchange, routingKey, System.nanoTime(), null));
         boolean isSent;
-        RabbitMessageLog messageLog = null;
         try {
-
-            // 这里需要先将发送日志保存下之后再发送rabbitmq消息。防止回退消息和确认消息时，查不到mongobd里保存的记录
-            messageLog = new RabbitMessageLog(exchange, routingKey, message, false);
-            rabbitMessageLogService.save(messageLog);
-
             CorrelationData correlationData = new CorrelationData(String.valueOf(messageId));
             rabbitTemplate.convertAndSend(exchange, routingKey, message,
                     new CustomMessagePostProcessor(messageId, messageHeaders), correlationData);
             isSent = true;
         } catch (Exception e) {
+            OUTSTANDING_CONFIRMS.remove(messageId);
             log.error("An exception has occurred when sending rabbit message. exchange: " + exchange + ", routingKey: "
                     + routingKey + ", message: " + message.toJson(), e);
             isSent = false;
         }
 
-        if (messageLog != null) {
-            Map<String, Object> updateMap = new HashMap<>();
-            updateMap.put("sent", isSent);
-            updateMap.put("sentTime", LocalDateTime.now());
-            rabbitMessageLogService.updateFiled(messageLog.getId(), updateMap);
+        // 发送日志与确认、退回、接收等状态按消息编号upsert到同一条记录上，先后顺序无关
+        LocalDateTime now = LocalDateTime.now();
+        submitState(messageId, Changes.create(6).set(RabbitMessageLog.EXCHANGE, exchange)
+                .set(RabbitMessageLog.ROUTING_KEY, routingKey).set(RabbitMessageLog.MESSAGE, message)
+                .set(RabbitMessageLog.SENT, isSent).set(RabbitMessageLog.SENT_TIME, now)
+                .set(RabbitMessageLog.CREATE_TIME, now));
+        return messageId;
+    }
+
+    /**
+     * 以发件箱模式发送消息：只把消息写入发件箱，由后台中继发送并等待broker确认，调用线程不访问broker。
+     * 在调用方的事务中调用时，消息与业务数据一同提交，事务回滚则消息不会发出
+     *
+     * @return 消息编号
+     */
+    public Long sendViaOutbox(String exchange, String routingKey, RabbitMessage message,
+            Map<String, Object> messageHeaders) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(exchange), "Rabbit exchange must not be blank");
+        Preconditions.checkArgument(StringUtils.isNotBlank(routingKey), "Rabbit routing key must not be blank");
+        Preconditions.checkArgument(message != null, "Rabbit message payload must not be blank");
+        Preconditions.checkState(outboxService != null, "Rabbit message outbox is not available");
+
+        Long messageId = message.getId();
+        if (messageId == null || messageId == 0L) {
+            messageId = idGenerator.nextId();
         }
+        message.setId(messageId);
+        outboxService.append(exchange, routingKey, message, messageHeaders);
         return messageId;
     }
 
+    /**
+     * 批量发送消息，使用默认的确认超时时间且不附加消息头
+     *
+     * @see #sendBatch(String, String, List, Map, long)
+     */
+    public List<SendResult> sendBatch(String exchange, String routingKey, List<? extends RabbitMessage> messages) {
+        return sendBatch(exchange, routingKey, messages, null, DEFAULT_BATCH_CONFIRM_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 批量发送消息，适用于一次推送大量消息的场景
+     * <p>
+     * 缺少编号的消息一次性从IdGenerator中批量取号，整批消息在同一个channel上连续发出后统一等待broker确认(confirm-select模式下的批量确认)，
+     * 等待结束后整批的发送日志连同确认、退回状态一并提交给消息日志写入器，由后台线程合并后批量upsert。超时仍未确认的消息状态为UNCONFIRMED，其确认结果之后照常记入消息日志。
+     *
+     * @param confirmTimeoutMillis
+     *            等待整批确认的超时时间(毫秒)
+     * @return 与messages一一对应的发送结果
+     */
+    public List<SendResult> sendBatch(String exchange, String routingKey, List<? extends RabbitMessage> messages,
+            Map<String, Object> messageHeaders, long confirmTimeoutMillis) {
+        Preconditions.checkArgument(StringUtils.isNotBlank(exchange), "Rabbit exchange must not be blank");
+        Preconditions.checkArgument(StringUtils.isNotBlank(routingKey), "Rabbit routing key must not be blank");
+        Preconditions.checkArgument(messages != null && !messages.contains(null),
+                "Rabbit message payloads must not be blank");
+        Preconditions.checkArgument(confirmTimeoutMillis > 0, "confirmTimeoutMillis must be greater than 0");
+        if (messages.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+
+        // 手动设置消息唯一标识，缺少编号的消息批量取号
+        int missing = 0;
+        for (RabbitMessage message : messages) {
+            if (message.getId() == null || message.getId() == 0L) {
+                missing++;
+            }
+        }
+        if (missing > 0) {
+            long[] ids = idGenerator.nextIds(missing);
+            int next = 0;
+            for (RabbitMessage message : messages) {
+                if (message.getId() == null || message.getId() == 0L) {
+                    message.setId(ids[next++]);
+                }
+            }
+        }
+
+        List<SendResult> results = new ArrayList<>(messages.size());
+        long sentNanos = System.nanoTime();
+        for (RabbitMessage message : messages) {
+            SendResult result = new SendResult(message.getId());
+            results.add(result);
+            OUTSTANDING_CONFIRMS.put(message.getId(), new OutstandingConfirm(exchange, routingKey, sentNanos, result));
+        }
+
+        // 整批消息在同一个channel上发出并等待确认，确认回调在waitForConfirms返回之前就已执行完毕
+        rabbitTemplate.invoke((RabbitOperations operations) -> {
+            for (int i = 0; i < messages.size(); i++) {
+                RabbitMessage message = messages.get(i);
+                Long messageId = message.getId();
+                try {
+                    operations.convertAndSend(exchange, routingKey, message,
+                            new CustomMessagePostProcessor(messageId, messageHeaders),
+                            new CorrelationData(String.valueOf(messageId)));
+                } catch (Exception e) {
+                    OUTSTANDING_CONFIRMS.remove(messageId);
+                    results.get(i).complete(SendResult.Status.FAILED, e.getMessage());
+                    log.error("An exception has occurred when sending rabbit message. exchange: " + exchange
+                            + ", routingKey: " + routingKey + ", message: " + message.toJson(), e);
+                }
+            }
+            try {
+                operations.waitForConfirms(confirmTimeoutMillis);
+            } catch (Exception e) {
+                log.warn("waiting for confirms of a batch of {} rabbit messages failed. exchange: {}, routingKey: {}, "
+                        + "cause: {}", messages.size(), exchange, routingKey, e.getMessage());
+            }
+            return null;
+        });
+
+        // 整批的发送日志及已知的确认、退回状态交给消息日志写入器，发送线程不等待mongodb
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < messages.size(); i++) {
+            SendResult result = results.get(i);
+            result.complete(SendResult.Status.UNCONFIRMED, "confirm timeout");
+            submitState(result.getMessageId(), batchLogState(exchange, routingKey, messages.get(i), result, now));
+        }
+        return results;
+    }
+
+    private static Changes batchLogState(String exchange, String routingKey, RabbitMessage message,
+            SendResult result, LocalDateTime now) {
+        Changes changes = Changes.create(9).set(RabbitMessageLog.EXCHANGE, exchange)
+                .set(RabbitMessageLog.ROUTING_KEY, routingKey).set(RabbitMessageLog.MESSAGE, message)
+                .set(RabbitMessageLog.SENT, result.getStatus() != SendResult.Status.FAILED)
+                .set(RabbitMessageLog.SENT_TIME, now).set(RabbitMessageLog.CREATE_TIME, now);
+        switch (result.getStatus()) {
+        case CONFIRMED:
+        case NACKED:
+            changes.set(RabbitMessageLog.CONFIRMED, result.getStatus() == SendResult.Status.CONFIRMED)
+                    .set(RabbitMessageLog.CONFIRMED_TIME, now);
+            if (StringUtils.isNotBlank(result.getCause())) {
+                changes.set(RabbitMessageLog.UNCONFIRMED_CAUSE, result.getCause());
+            }
+            break;
+        case RETURNED:
+            changes.set(RabbitMessageLog.RETURNED, Boolean.TRUE).set(RabbitMessageLog.RETURNED_TIME, now)
+                    .set(RabbitMessageLog.RETURNED_CAUSE, result.getCause());
+            break;
+        default:
+            break;
+        }
+        return changes;
+    }
+
+    /**
+     * 将超过timeoutMillis仍未收到broker确认的消息从待确认表中移除，并在消息日志中记为确认失败。
+     * 此后{@value #LATE_CONFIRM_WINDOW_FACTOR}倍timeoutMillis内收到的迟到确认仍会更正消息日志中的确认状态
+     *
+     * @return 本次移除的消息数
+     */
+    public int expireOutstandingConfirms(long timeoutMillis) {
+        long now = System.nanoTime();
+        long deadline = now - TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long lateDeadline = now - TimeUnit.MILLISECONDS.toNanos(timeoutMillis * LATE_CONFIRM_WINDOW_FACTOR);
+        EXPIRED_CONFIRMS.values().removeIf(expiredNanos -> expiredNanos - lateDeadline < 0);
+        int expired = 0;
+        Iterator<Map.Entry<Long, OutstandingConfirm>> it = OUTSTANDING_CONFIRMS.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, OutstandingConfirm> entry = it.next();
+            if (entry.getValue().getSentNanos() - deadline < 0
+                    && OUTSTANDING_CONFIRMS.remove(entry.getKey(), entry.getValue())) {
+                log.warn("message confirm timeout, messageId: {}, exchange: {}, routingKey: {}", entry.getKey(),
+                        entry.getValue().getExchange(), entry.getValue().getRoutingKey());
+                submitState(entry.getKey(), Changes.create(3).set(RabbitMessageLog.CONFIRMED, Boolean.FALSE)
+                        .set(RabbitMessageLog.CONFIRMED_TIME, LocalDateTime.now())
+                        .set(RabbitMessageLog.UNCONFIRMED_CAUSE, "confirm timeout"));
+                EXPIRED_CONFIRMS.put(entry.getKey(), now);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return 已发送但尚未收到broker确认的消息数
+     */
+    public static int getOutstandingConfirmCount() {
+        return OUTSTANDING_CONFIRMS.size();
+    }
+
+    private void submitState(Long messageId, Changes changes) {
+        if (!rabbitMessageLogService.submitState(messageId, changes)) {
+            log.warn("rabbit message log buffer is full, state change dropped. messageId: {}, state: {}", messageId,
+                    changes);
+        }
+    }
+
+    /**
+     * 待确认表中的一条记录
+     */
+    @Getter
+    @AllArgsConstructor
+    private static final class OutstandingConfirm {
+
+        private final String exchange;
+
+        private final String routingKey;
+
+        private final long sentNanos;
+
+        /**
+         * 批量发送中等待确认的结果，单条发送时为null
+         */
+        private final SendResult result;
+
+    }
+
     /**
      * 消息后处理器
      */
@@ -131,18 +365,35 @@ public class BaseMessageSender {
         // broker服务器确认消息已递送到指定队列(此时消息已进入队列，但不代表消费者已经成功消费。消费者端手动确认与此处发送端的确认回调不是一码事)的回调
         if (!rabbitTemplate.isConfirmListener()) {
             this.rabbitTemplate.setConfirmCallback((CorrelationData correlationData, boolean ack, String cause) -> {
-                String messageId = correlationData.getId();
+                Long messageId = Long.valueOf(correlationData.getId());
                 log.debug("message is confirmed, messageId: {}, ack: {}, cause: {}", messageId, ack, cause);
-                Optional<RabbitMessageLog> opt = rabbitMessageLogService.findByMessageId(Long.valueOf(messageId));
-                opt.ifPresent(messageLog -> {
-                    Map<String, Object> updateMap = new HashMap<>();
-                    updateMap.put("confirmed", ack);
-                    updateMap.put("confirmedTime", LocalDateTime.now());
-                    if (StringUtils.isNotBlank(cause)) {
-                        updateMap.put("unconfirmedCause", cause);
+                OutstandingConfirm outstanding = OUTSTANDING_CONFIRMS.remove(messageId);
+                if (outstanding == null) {
+                    if (EXPIRED_CONFIRMS.remove(messageId) != null) {
+                        // 已按超时记为确认失败，以迟到的确认结果为准
+                        log.info("late message confirm, messageId: {}, ack: {}, cause: {}", messageId, ack, cause);
+                        Changes changes = Changes.create(3).set(RabbitMessageLog.CONFIRMED, ack)
+                                .set(RabbitMessageLog.CONFIRMED_TIME, LocalDateTime.now());
+                        submitState(messageId, StringUtils.isNotBlank(cause)
+                                ? changes.set(RabbitMessageLog.UNCONFIRMED_CAUSE, cause)
+                                : changes.unset(RabbitMessageLog.UNCONFIRMED_CAUSE));
+                        return;
                     }
-                    rabbitMessageLogService.updateFiled(messageLog.getId(), updateMap);
-                });
+                    // 已被退回、不是经由本发送器发出的消息，或者超时后过久才收到确认
+                    log.debug("message confirm is not outstanding, messageId: {}", messageId);
+                    return;
+                }
+                if (outstanding.getResult() != null && outstanding.getResult().complete(
+                        ack ? SendResult.Status.CONFIRMED : SendResult.Status.NACKED, cause)) {
+                    // 批量发送仍在等待确认，由批量发送统一写入消息日志
+                    return;
+                }
+                Changes changes = Changes.create(3).set(RabbitMessageLog.CONFIRMED, ack)
+                        .set(RabbitMessageLog.CONFIRMED_TIME, LocalDateTime.now());
+                if (StringUtils.isNotBlank(cause)) {
+                    changes.set(RabbitMessageLog.UNCONFIRMED_CAUSE, cause);
+                }
+                submitState(messageId, changes);
             });
         }
 
@@ -151,15 +402,16 @@ public class BaseMessageSender {
             log.debug(
                     "message is returned callback, messageId:{}; replyCode:{}; replyText:{}; exchange:{}; routingKey:{}",
                     message, replyCode, replyText, exchange, routingKey);
-            String messageId = message.getMessageProperties().getMessageId();
-            Optional<RabbitMessageLog> opt = rabbitMessageLogService.findByMessageId(Long.valueOf(messageId));
-            opt.ifPresent(messageLog -> {
-                Map<String, Object> updateMap = new HashMap<>();
-                updateMap.put("returned", Boolean.TRUE);
-                updateMap.put("returnedTime", LocalDateTime.now());
-                updateMap.put("returnedCause", replyCode + ":" + replyText);
-                rabbitMessageLogService.updateFiled(messageLog.getId(), updateMap);
-            });
+            Long messageId = Long.valueOf(message.getMessageProperties().getMessageId());
+            // 退回的消息随后仍会收到broker的确认，退回即是最终状态，不再等待确认
+            OutstandingConfirm outstanding = OUTSTANDING_CONFIRMS.remove(messageId);
+            if (outstanding != null && outstanding.getResult() != null
+                    && outstanding.getResult().complete(SendResult.Status.RETURNED, replyCode + ":" + replyText)) {
+                return;
+            }
+            submitState(messageId, Changes.create(3).set(RabbitMessageLog.RETURNED, Boolean.TRUE)
+                    .set(RabbitMessageLog.RETURNED_TIME, LocalDateTime.now())
+                    .set(RabbitMessageLog.RETURNED_CAUSE, replyCode + ":" + replyText));
         });
     }
 
@@ -0,0 +1,36 @@
+package top.bootz.core.base.message;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量消费者的参数
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+
+@Data
+@NoArgsConstructor
+public class BatchReceiverSettings {
+
+	/**
+	 * 每个队列的消费者数量，每个消费者独占一个channel和一个线程
+	 */
+	private int concurrency = 2;
+
+	/**
+	 * 每个channel未确认消息数的上限(basic.qos)，不能小于batchSize
+	 */
+	private int prefetch = 250;
+
+	/**
+	 * 每批处理并确认的最大消息数
+	 */
+	private int batchSize = 100;
+
+	/**
+	 * 收到一批中的第一条消息后，最多再等待多久凑满一批(毫秒)
+	 */
+	private long maxWaitMillis = 50L;
+
+}
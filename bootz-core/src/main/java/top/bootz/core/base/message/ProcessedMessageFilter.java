@@ -0,0 +1,185 @@
+package top.bootz.core.base.message;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 消费端的消息去重过滤器，按消费者(队列)和消息编号记录已经处理过的消息
+ * <p>
+ * 配置了redis时以按ttl分桶的redis set为准，每批消息一次pipeline查询，其他进程处理过的消息、本进程重启前处理过的消息都能识别；
+ * redis访问失败时按未处理放行，宁可重复处理也不丢消息。
+ * <p>
+ * 内存中的布隆过滤器只记录本进程处理过的消息，未命中不能说明其他进程没有处理过，因此只在没有配置redis时使用，适用于单实例部署：
+ * 判定为可能已处理的消息按已处理对待，误判率即为fpp。每个消费者保留两代布隆过滤器，当代写满expectedInsertions条后整体替换掉上一代，内存占用有上限。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Slf4j
+public class ProcessedMessageFilter {
+
+    private static final String KEY_PREFIX = "bootz:rabbit:processed:";
+
+    private final int expectedInsertions;
+
+    private final double fpp;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final long ttlMillis;
+
+    private final Map<String, Generations> filters = new ConcurrentHashMap<>();
+
+    /**
+     * @param expectedInsertions
+     *            每一代布隆过滤器容纳的消息数
+     * @param fpp
+     *            布隆过滤器的误判率
+     * @param redisTemplate
+     *            为null时只使用内存中的布隆过滤器，多个实例消费同一队列时无法识别其他实例处理过的消息
+     * @param ttlMillis
+     *            redis中已处理记录的最短保留时间(毫秒)，实际保留ttl到2倍ttl之间
+     */
+    public ProcessedMessageFilter(int expectedInsertions, double fpp, StringRedisTemplate redisTemplate,
+            long ttlMillis) {
+        Preconditions.checkArgument(expectedInsertions > 0, "expectedInsertions must be greater than 0");
+        Preconditions.checkArgument(fpp > 0D && fpp < 1D, "fpp must be between 0 and 1");
+        Preconditions.checkArgument(ttlMillis > 0, "ttlMillis must be greater than 0");
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.redisTemplate = redisTemplate;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return 与messageIds一一对应，是否已经处理过
+     */
+    public boolean[] isProcessed(String consumer, List<Long> messageIds) {
+        boolean[] processed = new boolean[messageIds.size()];
+        if (redisTemplate == null) {
+            generations(consumer).mightContain(messageIds).forEach(i -> processed[i] = true);
+            return processed;
+        }
+        List<Integer> candidates = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            if (messageIds.get(i) != null) {
+                candidates.add(i);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return processed;
+        }
+        try {
+            long bucket = System.currentTimeMillis() / ttlMillis;
+            String current = key(consumer, bucket);
+            String previous = key(consumer, bucket - 1);
+            List<Object> members = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Integer i : candidates) {
+                    String member = String.valueOf(messageIds.get(i));
+                    stringConnection.sIsMember(current, member);
+                    stringConnection.sIsMember(previous, member);
+                }
+                return null;
+            });
+            for (int j = 0; j < candidates.size(); j++) {
+                processed[candidates.get(j)] = Boolean.TRUE.equals(members.get(2 * j))
+                        || Boolean.TRUE.equals(members.get(2 * j + 1));
+            }
+        } catch (Exception e) {
+            log.warn("check processed messages in redis failed, consumer: " + consumer, e);
+        }
+        return processed;
+    }
+
+    /**
+     * 记录一批已经处理完成的消息
+     */
+    public void markProcessed(String consumer, Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        if (redisTemplate == null) {
+            generations(consumer).put(messageIds);
+            return;
+        }
+        try {
+            String current = key(consumer, System.currentTimeMillis() / ttlMillis);
+            String[] members = messageIds.stream().map(String::valueOf).toArray(String[]::new);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.sAdd(current, members);
+                stringConnection.pExpire(current, 2 * ttlMillis);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("mark processed messages in redis failed, consumer: " + consumer, e);
+        }
+    }
+
+    private Generations generations(String consumer) {
+        Generations generations = filters.get(consumer);
+        return generations != null ? generations : filters.computeIfAbsent(consumer, k -> new Generations());
+    }
+
+    private static String key(String consumer, long bucket) {
+        return KEY_PREFIX + consumer + ":" + bucket;
+    }
+
+    /**
+     * 两代布隆过滤器。guava的BloomFilter在该版本中不是线程安全的，读写都需要加锁，每批消息只加锁一次
+     */
+    private final class Generations {
+
+        private BloomFilter<Long> current = newFilter();
+
+        private BloomFilter<Long> previous = newFilter();
+
+        private int count;
+
+        /**
+         * @return 可能已经处理过的消息在messageIds中的下标
+         */
+        synchronized List<Integer> mightContain(List<Long> messageIds) {
+            List<Integer> suspects = new ArrayList<>();
+            for (int i = 0; i < messageIds.size(); i++) {
+                Long messageId = messageIds.get(i);
+                if (messageId != null && (current.mightContain(messageId) || previous.mightContain(messageId))) {
+                    suspects.add(i);
+                }
+            }
+            return suspects;
+        }
+
+        synchronized void put(Collection<Long> messageIds) {
+            for (Long messageId : messageIds) {
+                if (count >= expectedInsertions) {
+                    previous = current;
+                    current = newFilter();
+                    count = 0;
+                }
+                if (current.put(messageId)) {
+                    count++;
+                }
+            }
+        }
+
+        private BloomFilter<Long> newFilter() {
+            return BloomFilter.create(Funnels.longFunnel(), expectedInsertions, fpp);
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package top.bootz.core.base.message;
+
+import lombok.Getter;
+
+/**
+ * 批量发送时单条消息的发送结果
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Getter
+public class SendResult {
+
+    public enum Status {
+        /** 已发出，尚未收到broker确认 */
+        PENDING,
+        /** broker确认成功 */
+        CONFIRMED,
+        /** broker确认失败 */
+        NACKED,
+        /** 找不到可路由的队列，被broker退回 */
+        RETURNED,
+        /** 发送时出现异常，消息没有发出 */
+        FAILED,
+        /** 等待超时仍未收到broker确认，确认结果之后只记录在消息日志中 */
+        UNCONFIRMED
+    }
+
+    private final Long messageId;
+
+    private volatile Status status = Status.PENDING;
+
+    /**
+     * 确认失败、退回或发送失败的原因
+     */
+    private volatile String cause;
+
+    SendResult(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    /**
+     * 只有PENDING状态可以变更，已退回的消息随后收到的确认不再覆盖退回状态
+     *
+     * @return 是否变更成功
+     */
+    synchronized boolean complete(Status status, String cause) {
+        if (this.status != Status.PENDING) {
+            return false;
+        }
+        this.status = status;
+        this.cause = cause;
+        return true;
+    }
+
+    public boolean isSuccessed() {
+        return status == Status.CONFIRMED;
+    }
+
+}
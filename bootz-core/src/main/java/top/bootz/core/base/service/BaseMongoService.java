@@ -1,17 +1,30 @@
 package top.bootz.core.base.service;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.data.util.Pair;
 
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.result.UpdateResult;
 
 import lombok.NoArgsConstructor;
+import top.bootz.core.supporter.KeysetPaging;
+import top.bootz.core.supporter.MongoKeysetPaging;
+import top.bootz.core.supporter.PagingInfo;
 
 /**
  * @Author : momogoing@163.com
@@ -21,6 +34,14 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class BaseMongoService<T> {
 
+    private static final String ID = "id";
+
+    /**
+     * 驱动不允许执行空的批量操作，空批次直接返回该结果
+     */
+    private static final BulkWriteResult EMPTY_BULK_RESULT = BulkWriteResult.acknowledged(0, 0, 0, 0,
+            Collections.emptyList());
+
     private MongoTemplate mongoTemplate;
 
     private Class<T> clazz;
@@ -33,13 +54,141 @@ public class BaseMongoService<T> {
 
     /**
      * 单独更新指定的某几个字段
+     *
+     * @deprecated 使用{@link #updateFields(ObjectId, Changes)}，不需要为每次更新构造Map
      */
+    @Deprecated
     public UpdateResult updateFiled(ObjectId id, Map<String, Object> fieldValueMap) {
         Update update = new Update();
         for (Map.Entry<String, Object> entry : fieldValueMap.entrySet()) {
             update.set(entry.getKey(), entry.getValue());
         }
-        return this.mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)), update, clazz);
+        return this.mongoTemplate.updateFirst(byId(id), update, clazz);
+    }
+
+    /**
+     * 单独更新指定的某几个字段
+     */
+    public UpdateResult updateFields(ObjectId id, Changes changes) {
+        return this.mongoTemplate.updateFirst(byId(id), changes.toUpdate(), clazz);
+    }
+
+    /**
+     * 按主键批量更新，无序执行，整批只需一次请求
+     */
+    public BulkWriteResult bulkUpdate(List<IdAndChanges> updates) {
+        if (updates.isEmpty()) {
+            return EMPTY_BULK_RESULT;
+        }
+        List<Pair<Query, Update>> pairs = new ArrayList<>(updates.size());
+        for (IdAndChanges idAndChanges : updates) {
+            pairs.add(Pair.of(byId(idAndChanges.getId()), idAndChanges.getChanges().toUpdate()));
+        }
+        return bulkOps().updateOne(pairs).execute();
+    }
+
+    /**
+     * 更新第一条匹配的文档，没有匹配的文档时插入一条
+     */
+    public UpdateResult upsert(Query query, Changes changes) {
+        return this.mongoTemplate.upsert(query, changes.toUpdate(), clazz);
+    }
+
+    /**
+     * 批量upsert，无序执行，整批只需一次请求
+     */
+    public BulkWriteResult bulkUpsert(List<Pair<Query, Update>> upserts) {
+        if (upserts.isEmpty()) {
+            return EMPTY_BULK_RESULT;
+        }
+        return bulkOps().upsert(upserts).execute();
+    }
+
+    /**
+     * 原子地更新第一条匹配的文档并返回
+     *
+     * @param returnNew
+     *            true返回更新后的文档，false返回更新前的文档
+     * @return 没有匹配的文档时返回null
+     */
+    public T findAndModify(Query query, Changes changes, boolean returnNew) {
+        return this.mongoTemplate.findAndModify(query, changes.toUpdate(),
+                FindAndModifyOptions.options().returnNew(returnNew), clazz);
+    }
+
+    /**
+     * 只读取指定的字段，其余字段为null
+     */
+    public T findOne(Query query, String... fields) {
+        return this.mongoTemplate.findOne(project(query, fields), clazz);
+    }
+
+    /**
+     * 只读取指定的字段，其余字段为null
+     */
+    public List<T> find(Query query, String... fields) {
+        return this.mongoTemplate.find(project(query, fields), clazz);
+    }
+
+    /**
+     * 分页查询，按paging的分页方式追加排序和范围，并按countMode统计总数。
+     * 游标分页时paging中的nextCursor和hasNext会被更新
+     */
+    public List<T> findPage(Query query, PagingInfo paging) {
+        switch (paging.getCountMode()) {
+        case EXACT:
+            KeysetPaging.setTotal(paging, this.mongoTemplate.count(query, clazz));
+            break;
+        case ESTIMATED:
+            KeysetPaging.setTotal(paging, this.mongoTemplate.getCollection(this.mongoTemplate.getCollectionName(clazz))
+                    .count());
+            break;
+        default:
+            break;
+        }
+        if (!paging.isKeyset()) {
+            return this.mongoTemplate.find(MongoKeysetPaging.applyOffset(query, paging), clazz);
+        }
+        List<T> rows = this.mongoTemplate.find(MongoKeysetPaging.apply(query, paging, ID), clazz);
+        return KeysetPaging.complete(rows, paging, ID);
+    }
+
+    /**
+     * 用游标逐条读取匹配的文档，驱动按批次拉取，不会把整个结果集加载到内存，用于导出等大结果集的场景
+     */
+    public void forEach(Query query, Consumer<? super T> action) {
+        try (CloseableIterator<T> cursor = this.mongoTemplate.stream(query, clazz)) {
+            while (cursor.hasNext()) {
+                action.accept(cursor.next());
+            }
+        }
+    }
+
+    protected BulkOperations bulkOps() {
+        return this.mongoTemplate.bulkOps(BulkMode.UNORDERED, clazz);
+    }
+
+    protected BulkOperations bulkOps(String collectionName) {
+        return this.mongoTemplate.bulkOps(BulkMode.UNORDERED, clazz, collectionName);
+    }
+
+    protected MongoTemplate getMongoTemplate() {
+        return mongoTemplate;
+    }
+
+    protected Class<T> getEntityClass() {
+        return clazz;
+    }
+
+    private static Query byId(ObjectId id) {
+        return Query.query(Criteria.where(ID).is(id));
+    }
+
+    private static Query project(Query query, String... fields) {
+        for (String field : fields) {
+            query.fields().include(field);
+        }
+        return query;
     }
 
 }
@@ -0,0 +1,168 @@
+package top.bootz.core.base.service;
+
+import java.util.Arrays;
+
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * mongodb局部更新的变更集合
+ * <p>
+ * 变更按顺序记录在几个数组中，不为每次更新分配Map，也不立即构造{@link Update}，
+ * 可以在业务线程中廉价地创建并合并，到真正写入时(通常在后台线程中)再调用{@link #toUpdate()}。
+ * 对同一字段的多次变更以最后一次为准，即使操作不同(如先set后unset)也只输出最后一次，避免同一路径出现在两个操作符中。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public final class Changes {
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private enum Op {
+        SET, SET_ON_INSERT, UNSET, INC
+    }
+
+    private Op[] ops;
+
+    private String[] fields;
+
+    private Object[] values;
+
+    private int size;
+
+    private Changes(int capacity) {
+        this.ops = new Op[capacity];
+        this.fields = new String[capacity];
+        this.values = new Object[capacity];
+    }
+
+    public static Changes create() {
+        return new Changes(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize
+     *            预计的变更数
+     */
+    public static Changes create(int expectedSize) {
+        Preconditions.checkArgument(expectedSize > 0, "expectedSize must be greater than 0");
+        return new Changes(expectedSize);
+    }
+
+    public <V> Changes set(MongoField<V> field, V value) {
+        return add(Op.SET, field.getName(), value);
+    }
+
+    public Changes set(String field, Object value) {
+        return add(Op.SET, field, value);
+    }
+
+    /**
+     * 仅在upsert插入新文档时设置
+     */
+    public <V> Changes setOnInsert(MongoField<V> field, V value) {
+        return add(Op.SET_ON_INSERT, field.getName(), value);
+    }
+
+    public Changes unset(MongoField<?> field) {
+        return add(Op.UNSET, field.getName(), null);
+    }
+
+    public <V extends Number> Changes inc(MongoField<V> field, V delta) {
+        return add(Op.INC, field.getName(), delta);
+    }
+
+    /**
+     * 把other中的变更追加到当前集合，同一字段以other中的值为准
+     */
+    public Changes merge(Changes other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.ops, 0, ops, size, other.size);
+        System.arraycopy(other.fields, 0, fields, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 从后向前输出，跳过后面已经输出过的字段，同一字段只保留最后一次变更
+     */
+    public Update toUpdate() {
+        Update update = new Update();
+        for (int i = size - 1; i >= 0; i--) {
+            if (isOverridden(i)) {
+                continue;
+            }
+            switch (ops[i]) {
+            case SET:
+                update.set(fields[i], values[i]);
+                break;
+            case SET_ON_INSERT:
+                update.setOnInsert(fields[i], values[i]);
+                break;
+            case UNSET:
+                update.unset(fields[i]);
+                break;
+            case INC:
+                update.inc(fields[i], (Number) values[i]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown update operation " + ops[i]);
+            }
+        }
+        return update;
+    }
+
+    /**
+     * 变更数通常只有几个，线性查找比分配Set更廉价
+     */
+    private boolean isOverridden(int index) {
+        for (int i = index + 1; i < size; i++) {
+            if (fields[i].equals(fields[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Changes add(Op op, String field, Object value) {
+        Preconditions.checkArgument(field != null && !field.isEmpty(), "field name must not be blank");
+        ensureCapacity(size + 1);
+        ops[size] = op;
+        fields[size] = field;
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > fields.length) {
+            int newCapacity = Math.max(capacity, fields.length << 1);
+            ops = Arrays.copyOf(ops, newCapacity);
+            fields = Arrays.copyOf(fields, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Changes{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(ops[i]).append(' ').append(fields[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+}
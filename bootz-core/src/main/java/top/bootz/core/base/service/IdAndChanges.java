@@ -0,0 +1,21 @@
+package top.bootz.core.base.service;
+
+import org.bson.types.ObjectId;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 按主键批量更新时的一条更新
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Getter
+@AllArgsConstructor(staticName = "of")
+public class IdAndChanges {
+
+    private final ObjectId id;
+
+    private final Changes changes;
+
+}
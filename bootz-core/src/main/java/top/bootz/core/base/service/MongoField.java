@@ -0,0 +1,32 @@
+package top.bootz.core.base.service;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 带类型的mongodb字段名，配合{@link Changes}在编译期检查字段值的类型
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public final class MongoField<V> {
+
+    private final String name;
+
+    private MongoField(String name) {
+        this.name = name;
+    }
+
+    public static <V> MongoField<V> of(String name) {
+        Preconditions.checkArgument(name != null && !name.isEmpty(), "field name must not be blank");
+        return new MongoField<>(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,509 @@
+package top.bootz.core.base.service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import org.bson.Document;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.NullValueInNestedPathException;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import com.google.common.base.Preconditions;
+import com.mongodb.BulkWriteError;
+
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.core.supporter.KeysetPaging;
+import top.bootz.core.supporter.MongoKeysetPaging;
+import top.bootz.core.supporter.PagingInfo;
+
+/**
+ * 按时间分区的mongodb集合
+ * <p>
+ * 同一类文档按天或按周写入不同的集合，集合名为baseName_yyyyMMdd，按周分区时日期取该周的周一。
+ * 每个分区在第一次写入前创建索引，单个分区的数据量和索引大小只与一个周期内的写入量有关，写入性能不随历史数据的增长而下降。
+ * 过期数据按分区整体删除集合，不需要TTL索引逐条删除，保留时间为0时不删除。跨分区的查询由各分区并行执行后合并。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Slf4j
+public class PartitionedCollections implements DisposableBean {
+
+    /**
+     * 分区周期
+     */
+    public enum Period {
+        DAY(ChronoUnit.DAYS), WEEK(ChronoUnit.WEEKS);
+
+        private final ChronoUnit unit;
+
+        Period(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public ChronoUnit getUnit() {
+            return unit;
+        }
+
+        LocalDate startOf(LocalDate date) {
+            return this == WEEK ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : date;
+        }
+
+    }
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final String baseName;
+
+    private final Period period;
+
+    private final Duration retention;
+
+    private final List<IndexDefinition> indexes;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    /**
+     * 已经创建过索引的分区
+     */
+    private final Set<String> prepared = ConcurrentHashMap.newKeySet();
+
+    private final ThreadPoolExecutor queryExecutor;
+
+    private volatile BiConsumer<String, IndexDefinition> duplicateKeyHandler;
+
+    /**
+     * @param baseName
+     *            分区集合名的前缀
+     * @param period
+     *            分区周期
+     * @param retention
+     *            数据保留时间，分区内的全部数据都超过保留时间后整体删除；为0时永久保留
+     * @param queryParallelism
+     *            跨分区查询时并行查询的分区数
+     * @param indexes
+     *            每个分区上创建的索引
+     */
+    public PartitionedCollections(MongoTemplate mongoTemplate, String baseName, Period period, Duration retention,
+            int queryParallelism, List<IndexDefinition> indexes) {
+        Preconditions.checkNotNull(mongoTemplate, "mongoTemplate must not be null");
+        Preconditions.checkArgument(baseName != null && !baseName.isEmpty(), "baseName must not be blank");
+        Preconditions.checkNotNull(period, "period must not be null");
+        Preconditions.checkArgument(retention != null && !retention.isNegative(), "retention must not be negative");
+        Preconditions.checkArgument(queryParallelism > 0, "queryParallelism must be greater than 0");
+        this.mongoTemplate = mongoTemplate;
+        this.baseName = baseName;
+        this.period = period;
+        this.retention = retention;
+        this.indexes = new ArrayList<>(indexes);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.queryExecutor = new ThreadPoolExecutor(queryParallelism, queryParallelism, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, baseName + "-query-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.queryExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 分区中已有的数据违反唯一索引时的处理方式，参数为分区名和索引。处理完成后重新创建一次索引；未设置时直接抛出异常
+     */
+    public void setDuplicateKeyHandler(BiConsumer<String, IndexDefinition> duplicateKeyHandler) {
+        this.duplicateKeyHandler = duplicateKeyHandler;
+    }
+
+    public Period getPeriod() {
+        return period;
+    }
+
+    /**
+     * 写入时使用：返回该时间所在的分区，分区第一次使用时创建索引
+     */
+    public String collectionFor(long epochMillis) {
+        String name = nameFor(epochMillis);
+        if (!prepared.contains(name)) {
+            prepare(name);
+        }
+        return name;
+    }
+
+    /**
+     * 读取时使用：只计算该时间所在分区的集合名，不创建集合和索引
+     */
+    public String nameFor(long epochMillis) {
+        return nameOf(period.startOf(Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate()));
+    }
+
+    /**
+     * 预先创建当前和下一个分区，使分区切换时的第一批写入不需要等待索引创建，并删除已过期的分区(永久保留时不删除)。应定期调用
+     *
+     * @return 本次删除的分区数
+     */
+    public int maintain() {
+        LocalDate current = period.startOf(LocalDate.now(zone));
+        for (LocalDate start : new LocalDate[] { current, current.plus(1, period.getUnit()) }) {
+            String name = nameOf(start);
+            if (!prepared.contains(name)) {
+                prepare(name);
+            }
+        }
+        if (retention.isZero()) {
+            return 0;
+        }
+        LocalDateTime expiredBefore = LocalDateTime.now(zone).minus(retention);
+        int dropped = 0;
+        for (Map.Entry<LocalDate, String> partition : existingPartitions().entrySet()) {
+            // 分区的结束时间早于保留期限时，分区内的全部数据都已过期
+            if (partition.getKey().plus(1, period.getUnit()).atStartOfDay().isAfter(expiredBefore)) {
+                break;
+            }
+            mongoTemplate.dropCollection(partition.getValue());
+            prepared.remove(partition.getValue());
+            dropped++;
+            log.info("expired partition [{}] dropped", partition.getValue());
+        }
+        return dropped;
+    }
+
+    /**
+     * @return 已经存在的分区，按分区开始日期升序
+     */
+    public NavigableMap<LocalDate, String> existingPartitions() {
+        NavigableMap<LocalDate, String> partitions = new TreeMap<>();
+        String prefix = baseName + "_";
+        for (String name : mongoTemplate.getCollectionNames()) {
+            if (!name.startsWith(prefix) || name.length() != prefix.length() + 8) {
+                continue;
+            }
+            try {
+                partitions.put(LocalDate.parse(name.substring(prefix.length()), SUFFIX), name);
+            } catch (DateTimeParseException e) {
+                log.debug("collection [{}] is not a partition of [{}]", name, baseName);
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * @return from到to之间已经存在的分区，最新的分区在前
+     */
+    public List<String> collectionsBetween(LocalDateTime from, LocalDateTime to) {
+        LocalDate first = period.startOf(from.toLocalDate());
+        LocalDate last = period.startOf(to.toLocalDate());
+        if (first.isAfter(last)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(existingPartitions().subMap(first, true, last, true).descendingMap().values());
+    }
+
+    /**
+     * 在from到to之间的各分区上并行执行同一个查询。query带有排序时按排序合并各分区的结果，否则按分区从新到旧拼接；
+     * query带有skip、limit时对合并后的结果生效，每个分区最多读取skip+limit条
+     */
+    public <T> List<T> find(Query query, Class<T> entityClass, LocalDateTime from, LocalDateTime to) {
+        List<String> names = collectionsBetween(from, to);
+        if (names.size() <= 1) {
+            return names.isEmpty() ? new ArrayList<>(0) : mongoTemplate.find(query, entityClass, names.get(0));
+        }
+        long skip = query.getSkip();
+        int limit = query.getLimit();
+        Query partitionQuery = query;
+        if (skip > 0) {
+            partitionQuery = copyOf(query);
+            if (limit > 0) {
+                partitionQuery.limit((int) Math.min(Integer.MAX_VALUE, skip + limit));
+            }
+        }
+        List<T> results = findAll(partitionQuery, entityClass, names);
+        Document sort = query.getSortObject();
+        if (sort != null && !sort.isEmpty()) {
+            results.sort(sortOrder(sort));
+        }
+        int fromIndex = (int) Math.min(skip, results.size());
+        int toIndex = limit > 0 ? (int) Math.min(skip + limit, results.size()) : results.size();
+        return fromIndex == 0 && toIndex == results.size() ? results
+                : new ArrayList<>(results.subList(fromIndex, toIndex));
+    }
+
+    /**
+     * 跨分区的游标分页：各分区并行读取游标之后的pageSize+1条记录，合并后按排序键重新排序再截取，
+     * 不依赖分区的先后顺序，也不需要offset。按countMode统计总数，ESTIMATED时为各分区元数据中的文档数之和
+     */
+    public <T> List<T> findPage(Query query, Class<T> entityClass, LocalDateTime from, LocalDateTime to,
+            PagingInfo paging, String idField) {
+        Preconditions.checkArgument(paging.isKeyset(), "only keyset paging is supported across partitions");
+        List<String> names = collectionsBetween(from, to);
+        switch (paging.getCountMode()) {
+        case EXACT:
+            KeysetPaging.setTotal(paging, count(query, entityClass, from, to));
+            break;
+        case ESTIMATED:
+            long estimated = 0L;
+            for (String name : names) {
+                estimated += mongoTemplate.getCollection(name).count();
+            }
+            KeysetPaging.setTotal(paging, estimated);
+            break;
+        default:
+            break;
+        }
+        MongoKeysetPaging.apply(query, paging, idField);
+        List<T> rows = findAll(query, entityClass, names);
+        rows.sort(KeysetPaging.comparator(KeysetPaging.sortKeys(paging, idField)));
+        if (rows.size() > query.getLimit()) {
+            rows = new ArrayList<>(rows.subList(0, query.getLimit()));
+        }
+        return KeysetPaging.complete(rows, paging, idField);
+    }
+
+    /**
+     * 用游标从新到旧依次读取from到to之间各分区中匹配的文档，同一时间只打开一个游标，驱动按批次拉取，
+     * 内存占用与结果集的大小无关。query带有skip、limit时按分区从新到旧的整体顺序跳过skip条，总共最多读取limit条
+     */
+    public <T> void forEach(Query query, Class<T> entityClass, LocalDateTime from, LocalDateTime to,
+            Consumer<? super T> action) {
+        long remaining = query.getLimit() > 0 ? query.getLimit() : Long.MAX_VALUE;
+        long skip = query.getSkip();
+        Query partitionQuery = skip > 0 ? copyOf(query) : query;
+        for (String name : collectionsBetween(from, to)) {
+            try (CloseableIterator<T> cursor = mongoTemplate.stream(partitionQuery, entityClass, name)) {
+                while (remaining > 0 && cursor.hasNext()) {
+                    T document = cursor.next();
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    action.accept(document);
+                    remaining--;
+                }
+            }
+            if (remaining == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 从新到旧依次在from到to之间的分区中查找，返回第一条匹配的文档，没有时返回null
+     */
+    public <T> T findFirst(Query query, Class<T> entityClass, LocalDateTime from, LocalDateTime to) {
+        for (String name : collectionsBetween(from, to)) {
+            T result = mongoTemplate.findOne(query, entityClass, name);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 并行统计from到to之间各分区中匹配的文档数
+     */
+    public long count(Query query, Class<?> entityClass, LocalDateTime from, LocalDateTime to) {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (String name : collectionsBetween(from, to)) {
+            futures.add(CompletableFuture.supplyAsync(() -> mongoTemplate.count(query, entityClass, name),
+                    queryExecutor));
+        }
+        long count = 0L;
+        for (CompletableFuture<Long> future : futures) {
+            count += join(future);
+        }
+        return count;
+    }
+
+    /**
+     * 把分区之前使用的单个集合legacyName中的文档迁移到各分区，partitionTimeOf给出文档所属分区的时间。
+     * 每批batchSize条，先写入分区再从原集合中删除，中途失败后再次调用时从剩余的文档继续，分区中已经存在的文档不会重复写入。
+     * 超过保留时间的文档直接删除，原集合迁移完后整体删除
+     *
+     * @return 迁移到分区中的文档数，原集合不存在时为0
+     */
+    public <T> long migrateLegacy(String legacyName, Class<T> entityClass, ToLongFunction<T> partitionTimeOf,
+            int batchSize) {
+        Preconditions.checkArgument(!legacyName.startsWith(baseName + "_"), "legacyName must not be a partition");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be greater than 0");
+        if (!mongoTemplate.collectionExists(legacyName)) {
+            return 0L;
+        }
+        long expiredBefore = retention.isZero() ? Long.MIN_VALUE : System.currentTimeMillis() - retention.toMillis();
+        long migrated = 0L;
+        Query next = new Query().with(Sort.by(Direction.ASC, "id")).limit(batchSize);
+        List<T> batch;
+        while (!(batch = mongoTemplate.find(next, entityClass, legacyName)).isEmpty()) {
+            Map<String, List<T>> byPartition = new LinkedHashMap<>();
+            List<Object> ids = new ArrayList<>(batch.size());
+            for (T document : batch) {
+                ids.add(mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(entityClass)
+                        .getIdentifierAccessor(document).getIdentifier());
+                long partitionTime = partitionTimeOf.applyAsLong(document);
+                if (partitionTime >= expiredBefore) {
+                    byPartition.computeIfAbsent(collectionFor(partitionTime), k -> new ArrayList<>()).add(document);
+                }
+            }
+            for (Map.Entry<String, List<T>> partition : byPartition.entrySet()) {
+                insertIgnoringDuplicates(partition.getKey(), entityClass, partition.getValue());
+                migrated += partition.getValue().size();
+            }
+            mongoTemplate.remove(Query.query(Criteria.where("id").in(ids)), entityClass, legacyName);
+        }
+        mongoTemplate.dropCollection(legacyName);
+        log.info("{} documents migrated from legacy collection [{}]", migrated, legacyName);
+        return migrated;
+    }
+
+    @Override
+    public void destroy() {
+        queryExecutor.shutdown();
+    }
+
+    private <T> void insertIgnoringDuplicates(String name, Class<T> entityClass, List<T> documents) {
+        try {
+            mongoTemplate.bulkOps(BulkMode.UNORDERED, entityClass, name).insert(documents).execute();
+        } catch (BulkOperationException e) {
+            // 上一次迁移已经写入、但还没有从原集合删除的文档
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 复制查询条件、返回字段、排序和limit，不带skip，由调用方对合并后的结果跳过
+     */
+    private static Query copyOf(Query query) {
+        BasicQuery copy = new BasicQuery(query.getQueryObject(), query.getFieldsObject());
+        copy.setSortObject(query.getSortObject());
+        copy.limit(query.getLimit());
+        return copy;
+    }
+
+    /**
+     * 按query的排序比较两个文档，与mongodb一致，升序时null在前
+     */
+    private static <T> Comparator<T> sortOrder(Document sort) {
+        return (left, right) -> {
+            BeanWrapper leftWrapper = PropertyAccessorFactory.forBeanPropertyAccess(left);
+            BeanWrapper rightWrapper = PropertyAccessorFactory.forBeanPropertyAccess(right);
+            for (Map.Entry<String, Object> key : sort.entrySet()) {
+                String property = "_id".equals(key.getKey()) ? "id" : key.getKey();
+                int result = compareNullable(valueOf(leftWrapper, property), valueOf(rightWrapper, property));
+                if (result != 0) {
+                    return ((Number) key.getValue()).intValue() < 0 ? -result : result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    private static Object valueOf(BeanWrapper wrapper, String property) {
+        try {
+            return wrapper.getPropertyValue(property);
+        } catch (NullValueInNestedPathException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compareNullable(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == null ? (right == null ? 0 : -1) : 1;
+        }
+        return ((Comparable) left).compareTo(right);
+    }
+
+    private <T> List<T> findAll(Query query, Class<T> entityClass, List<String> names) {
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(names.size());
+        for (String name : names) {
+            futures.add(CompletableFuture.supplyAsync(() -> mongoTemplate.find(query, entityClass, name),
+                    queryExecutor));
+        }
+        List<T> results = new ArrayList<>();
+        for (CompletableFuture<List<T>> future : futures) {
+            results.addAll(join(future));
+        }
+        return results;
+    }
+
+    private void prepare(String name) {
+        // ensureIndex是幂等的，并发时重复创建没有副作用
+        IndexOperations indexOperations = mongoTemplate.indexOps(name);
+        for (IndexDefinition index : indexes) {
+            try {
+                indexOperations.ensureIndex(index);
+            } catch (DuplicateKeyException e) {
+                BiConsumer<String, IndexDefinition> handler = duplicateKeyHandler;
+                if (handler == null) {
+                    throw e;
+                }
+                log.warn("collection {} violates unique index {}, resolving duplicates", name,
+                        index.getIndexOptions().get("name"));
+                handler.accept(name, index);
+                indexOperations.ensureIndex(index);
+            }
+        }
+        prepared.add(name);
+    }
+
+    private String nameOf(LocalDate start) {
+        return baseName + "_" + SUFFIX.format(start);
+    }
+
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package top.bootz.core.generator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于本地文件的槽位分配器，作为集中式分配器不可用时的兜底方案。
+ * <p>
+ * 首次启动时根据本机地址计算出一个槽位并写入文件，之后重启沿用文件中的槽位，保证同一节点的槽位稳定。
+ * 槽位只取自保留区间[{@link #LEASED_SLOTS}, {@link #MAX_SLOTS})，不会与Redis租出的槽位冲突；
+ * 但降级的节点之间无法保证绝对唯一，只适合Redis不可用时的降级使用。
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+@Slf4j
+public class LocalFileWorkerIdAssigner implements WorkerIdAssigner {
+
+    private final Path file;
+
+    public LocalFileWorkerIdAssigner(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public int assign() {
+        Integer slot = readSlot();
+        if (slot != null) {
+            log.info("Snowflake worker slot [{}] is loaded from file [{}]", slot, file);
+            return slot;
+        }
+        slot = slotOfLocalHost();
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, String.valueOf(slot).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.warn("Failed to persist snowflake worker slot to file [" + file + "]", e);
+        }
+        log.info("Snowflake worker slot [{}] is derived from local host", slot);
+        return slot;
+    }
+
+    private Integer readSlot() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            String content = StringUtils.trim(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            if (StringUtils.isNumeric(content)) {
+                int slot = Integer.parseInt(content);
+                // 不在保留区间内的槽位(例如旧版本按IP低10位写入的)可能与Redis租出的槽位冲突，重新计算
+                if (slot >= LEASED_SLOTS && slot < MAX_SLOTS) {
+                    return slot;
+                }
+            }
+            log.warn("Ignore illegal snowflake worker slot [{}] in file [{}]", content, file);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Failed to read snowflake worker slot from file [" + file + "]", e);
+        }
+        return null;
+    }
+
+    /**
+     * 取本机IP地址的最后一段映射到保留区间，同一网段内的节点基本不会冲突
+     */
+    private static int slotOfLocalHost() {
+        try {
+            byte[] address = InetAddress.getLocalHost().getAddress();
+            return LEASED_SLOTS + ((address[address.length - 1] & 0xFF) % FALLBACK_SLOTS);
+        } catch (UnknownHostException e) {
+            log.warn("Failed to resolve local host, use pid to derive snowflake worker slot", e);
+            String name = ManagementFactory.getRuntimeMXBean().getName();
+            return LEASED_SLOTS + (name.hashCode() & Integer.MAX_VALUE) % FALLBACK_SLOTS;
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+package top.bootz.core.generator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+
+import com.google.common.base.Preconditions;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于Redis租约的槽位分配器
+ * <p>
+ * 启动时用一次MGET查出[0, {@link #LEASED_SLOTS})中的空闲槽位，再从随机位置开始对空闲槽位尝试 SET key owner NX PX lease，
+ * 最多尝试{@link #MAX_ACQUIRE_ATTEMPTS}次，启动阶段访问Redis的次数有上限(每次受spring.redis.timeout约束)。
+ * 抢到后由后台心跳线程定期续约，进程异常退出时租约到期自动释放，正常关闭时主动归还。
+ * Redis不可用或没有抢到槽位时降级到fallback分配器，fallback使用保留区间，不会与租出的槽位冲突。
+ * <p>
+ * 距上次续约成功超过租约的2/3仍未续约成功时，通过{@link #setSlotListener(IntConsumer)}通知暂停发号，保证租约到期
+ * (槽位可能被其他节点抢占)之前已停止使用该槽位；之后续约成功则恢复。租约确认丢失时改为重新领取一个空闲槽位，领取成功后通知新槽位。
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+@Slf4j
+public class RedisWorkerIdAssigner implements WorkerIdAssigner, DisposableBean {
+
+    public static final String DEFAULT_KEY_PREFIX = "snowflake:worker:";
+
+    /**
+     * 启动或重新领取时最多尝试抢占的空闲槽位数
+     */
+    public static final int MAX_ACQUIRE_ATTEMPTS = 8;
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final WorkerIdAssigner fallback;
+
+    private final String keyPrefix;
+
+    private final long leaseMillis;
+
+    /**
+     * 距上次续约成功超过该时长仍未续约成功时暂停发号
+     */
+    private final long suspendAfterNanos;
+
+    /**
+     * 租约持有者标识：进程名 + 随机串，防止误续约、误释放其他节点的槽位
+     */
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+
+    private ScheduledExecutorService heartbeat;
+
+    private IntConsumer slotListener;
+
+    private volatile int slot = -1;
+
+    /**
+     * 最近一次续约成功(以发起续约的时刻计)的System.nanoTime()
+     */
+    private volatile long leaseStartNanos;
+
+    /**
+     * 是否已通知暂停发号，只在同步块内读写
+     */
+    private boolean suspended;
+
+    public RedisWorkerIdAssigner(RedisConnectionFactory connectionFactory, long leaseMillis,
+            WorkerIdAssigner fallback) {
+        this(connectionFactory, DEFAULT_KEY_PREFIX, leaseMillis, fallback);
+    }
+
+    public RedisWorkerIdAssigner(RedisConnectionFactory connectionFactory, String keyPrefix, long leaseMillis,
+            WorkerIdAssigner fallback) {
+        Preconditions.checkArgument(leaseMillis >= 3000L, "leaseMillis must not be less than 3000");
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.keyPrefix = keyPrefix;
+        this.leaseMillis = leaseMillis;
+        this.suspendAfterNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis) * 2 / 3;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public synchronized int assign() {
+        if (slot >= 0) {
+            return slot;
+        }
+        try {
+            long begin = System.nanoTime();
+            int acquired = acquire();
+            if (acquired >= 0) {
+                slot = acquired;
+                leaseStartNanos = begin;
+                startHeartbeat();
+                log.info("Snowflake worker slot [{}] is leased from redis, owner [{}]", acquired, owner);
+                return acquired;
+            }
+            log.warn("No free snowflake worker slot is acquired from redis in {} attempts, fallback to {}",
+                    MAX_ACQUIRE_ATTEMPTS, fallback.getClass().getSimpleName());
+        } catch (Exception e) {
+            log.warn("Failed to lease snowflake worker slot from redis, fallback to "
+                    + fallback.getClass().getSimpleName(), e);
+        }
+        return fallback.assign();
+    }
+
+    @Override
+    public synchronized void release() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+        if (slot < 0) {
+            fallback.release();
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(keyOf(slot)), owner);
+            log.info("Snowflake worker slot [{}] is released", slot);
+        } catch (Exception e) {
+            log.warn("Failed to release snowflake worker slot [" + slot + "], it will expire in " + leaseMillis
+                    + "ms", e);
+        }
+        slot = -1;
+    }
+
+    @Override
+    public synchronized void setSlotListener(IntConsumer listener) {
+        this.slotListener = listener;
+        if (suspended && listener != null) {
+            listener.accept(-1);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        release();
+    }
+
+    /**
+     * 一次MGET查出空闲槽位，再依次抢占，返回抢到的槽位，没有抢到时返回-1
+     */
+    private int acquire() {
+        List<String> keys = new ArrayList<>(LEASED_SLOTS);
+        for (int i = 0; i < LEASED_SLOTS; i++) {
+            keys.add(keyOf(i));
+        }
+        List<String> owners = redisTemplate.opsForValue().multiGet(keys);
+        if (owners == null || owners.size() != LEASED_SLOTS) {
+            return -1;
+        }
+        int start = ThreadLocalRandom.current().nextInt(LEASED_SLOTS);
+        int attempts = 0;
+        for (int i = 0; i < LEASED_SLOTS && attempts < MAX_ACQUIRE_ATTEMPTS; i++) {
+            int candidate = (start + i) % LEASED_SLOTS;
+            if (owners.get(candidate) == null) {
+                attempts++;
+                if (tryAcquire(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private boolean tryAcquire(int candidate) {
+        byte[] key = redisTemplate.getStringSerializer().serialize(keyOf(candidate));
+        byte[] value = redisTemplate.getStringSerializer().serialize(owner);
+        Boolean acquired = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(key, value,
+                Expiration.milliseconds(leaseMillis), SetOption.SET_IF_ABSENT));
+        return Boolean.TRUE.equals(acquired);
+    }
+
+    private void startHeartbeat() {
+        // 续约可能阻塞在Redis调用上，检查租约期限的任务需要单独的线程
+        heartbeat = new ScheduledThreadPoolExecutor(2, runnable -> {
+            Thread thread = new Thread(runnable, "snowflake-worker-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = leaseMillis / 3;
+        heartbeat.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+        heartbeat.scheduleAtFixedRate(this::checkLease, period / 4, period / 4, TimeUnit.MILLISECONDS);
+    }
+
+    private void renew() {
+        int current = slot;
+        if (current < 0) {
+            reacquire();
+            return;
+        }
+        long begin = System.nanoTime();
+        try {
+            Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(keyOf(current)), owner,
+                    String.valueOf(leaseMillis));
+            if (renewed != null && renewed > 0) {
+                renewed(current, begin);
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to renew snowflake worker slot [" + current + "] lease", e);
+            return;
+        }
+        // 租约已过期或已被其他节点持有，停止使用该槽位并重新领取
+        log.error("Snowflake worker slot [{}] lease is lost, id generation is suspended until a new slot is leased",
+                current);
+        lost(current);
+        reacquire();
+    }
+
+    private void reacquire() {
+        long begin = System.nanoTime();
+        int acquired;
+        try {
+            acquired = acquire();
+        } catch (Exception e) {
+            log.warn("Failed to lease a new snowflake worker slot from redis", e);
+            return;
+        }
+        if (acquired < 0) {
+            log.warn("No free snowflake worker slot is acquired from redis, id generation is still suspended");
+            return;
+        }
+        synchronized (this) {
+            if (heartbeat == null) {
+                // 已经归还，新领取的槽位不再续约，租约到期后自动释放
+                return;
+            }
+            slot = acquired;
+            leaseStartNanos = begin;
+            resume(acquired);
+        }
+        log.warn("Snowflake worker slot [{}] is leased from redis to replace the lost one", acquired);
+    }
+
+    private synchronized void renewed(int current, long begin) {
+        if (slot != current) {
+            return;
+        }
+        leaseStartNanos = begin;
+        if (suspended) {
+            log.info("Snowflake worker slot [{}] lease is renewed, id generation is resumed", current);
+            resume(current);
+        }
+    }
+
+    private synchronized void lost(int current) {
+        if (slot == current) {
+            slot = -1;
+        }
+        suspend();
+    }
+
+    /**
+     * 长时间没有续约成功时，在租约可能到期之前暂停发号
+     */
+    private synchronized void checkLease() {
+        if (slot >= 0 && !suspended && System.nanoTime() - leaseStartNanos > suspendAfterNanos) {
+            log.error("Snowflake worker slot [{}] lease is not renewed in time, id generation is suspended", slot);
+            suspend();
+        }
+    }
+
+    private void suspend() {
+        if (!suspended) {
+            suspended = true;
+            if (slotListener != null) {
+                slotListener.accept(-1);
+            }
+        }
+    }
+
+    private void resume(int leased) {
+        suspended = false;
+        if (slotListener != null) {
+            slotListener.accept(leased);
+        }
+    }
+
+    private String keyOf(int candidate) {
+        return keyPrefix + candidate;
+    }
+
+}
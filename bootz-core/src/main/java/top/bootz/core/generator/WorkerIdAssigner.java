@@ -0,0 +1,64 @@
+package top.bootz.core.generator;
+
+import java.util.function.IntConsumer;
+
+import top.bootz.commons.snowflake.IdGenerator;
+
+/**
+ * Snowflake节点槽位分配器，用于在应用启动时为{@link IdGenerator}自动领取唯一的workerId和dataCenterId。
+ * <p>
+ * 槽位取值范围为0~1023，高5位作为dataCenterId，低5位作为workerId。集中式分配器只租出[0, {@link #LEASED_SLOTS})，
+ * 本地降级分配只使用[{@link #LEASED_SLOTS}, {@link #MAX_SLOTS})，两种方式领到的槽位不会重叠。
+ * 
+ * @author Zhangq - momogoing@163.com
+ */
+public interface WorkerIdAssigner {
+
+    /**
+     * 槽位总数(dataCenterId与workerId的全部组合)
+     */
+    int MAX_SLOTS = (int) ((IdGenerator.MAX_DATACENTER_ID + 1) * (IdGenerator.MAX_WORKER_ID + 1));
+
+    /**
+     * 保留给本地降级分配的槽位数(dataCenterId为24~31)
+     */
+    int FALLBACK_SLOTS = 256;
+
+    /**
+     * 可由集中式分配器租出的槽位数
+     */
+    int LEASED_SLOTS = MAX_SLOTS - FALLBACK_SLOTS;
+
+    /**
+     * 领取一个当前节点独占的槽位
+     * 
+     * @return 槽位(0~1023)
+     */
+    int assign();
+
+    /**
+     * 归还已领取的槽位，应用关闭时调用
+     */
+    default void release() {
+        // do nothing
+    }
+
+    /**
+     * 注册槽位变更的回调：租约丢失时回调-1，此时应暂停发号；重新领取到槽位时回调新的槽位。只有基于租约的分配器会触发
+     *
+     * @param listener
+     *            槽位变更回调
+     */
+    default void setSlotListener(IntConsumer listener) {
+        // do nothing
+    }
+
+    static long dataCenterIdOf(int slot) {
+        return (slot >>> Long.bitCount(IdGenerator.MAX_WORKER_ID)) & IdGenerator.MAX_DATACENTER_ID;
+    }
+
+    static long workerIdOf(int slot) {
+        return slot & IdGenerator.MAX_WORKER_ID;
+    }
+
+}
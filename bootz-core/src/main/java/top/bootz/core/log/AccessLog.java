@@ -8,14 +8,12 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
-import org.springframework.data.mongodb.core.index.CompoundIndex;
-import org.springframework.data.mongodb.core.index.CompoundIndexes;
-import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 
@@ -24,35 +22,30 @@ import lombok.Setter;
 import top.bootz.core.base.entity.BaseEntity;
 
 /**
- * API访问日志表
+ * API访问日志表，按时间分区存储，索引由{@link AccessLogService}在每个分区上创建
  */
 
 @Setter
 @Getter
 @Document
-@CompoundIndexes({ @CompoundIndex(name = "idx_class_method", def = "{'className': 1, 'methodName': 1}") })
 public class AccessLog extends BaseEntity {
 
 	private static final long serialVersionUID = 1L;
 
 	@Id
+	@JsonSerialize(using = ToStringSerializer.class)
 	private ObjectId id;
 
-	@Indexed
 	private String visitor; // 请求者身份标识(即 username)
 
-	@Indexed
 	private String token; // 请求者token
 
 	private String requestIp; // 访问者Ip
 
-	@Indexed
 	private String requestUrl; // 请求的完整路径
 
-	@Indexed
 	private String className; // 类名
 
-	@Indexed
 	private String methodName; // 方法名
 
 	private Map<String, String> inputParamMap = new LinkedHashMap<>(); // 入参
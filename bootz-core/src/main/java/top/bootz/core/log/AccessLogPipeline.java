@@ -0,0 +1,77 @@
+package top.bootz.core.log;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.common.base.Preconditions;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 访问日志异步批量写入管道
+ * <p>
+ * 请求线程只负责把日志放入有界的无锁缓冲区，由单独的后台线程每攒够batchSize条或每隔flushInterval批量插入mongodb，
+ * 并在后台线程中打印日志内容。缓冲区满(或按{@link OverloadPolicy#SAMPLE}策略进入采样区间)时直接丢弃，
+ * 请求线程任何情况下都不会因为访问日志而阻塞或执行mongodb写入。
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+@Slf4j
+public class AccessLogPipeline extends BatchingWriter<AccessLog> {
+
+    /**
+     * 过载策略
+     */
+    public enum OverloadPolicy {
+        /** 缓冲区满时丢弃新日志 */
+        DROP,
+        /** 缓冲区超过一半时成功请求的日志按比例采样，失败请求的日志全部保留，缓冲区满时丢弃 */
+        SAMPLE
+    }
+
+    private final AccessLogService accessLogService;
+
+    private final OverloadPolicy overloadPolicy;
+
+    private final double sampleRatio;
+
+    /**
+     * @param capacity
+     *            缓冲区最多容纳的日志条数
+     * @param batchSize
+     *            每次批量插入的最大条数，缓冲区攒够该数量时立即唤醒后台线程
+     * @param flushIntervalMillis
+     *            不足一批时的最长等待时间(毫秒)
+     * @param overloadPolicy
+     *            过载策略
+     * @param sampleRatio
+     *            SAMPLE策略下成功请求日志的保留比例(0~1)
+     */
+    public AccessLogPipeline(AccessLogService accessLogService, int capacity, int batchSize, long flushIntervalMillis,
+            OverloadPolicy overloadPolicy, double sampleRatio) {
+        super("access-log-drainer", capacity, batchSize, flushIntervalMillis);
+        Preconditions.checkNotNull(accessLogService, "accessLogService must not be null");
+        Preconditions.checkNotNull(overloadPolicy, "overloadPolicy must not be null");
+        Preconditions.checkArgument(sampleRatio >= 0D && sampleRatio <= 1D, "sampleRatio must be between 0 and 1");
+        this.accessLogService = accessLogService;
+        this.overloadPolicy = overloadPolicy;
+        this.sampleRatio = sampleRatio;
+    }
+
+    @Override
+    protected boolean admit(AccessLog accessLog, int depth, int capacity) {
+        return overloadPolicy != OverloadPolicy.SAMPLE || depth <= capacity / 2 || !accessLog.isSuccessed()
+                || ThreadLocalRandom.current().nextDouble() < sampleRatio;
+    }
+
+    @Override
+    protected void write(List<AccessLog> batch) {
+        if (log.isInfoEnabled()) {
+            for (AccessLog accessLog : batch) {
+                log.info(accessLog.toJson());
+            }
+        }
+        accessLogService.insertAll(batch);
+    }
+
+}
@@ -1,40 +1,90 @@
 package top.bootz.core.log;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import lombok.NoArgsConstructor;
-import top.bootz.core.base.service.BaseMongoService;
+import top.bootz.core.base.service.PartitionedCollections;
+import top.bootz.core.supporter.PagingInfo;
 
 /**
+ * 访问日志按创建时间分区存储，主键的时间部分与创建时间一致，按主键即可定位分区
+ * <p>
+ * 不继承BaseMongoService，所有读写都经过分区，不会访问或重新创建迁移后已删除的accessLog集合
+ *
  * @Author : momogoing@163.com
  * @CreationDate : 2018-06-24 上午7:45
  */
 
 @Service
 @NoArgsConstructor
-public class AccessLogService extends BaseMongoService<AccessLog> {
+public class AccessLogService implements InitializingBean, DisposableBean {
+
+    private static final String COLLECTION = "accessLog";
+
+    private static final int LEGACY_MIGRATION_BATCH_SIZE = 1000;
+
+    @Autowired(required = false)
+    private LogPartitionSettings logPartitionSettings;
+
+    private MongoTemplate mongoTemplate;
+
+    private PartitionedCollections partitions;
 
     @Autowired
-    private AccessLogRepository accessLogRepository;
+    private AccessLogService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        LogPartitionSettings settings = logPartitionSettings != null ? logPartitionSettings
+                : new LogPartitionSettings();
+        this.partitions = new PartitionedCollections(mongoTemplate, COLLECTION, settings.getPeriod(),
+                Duration.ofDays(settings.getAccessLogRetentionDays()), settings.getQueryParallelism(), indexes());
+    }
 
     /**
-     * 该构造方法用于为baseMongoService通用父类注入mongodbTemplate工具类，必不可少。
-     *
-     * @param mongoTemplate
+     * 每个分区上的索引：按访问者查询、按接口查询，以及只包含失败请求的部分索引
      */
-    @Autowired
-    private AccessLogService(MongoTemplate mongoTemplate) {
-        super(mongoTemplate);
+    private static List<IndexDefinition> indexes() {
+        return Arrays.asList(
+                new Index().on("visitor", Direction.ASC).on("createTime", Direction.DESC).named("idx_al_visitor_time"),
+                new Index().on("className", Direction.ASC).on("methodName", Direction.ASC)
+                        .on("createTime", Direction.DESC).named("idx_al_method_time"),
+                new Index().on("createTime", Direction.DESC)
+                        .partial(PartialIndexFilter.of(Criteria.where("successed").is(false)))
+                        .named("idx_al_failed_time"));
     }
 
     public AccessLog save(AccessLog accessLog) {
-        return accessLogRepository.save(accessLog);
+        assignId(accessLog);
+        mongoTemplate.save(accessLog, partitions.collectionFor(accessLog.getId().getDate().getTime()));
+        return accessLog;
     }
 
     @Async
@@ -42,12 +92,56 @@ public class AccessLogService extends BaseMongoService<AccessLog> {
         save(accessLog);
     }
 
+    /**
+     * 批量插入，每个分区一次请求写入该分区的整批日志
+     */
+    public List<AccessLog> insertAll(Collection<AccessLog> accessLogs) {
+        Map<String, List<AccessLog>> byPartition = new LinkedHashMap<>();
+        for (AccessLog accessLog : accessLogs) {
+            assignId(accessLog);
+            byPartition.computeIfAbsent(partitions.collectionFor(accessLog.getId().getDate().getTime()),
+                    k -> new ArrayList<>()).add(accessLog);
+        }
+        List<AccessLog> inserted = new ArrayList<>(accessLogs.size());
+        byPartition.forEach((collection, batch) -> {
+            mongoTemplate.insert(batch, collection);
+            inserted.addAll(batch);
+        });
+        return inserted;
+    }
+
     public Optional<AccessLog> find(ObjectId objectId) {
-        return accessLogRepository.findById(objectId);
+        return Optional.ofNullable(mongoTemplate.findById(objectId, AccessLog.class,
+                partitions.nameFor(objectId.getDate().getTime())));
+    }
+
+    /**
+     * 在from到to之间的分区上并行查询，结果按查询的排序合并，没有排序时按分区从新到旧拼接
+     */
+    public List<AccessLog> findBetween(Query query, LocalDateTime from, LocalDateTime to) {
+        return partitions.find(query, AccessLog.class, from, to);
+    }
+
+    /**
+     * 用游标逐条读取from到to之间各分区中匹配的记录，用于流式导出
+     */
+    public void forEachBetween(Query query, LocalDateTime from, LocalDateTime to, Consumer<? super AccessLog> action) {
+        partitions.forEach(query, AccessLog.class, from, to, action);
+    }
+
+    /**
+     * 在from到to之间的分区上按游标分页查询
+     */
+    public List<AccessLog> findPageBetween(Query query, LocalDateTime from, LocalDateTime to, PagingInfo paging) {
+        return partitions.findPage(query, AccessLog.class, from, to, paging, "id");
+    }
+
+    public long countBetween(Query query, LocalDateTime from, LocalDateTime to) {
+        return partitions.count(query, AccessLog.class, from, to);
     }
 
     public void delete(AccessLog accessLog) {
-        accessLogRepository.delete(accessLog);
+        mongoTemplate.remove(accessLog, partitions.nameFor(accessLog.getId().getDate().getTime()));
     }
 
     @Async
@@ -55,4 +149,41 @@ public class AccessLogService extends BaseMongoService<AccessLog> {
         delete(accessLog);
     }
 
-}
\ No newline at end of file
+    /**
+     * 预建下一个分区并删除过期分区
+     *
+     * @return 本次删除的分区数
+     */
+    public int maintainPartitions() {
+        return partitions.maintain();
+    }
+
+    /**
+     * 把分区之前的accessLog集合迁移到各分区，主键的时间即为分区时间。可以重复调用，迁移完成后原集合被删除
+     *
+     * @return 迁移的日志数
+     */
+    public long migrateLegacyCollection() {
+        return partitions.migrateLegacy(COLLECTION, AccessLog.class, accessLog -> accessLog.getId().getDate().getTime(),
+                LEGACY_MIGRATION_BATCH_SIZE);
+    }
+
+    @Override
+    public void destroy() {
+        partitions.destroy();
+    }
+
+    /**
+     * 用创建时间生成主键，使主键与创建时间落在同一个分区
+     */
+    private static void assignId(AccessLog accessLog) {
+        if (accessLog.getCreateTime() == null) {
+            accessLog.setCreateTime(LocalDateTime.now());
+        }
+        if (accessLog.getId() == null) {
+            Date createTime = Date.from(accessLog.getCreateTime().atZone(ZoneId.systemDefault()).toInstant());
+            accessLog.setId(new ObjectId(createTime));
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+package top.bootz.core.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.springframework.context.SmartLifecycle;
+
+import com.google.common.base.Preconditions;
+
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.commons.queue.MpscChunkedQueue;
+
+/**
+ * 异步批量写入的通用骨架
+ * <p>
+ * 调用线程只负责把数据放入有界的无锁缓冲区，由单独的后台线程每攒够batchSize条或每隔flushInterval调用一次{@link #write(List)}。
+ * 缓冲区满时直接丢弃，调用线程任何情况下都不会阻塞或执行IO。
+ * <p>
+ * 后台线程由{@link #start()}启动、{@link #stop()}停止，作为Spring bean时由容器的生命周期回调负责；
+ * 启动前提交的数据先留在缓冲区中，启动后写出。phase为0，关闭时晚于web容器和消息监听容器停止，停止前写出缓冲区中剩余的数据。
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+@Slf4j
+public abstract class BatchingWriter<T> implements SmartLifecycle {
+
+    private final String name;
+
+    private final int capacity;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final MpscChunkedQueue<T> queue = new MpscChunkedQueue<>();
+
+    /** 缓冲区中的数据条数，入队前先在这里占位，超过capacity即丢弃 */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder flushed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final List<T> batch;
+
+    private final Consumer<T> collector;
+
+    private volatile Thread drainer;
+
+    private volatile boolean running;
+
+    /**
+     * @param name
+     *            后台线程名
+     * @param capacity
+     *            缓冲区最多容纳的数据条数
+     * @param batchSize
+     *            每次批量写入的最大条数，缓冲区攒够该数量时立即唤醒后台线程
+     * @param flushIntervalMillis
+     *            不足一批时的最长等待时间(毫秒)
+     */
+    protected BatchingWriter(String name, int capacity, int batchSize, long flushIntervalMillis) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be greater than 0");
+        Preconditions.checkArgument(batchSize > 0 && batchSize <= capacity,
+                "batchSize must be greater than 0 and not greater than capacity");
+        Preconditions.checkArgument(flushIntervalMillis > 0, "flushIntervalMillis must be greater than 0");
+        this.name = name;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.batch = new ArrayList<>(batchSize);
+        this.collector = batch::add;
+    }
+
+    /**
+     * 提交一条数据，不阻塞
+     *
+     * @return 是否被接收，false表示因过载被丢弃
+     */
+    public boolean submit(T item) {
+        Preconditions.checkNotNull(item, "item must not be null");
+        int depth = queued.incrementAndGet();
+        if (depth > capacity || !admit(item, depth, capacity)) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        queue.offer(item);
+        Thread current = drainer;
+        if (depth == batchSize && current != null) {
+            LockSupport.unpark(current);
+        }
+        return true;
+    }
+
+    /**
+     * 缓冲区未满时是否接收该条数据，子类可以据此实现采样等过载策略
+     *
+     * @param depth
+     *            算上该条数据后缓冲区中的数据条数
+     */
+    protected boolean admit(T item, int depth, int capacity) {
+        return true;
+    }
+
+    /**
+     * 在后台线程中批量写出一批数据，抛出异常时整批计为写入失败
+     */
+    protected abstract void write(List<T> batch) throws Exception;
+
+    /**
+     * 启动后台线程
+     */
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::drain, name);
+        thread.setDaemon(true);
+        thread.start();
+        drainer = thread;
+    }
+
+    /**
+     * 停止后台线程并写出缓冲区中剩余的数据
+     */
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread current = drainer;
+        LockSupport.unpark(current);
+        try {
+            current.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 5000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (current.isAlive()) {
+            log.warn("{} did not stop in time, {} items may be lost", name, queued.get());
+        }
+        drainer = null;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void drain() {
+        while (running) {
+            if (queued.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            flush();
+        }
+        flush();
+    }
+
+    /**
+     * 按batchSize分批写出缓冲区中的全部数据，只在后台线程中调用
+     */
+    private void flush() {
+        for (;;) {
+            batch.clear();
+            int count = queue.drain(collector, batchSize);
+            if (count == 0) {
+                return;
+            }
+            queued.addAndGet(-count);
+            try {
+                write(batch);
+                flushed.add(count);
+            } catch (Exception e) {
+                failed.add(count);
+                log.warn(name + " failed to write " + count + " items", e);
+            }
+            if (count < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return 当前缓冲区中等待写入的数据条数
+     */
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return 因过载被丢弃的数据条数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return 已成功写入的数据条数
+     */
+    public long getFlushedCount() {
+        return flushed.sum();
+    }
+
+    /**
+     * @return 因写入失败而丢失的数据条数
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+}
@@ -0,0 +1,70 @@
+package top.bootz.core.log;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import top.bootz.core.annotation.AccessLogCapture;
+
+/**
+ * 访问日志中请求参数和返回值的采集策略
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CapturePolicy {
+
+    public static final int DEFAULT_MAX_BYTES = 4096;
+
+    public enum Mode {
+        /** 完整采集 */
+        FULL,
+        /** 按sampleRate比例完整采集，未被采中的请求只记录元数据 */
+        SAMPLED,
+        /** 每个参数及返回值最多采集maxBytes字节，超出部分在序列化过程中直接截断 */
+        TRUNCATED,
+        /** 只记录url、类名、方法名、耗时、异常等元数据，不采集参数和返回值 */
+        METADATA
+    }
+
+    private Mode mode = Mode.FULL;
+
+    /**
+     * SAMPLED模式下的采样比例(0~1)
+     */
+    private double sampleRate = 1D;
+
+    /**
+     * TRUNCATED模式下每个参数及返回值的字节上限(按UTF-8计算)
+     */
+    private int maxBytes = DEFAULT_MAX_BYTES;
+
+    public static CapturePolicy of(AccessLogCapture capture) {
+        return new CapturePolicy(capture.mode(), capture.sampleRate(), capture.maxBytes());
+    }
+
+    /**
+     * 本次请求是否采集参数和返回值，SAMPLED模式下每次调用结果随机
+     */
+    public boolean shouldCapture() {
+        switch (mode) {
+        case METADATA:
+            return false;
+        case SAMPLED:
+            return sampleRate >= 1D || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * @return 每个参数及返回值的字节上限，-1表示不限制
+     */
+    public int byteBudget() {
+        return mode == Mode.TRUNCATED ? maxBytes : -1;
+    }
+
+}
@@ -0,0 +1,93 @@
+package top.bootz.core.log;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.base.Preconditions;
+
+import top.bootz.core.annotation.AccessLogCapture;
+
+/**
+ * 访问日志采集策略的查找入口
+ * <p>
+ * 查找顺序：配置中的"类名.方法名" &gt; 配置中的"类名" &gt; 方法上的{@link AccessLogCapture} &gt; 类上的{@link AccessLogCapture} &gt; 默认策略，
+ * 类名均为不含包名的简单类名
+ * <p>
+ * 配置可以通过{@link #update(CapturePolicy, Map)}在运行时整体替换，每次替换版本号加1，
+ * 访问日志切面据此丢弃按旧配置解析并缓存的策略
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+public class CapturePolicyRegistry {
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 默认完整采集，且没有配置项
+     */
+    public CapturePolicyRegistry() {
+        this(new CapturePolicy(), Collections.emptyMap());
+    }
+
+    public CapturePolicyRegistry(CapturePolicy defaultPolicy, Map<String, CapturePolicy> policies) {
+        this.snapshot = new Snapshot(defaultPolicy, policies, 0);
+    }
+
+    /**
+     * 替换默认策略和按接口指定的策略，例如配置刷新之后
+     */
+    public synchronized void update(CapturePolicy defaultPolicy, Map<String, CapturePolicy> policies) {
+        this.snapshot = new Snapshot(defaultPolicy, policies, snapshot.version + 1);
+    }
+
+    /**
+     * @return 配置的版本号，每次{@link #update(CapturePolicy, Map)}加1
+     */
+    public int getVersion() {
+        return snapshot.version;
+    }
+
+    public CapturePolicy resolve(Class<?> targetClass, Method method) {
+        Snapshot current = snapshot;
+        Class<?> userClass = ClassUtils.getUserClass(targetClass);
+        String className = userClass.getSimpleName();
+        CapturePolicy policy = current.policies.get(className + "." + method.getName());
+        if (policy == null) {
+            policy = current.policies.get(className);
+        }
+        if (policy != null) {
+            return policy;
+        }
+        AccessLogCapture capture = AnnotatedElementUtils.findMergedAnnotation(method, AccessLogCapture.class);
+        if (capture == null) {
+            capture = AnnotatedElementUtils.findMergedAnnotation(userClass, AccessLogCapture.class);
+        }
+        return capture != null ? CapturePolicy.of(capture) : current.defaultPolicy;
+    }
+
+    /**
+     * 某一版本的全部配置，整体替换以保证resolve读到的默认策略和按接口的策略属于同一版本
+     */
+    private static final class Snapshot {
+
+        private final CapturePolicy defaultPolicy;
+
+        private final Map<String, CapturePolicy> policies;
+
+        private final int version;
+
+        private Snapshot(CapturePolicy defaultPolicy, Map<String, CapturePolicy> policies, int version) {
+            Preconditions.checkNotNull(defaultPolicy, "defaultPolicy must not be null");
+            this.defaultPolicy = defaultPolicy;
+            this.policies = policies == null ? Collections.emptyMap() : new HashMap<>(policies);
+            this.version = version;
+        }
+
+    }
+
+}
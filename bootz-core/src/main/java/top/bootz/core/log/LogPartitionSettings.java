@@ -0,0 +1,37 @@
+package top.bootz.core.log;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import top.bootz.core.base.service.PartitionedCollections;
+
+/**
+ * 访问日志和消息日志的分区参数
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+
+@Data
+@NoArgsConstructor
+public class LogPartitionSettings {
+
+    /**
+     * 分区周期
+     */
+    private PartitionedCollections.Period period = PartitionedCollections.Period.DAY;
+
+    /**
+     * 访问日志保留天数，0表示永久保留
+     */
+    private int accessLogRetentionDays = 0;
+
+    /**
+     * 消息日志保留天数，0表示永久保留
+     */
+    private int rabbitMessageLogRetentionDays = 0;
+
+    /**
+     * 跨分区查询时并行查询的分区数
+     */
+    private int queryParallelism = 4;
+
+}
@@ -6,73 +6,98 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedBy;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.CompoundIndex;
-import org.springframework.data.mongodb.core.index.CompoundIndexes;
-import org.springframework.data.mongodb.core.index.Indexed;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import top.bootz.core.base.entity.BaseEntity;
 import top.bootz.core.base.message.RabbitMessage;
+import top.bootz.core.base.service.MongoField;
 
 /**
  * @Project : ibootz
  * @Package : top.bootz.user.entity.mongo
- * @Description : Rabbitmq消息日志表, 将消息发送实体、接收实体、确认实体存入mongodb，待查
+ * @Description : Rabbitmq消息日志表, 将消息发送实体、接收实体、确认实体存入mongodb，待查。
+ *              按时间分区存储，索引由{@link RabbitMessageLogService}在每个分区上创建
  * @Author : momogoing@163.com
  * @CreationDate : 2018-06-23 下午11:35
  */
 
 @Data
 @EqualsAndHashCode(callSuper = true)
-@CompoundIndexes({ @CompoundIndex(name = "idx_rml_exchange_routingkey", def = "{'exchange': 1, 'routingKey': 1}") })
 public class RabbitMessageLog extends BaseEntity {
 
     private static final long serialVersionUID = 1L;
 
+    public static final MongoField<Long> MESSAGE_ID = MongoField.of("message.id");
+
+    public static final MongoField<String> EXCHANGE = MongoField.of("exchange");
+
+    public static final MongoField<String> ROUTING_KEY = MongoField.of("routingKey");
+
+    public static final MongoField<RabbitMessage> MESSAGE = MongoField.of("message");
+
+    public static final MongoField<Boolean> SENT = MongoField.of("sent");
+
+    public static final MongoField<LocalDateTime> SENT_TIME = MongoField.of("sentTime");
+
+    public static final MongoField<Boolean> CONFIRMED = MongoField.of("confirmed");
+
+    public static final MongoField<LocalDateTime> CONFIRMED_TIME = MongoField.of("confirmedTime");
+
+    public static final MongoField<String> UNCONFIRMED_CAUSE = MongoField.of("unconfirmedCause");
+
+    public static final MongoField<Boolean> RETURNED = MongoField.of("returned");
+
+    public static final MongoField<LocalDateTime> RETURNED_TIME = MongoField.of("returnedTime");
+
+    public static final MongoField<String> RETURNED_CAUSE = MongoField.of("returnedCause");
+
+    public static final MongoField<Boolean> RECEIVED = MongoField.of("received");
+
+    public static final MongoField<LocalDateTime> RECEIVED_TIME = MongoField.of("receivedTime");
+
+    public static final MongoField<LocalDateTime> CREATE_TIME = MongoField.of("createTime");
+
     @Id
+    @JsonSerialize(using = ToStringSerializer.class)
     private ObjectId id;
 
     /**
      * 发送转发器
      */
-    @Indexed
     private String exchange;
 
     /**
      * 发送路由
      */
-    @Indexed
     private String routingKey;
 
     /**
      * 发送的消息实体
      */
-    @Indexed
     private RabbitMessage message;
 
     /**
      * 发送阶段：是否成功发送到消息服务器
      */
-    @Indexed
     private Boolean sent;
 
     /**
      * 发送成功的时间
      */
-    @Indexed
     private LocalDateTime sentTime;
 
     /**
      * 确认递送：broker服务器是否给出确认成功的回调
      */
-    @Indexed
     private Boolean confirmed;
 
     /**
      * 确认成功的时间
      */
-    @Indexed
     private LocalDateTime confirmedTime;
 
     /**
@@ -83,13 +108,11 @@ public class RabbitMessageLog extends BaseEntity {
     /**
      * 退回消息：broker服务器没有找到相应的exchange，退回了消息
      */
-    @Indexed
     private Boolean returned;
 
     /**
      * 消息回退的时间
      */
-    @Indexed
     private LocalDateTime returnedTime;
 
     /**
@@ -100,26 +123,22 @@ public class RabbitMessageLog extends BaseEntity {
     /**
      * 处理阶段：消息是否被成功接收并成功处理
      */
-    @Indexed
     private Boolean received;
 
     /**
      * 成功接收到消息的时间
      */
-    @Indexed
     private LocalDateTime receivedTime;
 
     /**
      * 触发此条rabbit消息的用户
      */
-    @Indexed
     @CreatedBy
     private Long createtor;
 
     /**
      * 触发时间
      */
-    @Indexed
     @CreatedDate
     private LocalDateTime createTime = LocalDateTime.now();
 
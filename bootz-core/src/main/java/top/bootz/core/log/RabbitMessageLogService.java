@@ -1,40 +1,172 @@
 package top.bootz.core.log;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+
 import lombok.NoArgsConstructor;
-import top.bootz.core.base.service.BaseMongoService;
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.commons.snowflake.IdGenerator;
+import top.bootz.core.base.service.Changes;
+import top.bootz.core.base.service.PartitionedCollections;
+import top.bootz.core.supporter.PagingInfo;
 
 /**
+ * 消息日志按消息编号中的生成时间分区存储，同一条消息的发送、确认、退回、接收状态无论何时写入都落在同一个分区
+ * <p>
+ * 不继承BaseMongoService：其中的方法都访问分区之前的rabbitMessageLog集合，该集合迁移后即被删除，所有读写都必须经过分区
+ *
  * @Author : momogoing@163.com
  * @CreationDate : 2018-06-24 上午7:44
  */
 
+@Slf4j
 @Service
 @NoArgsConstructor
-public class RabbitMessageLogService extends BaseMongoService<RabbitMessageLog> {
+public class RabbitMessageLogService implements InitializingBean, DisposableBean {
 
-    @Autowired
-    private RabbitMessageLogRepository rabbitMessageLogRepository;
+    private static final String COLLECTION = "rabbitMessageLog";
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private static final int LEGACY_MIGRATION_BATCH_SIZE = 1000;
 
     /**
-     * 该构造方法用于为baseMongoService通用父类注入mongodbTemplate工具类，必不可少。
-     *
-     * @param mongoTemplate
+     * 迁移旧数据时查找分区的起点，早于任何分区
      */
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private RabbitMessageLogWriter writer;
+
+    @Autowired(required = false)
+    private LogPartitionSettings logPartitionSettings;
+
+    @Autowired(required = false)
+    private RabbitMessageLogWriterSettings writerSettings;
+
+    private MongoTemplate mongoTemplate;
+
+    private PartitionedCollections partitions;
+
     @Autowired
     private RabbitMessageLogService(MongoTemplate mongoTemplate) {
-        super(mongoTemplate);
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        LogPartitionSettings settings = logPartitionSettings != null ? logPartitionSettings
+                : new LogPartitionSettings();
+        this.partitions = new PartitionedCollections(mongoTemplate, COLLECTION, settings.getPeriod(),
+                Duration.ofDays(settings.getRabbitMessageLogRetentionDays()), settings.getQueryParallelism(),
+                indexes());
+        partitions.setDuplicateKeyHandler(this::mergeDuplicates);
+        RabbitMessageLogWriterSettings ws = writerSettings != null ? writerSettings
+                : new RabbitMessageLogWriterSettings();
+        this.writer = new RabbitMessageLogWriter(this, ws.getCapacity(), ws.getBatchSize(),
+                ws.getFlushIntervalMillis());
+        // 写入器不是独立的bean，随本服务启动和停止
+        writer.start();
+    }
+
+    /**
+     * 每个分区上的索引：按消息编号upsert所需的唯一索引、按路由查询，以及只包含确认失败、被退回消息的部分索引
+     */
+    private static List<IndexDefinition> indexes() {
+        return Arrays.asList(
+                new Index().on(RabbitMessageLog.MESSAGE_ID.getName(), Direction.ASC).unique()
+                        .named("idx_rml_message_id"),
+                new Index().on("exchange", Direction.ASC).on("routingKey", Direction.ASC)
+                        .on("createTime", Direction.DESC).named("idx_rml_route_time"),
+                new Index().on("createTime", Direction.DESC)
+                        .partial(PartialIndexFilter.of(Criteria.where("confirmed").is(false)))
+                        .named("idx_rml_unconfirmed_time"),
+                new Index().on("createTime", Direction.DESC)
+                        .partial(PartialIndexFilter.of(Criteria.where("returned").is(true)))
+                        .named("idx_rml_returned_time"));
+    }
+
+    /**
+     * 唯一索引建立之前，不同进程并发upsert同一条消息时可能各自插入了一条日志记录。
+     * 按主键顺序把后插入的记录中的字段合并到最早的一条上，再删除其余记录，之后才能建立唯一索引
+     */
+    private void mergeDuplicates(String collectionName, IndexDefinition index) {
+        if (!"idx_rml_message_id".equals(index.getIndexOptions().get("name"))) {
+            return;
+        }
+        String messageIdField = new QueryMapper(mongoTemplate.getConverter())
+                .getMappedObject(new Document(RabbitMessageLog.MESSAGE_ID.getName(), 1),
+                        mongoTemplate.getConverter().getMappingContext()
+                                .getPersistentEntity(RabbitMessageLog.class))
+                .keySet().iterator().next();
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        List<Document> pipeline = Arrays.asList(
+                new Document("$group", new Document("_id", "$" + messageIdField)
+                        .append("ids", new Document("$push", "$_id")).append("count", new Document("$sum", 1))),
+                new Document("$match", new Document("_id", new Document("$ne", null))
+                        .append("count", new Document("$gt", 1))));
+        int merged = 0;
+        for (Document group : collection.aggregate(pipeline).allowDiskUse(true)) {
+            List<Document> duplicates = collection.find(Filters.in("_id", (List<?>) group.get("ids")))
+                    .sort(Sorts.ascending("_id")).into(new ArrayList<>());
+            Document first = duplicates.get(0);
+            List<Object> removed = new ArrayList<>();
+            for (Document duplicate : duplicates.subList(1, duplicates.size())) {
+                duplicate.forEach((key, value) -> {
+                    if (value != null && !"_id".equals(key)) {
+                        first.put(key, value);
+                    }
+                });
+                removed.add(duplicate.get("_id"));
+            }
+            collection.replaceOne(Filters.eq("_id", first.get("_id")), first);
+            collection.deleteMany(Filters.in("_id", removed));
+            merged += removed.size();
+        }
+        log.warn("merged {} duplicate rabbit message logs in {}", merged, collectionName);
     }
 
     public RabbitMessageLog save(RabbitMessageLog rabbitMessageLog) {
-        return rabbitMessageLogRepository.save(rabbitMessageLog);
+        long partitionTime = partitionTime(messageIdOf(rabbitMessageLog));
+        if (rabbitMessageLog.getId() == null) {
+            rabbitMessageLog.setId(idFor(partitionTime));
+        }
+        mongoTemplate.save(rabbitMessageLog, partitions.collectionFor(partitionTime));
+        return rabbitMessageLog;
     }
 
     @Async
@@ -42,12 +174,24 @@ public class RabbitMessageLogService extends BaseMongoService<RabbitMessageLog>
         save(rabbitMessageLog);
     }
 
+    /**
+     * 主键的时间部分取自消息编号的生成时间，按主键即可定位分区。
+     * 找不到时再从新到旧查找更早的分区，兼容主键按写入时间生成的旧记录
+     */
     public Optional<RabbitMessageLog> find(ObjectId objectId) {
-        return rabbitMessageLogRepository.findById(objectId);
+        RabbitMessageLog found = mongoTemplate.findById(objectId, RabbitMessageLog.class,
+                partitions.nameFor(objectId.getDate().getTime()));
+        if (found != null) {
+            return Optional.of(found);
+        }
+        LocalDateTime created = LocalDateTime.ofInstant(objectId.getDate().toInstant(), ZoneId.systemDefault());
+        return Optional.ofNullable(partitions.findFirst(Query.query(Criteria.where("id").is(objectId)),
+                RabbitMessageLog.class, EPOCH, created));
     }
 
     public void delete(RabbitMessageLog rabbitMessageLog) {
-        rabbitMessageLogRepository.delete(rabbitMessageLog);
+        long partitionTime = partitionTime(messageIdOf(rabbitMessageLog));
+        mongoTemplate.remove(rabbitMessageLog, partitions.nameFor(partitionTime));
     }
 
     @Async
@@ -56,7 +200,143 @@ public class RabbitMessageLogService extends BaseMongoService<RabbitMessageLog>
     }
 
     public Optional<RabbitMessageLog> findByMessageId(Long messageId) {
-        return rabbitMessageLogRepository.findByMessage_Id(messageId);
+        return Optional.ofNullable(mongoTemplate.findOne(byMessageId(messageId), RabbitMessageLog.class,
+                partitions.nameFor(partitionTime(messageId))));
+    }
+
+    /**
+     * 在from到to之间的分区上并行查询，结果按查询的排序合并，没有排序时按分区从新到旧拼接
+     */
+    public List<RabbitMessageLog> findBetween(Query query, LocalDateTime from, LocalDateTime to) {
+        return partitions.find(query, RabbitMessageLog.class, from, to);
+    }
+
+    /**
+     * 用游标逐条读取from到to之间各分区中匹配的记录，用于流式导出
+     */
+    public void forEachBetween(Query query, LocalDateTime from, LocalDateTime to,
+            Consumer<? super RabbitMessageLog> action) {
+        partitions.forEach(query, RabbitMessageLog.class, from, to, action);
+    }
+
+    /**
+     * 在from到to之间的分区上按游标分页查询
+     */
+    public List<RabbitMessageLog> findPageBetween(Query query, LocalDateTime from, LocalDateTime to, PagingInfo paging) {
+        return partitions.findPage(query, RabbitMessageLog.class, from, to, paging, "id");
+    }
+
+    public long countBetween(Query query, LocalDateTime from, LocalDateTime to) {
+        return partitions.count(query, RabbitMessageLog.class, from, to);
+    }
+
+    /**
+     * 预建下一个分区并删除过期分区
+     *
+     * @return 本次删除的分区数
+     */
+    public int maintainPartitions() {
+        return partitions.maintain();
+    }
+
+    /**
+     * 提交一次消息日志的状态变更，不阻塞，由后台线程合并后批量写入
+     *
+     * @return 是否被接收，false表示缓冲区已满，本次变更被丢弃
+     */
+    public boolean submitState(Long messageId, Changes changes) {
+        return writer.submit(new RabbitMessageLogWriter.StateChange(messageId, changes));
+    }
+
+    /**
+     * 按消息编号批量upsert日志字段，不需要预先查询日志记录是否存在，每个分区一次请求。新插入记录的主键由消息编号的生成时间生成。
+     * 不同进程并发插入同一条消息的日志时，唯一索引上冲突的操作会重试一次，此时记录已存在，重试即为更新
+     */
+    public void upsertByMessageId(Map<Long, Changes> changesByMessageId) {
+        Map<String, List<Pair<Query, Update>>> byPartition = new LinkedHashMap<>();
+        for (Map.Entry<Long, Changes> entry : changesByMessageId.entrySet()) {
+            long partitionTime = partitionTime(entry.getKey());
+            Update update = entry.getValue().toUpdate().setOnInsert("_id", idFor(partitionTime));
+            byPartition.computeIfAbsent(partitions.collectionFor(partitionTime), k -> new ArrayList<>())
+                    .add(Pair.of(byMessageId(entry.getKey()), update));
+        }
+        byPartition.forEach(this::bulkUpsert);
+    }
+
+    /**
+     * 按消息编号批量更新已有的日志记录，每个分区一次请求。没有日志记录的消息(例如不是经由本系统发出的消息)不会新建记录
+     */
+    public void updateByMessageId(Map<Long, Changes> changesByMessageId) {
+        Map<String, List<Pair<Query, Update>>> byPartition = new LinkedHashMap<>();
+        for (Map.Entry<Long, Changes> entry : changesByMessageId.entrySet()) {
+            byPartition.computeIfAbsent(partitions.collectionFor(partitionTime(entry.getKey())),
+                    k -> new ArrayList<>()).add(Pair.of(byMessageId(entry.getKey()), entry.getValue().toUpdate()));
+        }
+        byPartition.forEach((collectionName, updates) -> bulkOps(collectionName).updateOne(updates).execute());
+    }
+
+    private BulkOperations bulkOps(String collectionName) {
+        return mongoTemplate.bulkOps(BulkMode.UNORDERED, RabbitMessageLog.class, collectionName);
+    }
+
+    private void bulkUpsert(String collectionName, List<Pair<Query, Update>> upserts) {
+        try {
+            bulkOps(collectionName).upsert(upserts).execute();
+        } catch (BulkOperationException e) {
+            List<Pair<Query, Update>> retries = new ArrayList<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                retries.add(upserts.get(error.getIndex()));
+            }
+            bulkOps(collectionName).upsert(retries).execute();
+        }
+    }
+
+    /**
+     * 把分区之前的rabbitMessageLog集合迁移到各分区，按消息编号的生成时间分区，旧记录的主键保持不变。
+     * 可以重复调用，迁移完成后原集合被删除
+     *
+     * @return 迁移的日志数
+     */
+    public long migrateLegacyCollection() {
+        return partitions.migrateLegacy(COLLECTION, RabbitMessageLog.class, rabbitMessageLog -> {
+            Long messageId = messageIdOf(rabbitMessageLog);
+            return messageId != null ? partitionTime(messageId) : rabbitMessageLog.getId().getDate().getTime();
+        }, LEGACY_MIGRATION_BATCH_SIZE);
+    }
+
+    public RabbitMessageLogWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.stop();
+        partitions.destroy();
+    }
+
+    private static Query byMessageId(Long messageId) {
+        return Query.query(Criteria.where(RabbitMessageLog.MESSAGE_ID.getName()).is(messageId));
+    }
+
+    /**
+     * 主键的时间部分与分区时间一致(精确到秒)
+     */
+    private static ObjectId idFor(long partitionTime) {
+        return new ObjectId(new Date(partitionTime));
+    }
+
+    private static Long messageIdOf(RabbitMessageLog rabbitMessageLog) {
+        return rabbitMessageLog.getMessage() == null ? null : rabbitMessageLog.getMessage().getId();
+    }
+
+    /**
+     * 消息编号为雪花算法生成，其中的时间部分决定分区；没有消息编号时使用当前时间
+     */
+    private static long partitionTime(Long messageId) {
+        return messageId == null ? System.currentTimeMillis() : IdGenerator.timestampOf(messageId);
     }
 
 }
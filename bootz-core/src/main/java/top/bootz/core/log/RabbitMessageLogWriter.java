@@ -0,0 +1,62 @@
+package top.bootz.core.log;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import top.bootz.core.base.service.Changes;
+
+/**
+ * Rabbitmq消息日志的状态变更批量写入器
+ * <p>
+ * 发送、确认、退回、接收等状态变更只放入缓冲区，由后台线程按消息编号合并后以bulk upsert写入mongodb，
+ * 同一批次中同一条消息的多次变更只产生一次upsert，且不需要先查询日志记录。
+ *
+ * @author Zhangq - momogoing@163.com
+ */
+public class RabbitMessageLogWriter extends BatchingWriter<RabbitMessageLogWriter.StateChange> {
+
+    public static final int DEFAULT_CAPACITY = 50000;
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200L;
+
+    private final RabbitMessageLogService rabbitMessageLogService;
+
+    public RabbitMessageLogWriter(RabbitMessageLogService rabbitMessageLogService) {
+        this(rabbitMessageLogService, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public RabbitMessageLogWriter(RabbitMessageLogService rabbitMessageLogService, int capacity, int batchSize,
+            long flushIntervalMillis) {
+        super("rabbit-message-log-writer", capacity, batchSize, flushIntervalMillis);
+        this.rabbitMessageLogService = rabbitMessageLogService;
+    }
+
+    @Override
+    protected void write(List<StateChange> batch) {
+        // 按消息编号合并，后发生的变更覆盖先发生的同名字段
+        Map<Long, Changes> merged = new LinkedHashMap<>();
+        for (StateChange change : batch) {
+            merged.computeIfAbsent(change.getMessageId(), k -> Changes.create()).merge(change.getChanges());
+        }
+        rabbitMessageLogService.upsertByMessageId(merged);
+    }
+
+    /**
+     * 一条消息的一次状态变更
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class StateChange {
+
+        private final Long messageId;
+
+        private final Changes changes;
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package top.bootz.core.log;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Rabbitmq消息日志批量写入器的参数
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+
+@Data
+@NoArgsConstructor
+public class RabbitMessageLogWriterSettings {
+
+    /**
+     * 缓冲区最多容纳的状态变更数，超出时丢弃
+     */
+    private int capacity = RabbitMessageLogWriter.DEFAULT_CAPACITY;
+
+    /**
+     * 每次bulk upsert的最大状态变更数
+     */
+    private int batchSize = RabbitMessageLogWriter.DEFAULT_BATCH_SIZE;
+
+    /**
+     * 不足一批时的最长等待时间(毫秒)
+     */
+    private long flushIntervalMillis = RabbitMessageLogWriter.DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+}
@@ -0,0 +1,22 @@
+package top.bootz.core.outbox;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * 消息发件箱的配置：发件箱表的repository及{@link OutboxService}
+ * <p>
+ * 不标注@Configuration，扫描top.bootz包时不会被加载，只有通过{@link top.bootz.core.annotation.EnableOutbox}导入后才生效，
+ * 不使用发件箱的应用不会多出一组jpa repository，也不需要sys_outbox_message表。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@EnableJpaRepositories(basePackageClasses = OutboxMessageRepository.class)
+public class OutboxConfig {
+
+    @Bean
+    public OutboxService outboxService() {
+        return new OutboxService();
+    }
+
+}
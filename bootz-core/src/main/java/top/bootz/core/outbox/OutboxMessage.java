@@ -0,0 +1,164 @@
+package top.bootz.core.outbox;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import top.bootz.core.base.entity.CommonEntity;
+
+/**
+ * 消息发件箱表：待发送的Rabbitmq消息先与业务数据在同一个事务中写入该表，再由后台中继批量发送
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Entity
+@Table(name = "sys_outbox_message", indexes = {
+        @Index(columnList = "message_id", name = "idx_sys_outbox_message_message_id", unique = true),
+        @Index(columnList = "status,next_attempt_time", name = "idx_sys_outbox_message_status_next_attempt"),
+        @Index(columnList = "lease_owner", name = "idx_sys_outbox_message_lease_owner") })
+@Setter
+@NoArgsConstructor
+public class OutboxMessage extends CommonEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        /** 等待发送 */
+        NEW,
+        /** 已发送并得到broker确认 */
+        SENT,
+        /** 重试次数用尽或被broker退回，不再发送 */
+        FAILED
+    }
+
+    /**
+     * 消息编号，即RabbitMessage的id
+     */
+    private Long messageId;
+
+    private String exchange;
+
+    private String routingKey;
+
+    /**
+     * 消息实体的类名，中继发送时据此反序列化
+     */
+    private String payloadType;
+
+    /**
+     * 消息实体的json
+     */
+    private String payload;
+
+    /**
+     * 消息头的json
+     */
+    private String headers;
+
+    private Status status;
+
+    /**
+     * 已尝试发送的次数
+     */
+    private Integer attempts;
+
+    /**
+     * 下一次允许发送的时间
+     */
+    private LocalDateTime nextAttemptTime;
+
+    /**
+     * 发送成功的时间
+     */
+    private LocalDateTime sentTime;
+
+    /**
+     * 认领该消息的中继批次，多个进程的中继线程只发送各自认领到的消息
+     */
+    private String leaseOwner;
+
+    /**
+     * 认领的到期时间，中继进程在发送过程中退出时，到期后由其他中继重新认领
+     */
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "message_id", nullable = false, updatable = false, columnDefinition = "bigint(64) comment '消息编号'")
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    @Column(name = "exchange", nullable = false, updatable = false, columnDefinition = "varchar(128) comment '发送转发器'")
+    public String getExchange() {
+        return exchange;
+    }
+
+    @Column(name = "routing_key", nullable = false, updatable = false, columnDefinition = "varchar(128) comment '发送路由'")
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    @Column(name = "payload_type", nullable = false, updatable = false, columnDefinition = "varchar(255) comment '消息实体类名'")
+    public String getPayloadType() {
+        return payloadType;
+    }
+
+    @Column(name = "payload", nullable = false, updatable = false, columnDefinition = "longtext comment '消息实体'")
+    public String getPayload() {
+        return payload;
+    }
+
+    @Column(name = "headers", nullable = true, updatable = false, columnDefinition = "text comment '消息头'")
+    public String getHeaders() {
+        return headers;
+    }
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, columnDefinition = "varchar(16) default 'NEW' comment '发送状态（NEW-待发送，SENT-已发送，FAILED-发送失败）'")
+    public Status getStatus() {
+        return status;
+    }
+
+    @Column(name = "attempts", nullable = false, columnDefinition = "int(11) default 0 comment '已尝试发送的次数'")
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    @Column(name = "next_attempt_time", nullable = false, columnDefinition = "DATETIME comment '下一次允许发送的时间'")
+    public LocalDateTime getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    @Column(name = "sent_time", nullable = true, columnDefinition = "DATETIME default NULL comment '发送成功的时间'")
+    public LocalDateTime getSentTime() {
+        return sentTime;
+    }
+
+    @Column(name = "lease_owner", nullable = true, columnDefinition = "varchar(64) default NULL comment '认领该消息的中继批次'")
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    @Column(name = "lease_until", nullable = true, columnDefinition = "DATETIME default NULL comment '认领的到期时间'")
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+}
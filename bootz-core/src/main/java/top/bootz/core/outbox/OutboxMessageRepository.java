@@ -0,0 +1,59 @@
+package top.bootz.core.outbox;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * @author Zhangq <momogoing@163.com>
+ */
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    /**
+     * 按主键取模分片，查询第worker个中继线程负责的、已到发送时间且未被认领(或认领已到期)的消息编号
+     */
+    @Query("select o.id from OutboxMessage o where o.status = :status and o.nextAttemptTime <= :now "
+            + "and (o.leaseUntil is null or o.leaseUntil < :now) and mod(o.id, :parallelism) = :worker order by o.id")
+    List<Long> findRelayableIds(@Param("status") OutboxMessage.Status status, @Param("now") LocalDateTime now,
+            @Param("parallelism") long parallelism, @Param("worker") long worker, Pageable pageable);
+
+    /**
+     * 认领消息：只有仍处于status状态且未被认领(或认领已到期)的行会被更新，并发认领同一行时只有一方成功
+     */
+    @Modifying
+    @Query("update OutboxMessage o set o.leaseOwner = :owner, o.leaseUntil = :leaseUntil where o.id in :ids "
+            + "and o.status = :status and (o.leaseUntil is null or o.leaseUntil < :now)")
+    int claim(@Param("ids") Collection<Long> ids, @Param("status") OutboxMessage.Status status,
+            @Param("now") LocalDateTime now, @Param("owner") String owner,
+            @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    List<OutboxMessage> findByLeaseOwnerOrderById(String leaseOwner);
+
+    @Modifying
+    @Query("update OutboxMessage o set o.status = :status, o.sentTime = :sentTime, o.leaseOwner = null, "
+            + "o.leaseUntil = null where o.id in :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("status") OutboxMessage.Status status,
+            @Param("sentTime") LocalDateTime sentTime);
+
+    @Modifying
+    @Query("update OutboxMessage o set o.status = :status, o.leaseOwner = null, o.leaseUntil = null "
+            + "where o.id in :ids")
+    int markFailed(@Param("ids") Collection<Long> ids, @Param("status") OutboxMessage.Status status);
+
+    @Modifying
+    @Query("update OutboxMessage o set o.attempts = o.attempts + 1, o.nextAttemptTime = :nextAttemptTime, "
+            + "o.leaseOwner = null, o.leaseUntil = null where o.id in :ids")
+    int markRetry(@Param("ids") Collection<Long> ids, @Param("nextAttemptTime") LocalDateTime nextAttemptTime);
+
+    @Modifying
+    @Query("update OutboxMessage o set o.status = :status where o.id in :ids and o.attempts >= :maxAttempts")
+    int markExhausted(@Param("ids") Collection<Long> ids, @Param("status") OutboxMessage.Status status,
+            @Param("maxAttempts") int maxAttempts);
+
+}
@@ -0,0 +1,283 @@
+package top.bootz.core.outbox;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.google.common.base.Preconditions;
+
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.commons.helper.JsonHelper;
+import top.bootz.core.base.message.BaseMessageSender;
+import top.bootz.core.base.message.RabbitMessage;
+import top.bootz.core.base.message.SendResult;
+
+/**
+ * 消息发件箱的后台中继
+ * <p>
+ * parallelism个线程按主键取模分片，各自定期从发件箱中认领一批已到发送时间的消息，按exchange、routingKey、消息头分组后批量发送并等待broker确认，
+ * 确认成功的消息标记为已发送，被退回的消息标记为发送失败，其余消息推迟后重试。认领是数据库上的条件更新，多个进程同时运行中继时每条消息只会被一个中继发送；
+ * 进程在发送之后、标记之前退出时，认领到期后消息会被再次发送，消费端需要按消息编号去重。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Slf4j
+public class OutboxRelay implements InitializingBean, DisposableBean {
+
+    private final OutboxService outboxService;
+
+    private final BaseMessageSender messageSender;
+
+    private final int parallelism;
+
+    private final int batchSize;
+
+    private final long pollIntervalMillis;
+
+    private final int maxAttempts;
+
+    private final long retryBackoffMillis;
+
+    private final long confirmTimeoutMillis;
+
+    private final long leaseMillis;
+
+    /**
+     * 各中继线程最近一次取到的最早一条消息距离写入发件箱的时间(毫秒)，没有待发送的消息时为0
+     */
+    private final AtomicLongArray lagMillis;
+
+    private final LongAdder relayed = new LongAdder();
+
+    private final LongAdder retried = new LongAdder();
+
+    private final LongAdder exhausted = new LongAdder();
+
+    private final LongAdder returned = new LongAdder();
+
+    private ScheduledExecutorService executor;
+
+    private volatile boolean running;
+
+    /**
+     * @param parallelism
+     *            中继线程数
+     * @param batchSize
+     *            每个线程每次取出并批量发送的最大消息数
+     * @param pollIntervalMillis
+     *            发件箱为空时两次查询之间的间隔(毫秒)
+     * @param maxAttempts
+     *            每条消息最多尝试发送的次数
+     * @param retryBackoffMillis
+     *            发送失败后推迟重试的时间(毫秒)
+     * @param confirmTimeoutMillis
+     *            每批消息等待broker确认的超时时间(毫秒)
+     * @param leaseMillis
+     *            认领一批消息的时长(毫秒)，须大于confirmTimeoutMillis
+     */
+    public OutboxRelay(OutboxService outboxService, BaseMessageSender messageSender, int parallelism, int batchSize,
+            long pollIntervalMillis, int maxAttempts, long retryBackoffMillis, long confirmTimeoutMillis,
+            long leaseMillis) {
+        Preconditions.checkNotNull(outboxService, "outboxService must not be null");
+        Preconditions.checkNotNull(messageSender, "messageSender must not be null");
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be greater than 0");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be greater than 0");
+        Preconditions.checkArgument(pollIntervalMillis > 0, "pollIntervalMillis must be greater than 0");
+        Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be greater than 0");
+        Preconditions.checkArgument(retryBackoffMillis >= 0, "retryBackoffMillis must not be less than 0");
+        Preconditions.checkArgument(confirmTimeoutMillis > 0, "confirmTimeoutMillis must be greater than 0");
+        Preconditions.checkArgument(leaseMillis > confirmTimeoutMillis,
+                "leaseMillis must be greater than confirmTimeoutMillis");
+        this.outboxService = outboxService;
+        this.messageSender = messageSender;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.leaseMillis = leaseMillis;
+        this.lagMillis = new AtomicLongArray(parallelism);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "outbox-relay-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        for (int i = 0; i < parallelism; i++) {
+            int worker = i;
+            executor.scheduleWithFixedDelay(() -> relay(worker), pollIntervalMillis, pollIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 发送第worker个分片中已到发送时间的全部消息，取到整批时说明还有积压，继续取下一批
+     */
+    private void relay(int worker) {
+        try {
+            while (running && relayBatch(worker) == batchSize) {
+                // 继续处理积压
+            }
+        } catch (Exception e) {
+            // 异常不能抛出，否则该线程的定时任务会被取消
+            log.error("outbox relay " + worker + " failed", e);
+        }
+    }
+
+    private int relayBatch(int worker) {
+        List<OutboxMessage> batch = outboxService.claim(parallelism, worker, batchSize, leaseMillis);
+        if (batch.isEmpty()) {
+            lagMillis.set(worker, 0L);
+            return 0;
+        }
+        LocalDateTime oldest = batch.get(0).getCreateTime();
+        long lag = oldest == null ? 0L : Duration.between(oldest, LocalDateTime.now()).toMillis();
+        lagMillis.set(worker, Math.max(0L, lag));
+
+        List<Long> sent = new ArrayList<>(batch.size());
+        List<Long> rejected = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        for (List<OutboxMessage> group : groupByDestination(batch).values()) {
+            send(group, sent, rejected, failed);
+        }
+        outboxService.markSent(sent);
+        relayed.add(sent.size());
+        if (!rejected.isEmpty()) {
+            outboxService.markFailed(rejected);
+            returned.add(rejected.size());
+            log.error("{} outbox messages were returned by the broker and will not be sent again", rejected.size());
+        }
+        if (!failed.isEmpty()) {
+            retried.add(failed.size());
+            int count = outboxService.markRetry(failed, LocalDateTime.now().plusNanos(
+                    TimeUnit.MILLISECONDS.toNanos(retryBackoffMillis)), maxAttempts);
+            if (count > 0) {
+                exhausted.add(count);
+                log.error("{} outbox messages reached max attempts {} and will not be sent again", count, maxAttempts);
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * 同一组消息的exchange、routingKey和消息头都相同，可以一次批量发送
+     */
+    private static Map<List<String>, List<OutboxMessage>> groupByDestination(List<OutboxMessage> batch) {
+        Map<List<String>, List<OutboxMessage>> groups = new LinkedHashMap<>();
+        for (OutboxMessage outboxMessage : batch) {
+            List<String> key = new ArrayList<>(3);
+            key.add(outboxMessage.getExchange());
+            key.add(outboxMessage.getRoutingKey());
+            key.add(Objects.toString(outboxMessage.getHeaders(), ""));
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(outboxMessage);
+        }
+        return groups;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void send(List<OutboxMessage> group, List<Long> sent, List<Long> rejected, List<Long> failed) {
+        OutboxMessage first = group.get(0);
+        List<OutboxMessage> decoded = new ArrayList<>(group.size());
+        List<RabbitMessage> messages = new ArrayList<>(group.size());
+        for (OutboxMessage outboxMessage : group) {
+            try {
+                Class<? extends RabbitMessage> payloadType = Class.forName(outboxMessage.getPayloadType())
+                        .asSubclass(RabbitMessage.class);
+                messages.add(JsonHelper.fromJSON(outboxMessage.getPayload(), payloadType));
+                decoded.add(outboxMessage);
+            } catch (Exception e) {
+                log.error("can not decode outbox message, messageId: " + outboxMessage.getMessageId(), e);
+                failed.add(outboxMessage.getId());
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        Map<String, Object> messageHeaders = first.getHeaders() == null ? null
+                : JsonHelper.fromJSON(first.getHeaders(), Map.class);
+        List<SendResult> results = messageSender.sendBatch(first.getExchange(), first.getRoutingKey(), messages,
+                messageHeaders, confirmTimeoutMillis);
+        for (int i = 0; i < results.size(); i++) {
+            SendResult.Status status = results.get(i).getStatus();
+            if (status == SendResult.Status.CONFIRMED) {
+                sent.add(decoded.get(i).getId());
+            } else if (status == SendResult.Status.RETURNED) {
+                // 被退回说明路由不存在，重试也无法送达，标记为发送失败，退回原因记录在消息日志中
+                rejected.add(decoded.get(i).getId());
+            } else {
+                failed.add(decoded.get(i).getId());
+            }
+        }
+    }
+
+    /**
+     * @return 发件箱中最早一条待发送消息已等待的时间(毫秒)，取各中继线程最近一次查询结果的最大值
+     */
+    public long getLagMillis() {
+        long max = 0L;
+        for (int i = 0; i < parallelism; i++) {
+            max = Math.max(max, lagMillis.get(i));
+        }
+        return max;
+    }
+
+    /**
+     * @return 已发送并标记完成的消息数
+     */
+    public long getRelayedCount() {
+        return relayed.sum();
+    }
+
+    /**
+     * @return 发送失败、推迟重试的次数
+     */
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    /**
+     * @return 因重试次数用尽而放弃的消息数
+     */
+    public long getExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    /**
+     * @return 被broker退回、标记为发送失败的消息数
+     */
+    public long getReturnedCount() {
+        return returned.sum();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(confirmTimeoutMillis + 5000L, TimeUnit.MILLISECONDS)) {
+            log.warn("outbox relay did not stop in time");
+        }
+    }
+
+}
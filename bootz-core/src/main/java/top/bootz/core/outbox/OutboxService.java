@@ -0,0 +1,100 @@
+package top.bootz.core.outbox;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import top.bootz.commons.helper.JsonHelper;
+import top.bootz.core.base.message.RabbitMessage;
+
+/**
+ * 消息发件箱，由{@link OutboxConfig}声明
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public class OutboxService {
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
+    /**
+     * 把消息写入发件箱。在调用方已开启的事务中执行，与业务数据一同提交或回滚，调用方没有事务时单独提交
+     *
+     * @param message
+     *            消息编号必须已经设置
+     */
+    @Transactional
+    public OutboxMessage append(String exchange, String routingKey, RabbitMessage message,
+            Map<String, Object> messageHeaders) {
+        OutboxMessage outboxMessage = new OutboxMessage();
+        outboxMessage.setMessageId(message.getId());
+        outboxMessage.setExchange(exchange);
+        outboxMessage.setRoutingKey(routingKey);
+        outboxMessage.setPayloadType(message.getClass().getName());
+        outboxMessage.setPayload(JsonHelper.toJSON(message));
+        outboxMessage.setHeaders(messageHeaders == null || messageHeaders.isEmpty() ? null
+                : JsonHelper.toJSON(messageHeaders));
+        outboxMessage.setStatus(OutboxMessage.Status.NEW);
+        outboxMessage.setAttempts(0);
+        outboxMessage.setNextAttemptTime(LocalDateTime.now());
+        return outboxMessageRepository.save(outboxMessage);
+    }
+
+    /**
+     * 认领第worker个中继线程负责的、已到发送时间的一批待发送消息，按写入顺序排列。
+     * 认领是一次条件更新，多个进程同时查询到同一批消息时每条消息只会被其中一个认领；认领在leaseMillis后到期，
+     * 到期前未标记为已发送或推迟重试的消息可以被重新认领
+     */
+    @Transactional
+    public List<OutboxMessage> claim(int parallelism, int worker, int limit, long leaseMillis) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = outboxMessageRepository.findRelayableIds(OutboxMessage.Status.NEW, now, parallelism, worker,
+                PageRequest.of(0, limit));
+        if (ids.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        String owner = UUID.randomUUID().toString();
+        LocalDateTime leaseUntil = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMillis));
+        if (outboxMessageRepository.claim(ids, OutboxMessage.Status.NEW, now, owner, leaseUntil) == 0) {
+            return new ArrayList<>(0);
+        }
+        return outboxMessageRepository.findByLeaseOwnerOrderById(owner);
+    }
+
+    @Transactional
+    public int markSent(Collection<Long> ids) {
+        return ids.isEmpty() ? 0
+                : outboxMessageRepository.markSent(ids, OutboxMessage.Status.SENT, LocalDateTime.now());
+    }
+
+    /**
+     * 被broker退回的消息不再发送
+     */
+    @Transactional
+    public int markFailed(Collection<Long> ids) {
+        return ids.isEmpty() ? 0 : outboxMessageRepository.markFailed(ids, OutboxMessage.Status.FAILED);
+    }
+
+    /**
+     * 发送失败的消息累加尝试次数并推迟到nextAttemptTime之后重试，次数达到maxAttempts的消息不再发送
+     *
+     * @return 本次因重试次数用尽而放弃的消息数
+     */
+    @Transactional
+    public int markRetry(Collection<Long> ids, LocalDateTime nextAttemptTime, int maxAttempts) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        outboxMessageRepository.markRetry(ids, nextAttemptTime);
+        return outboxMessageRepository.markExhausted(ids, OutboxMessage.Status.FAILED, maxAttempts);
+    }
+
+}
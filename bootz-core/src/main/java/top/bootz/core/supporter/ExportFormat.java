@@ -0,0 +1,57 @@
+package top.bootz.core.supporter;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 流式导出的格式
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public enum ExportFormat {
+
+    /**
+     * 每行一个json对象，以\n分隔
+     */
+    JSON_LINES("application/x-ndjson", "jsonl"),
+
+    /**
+     * utf-8编码带BOM的csv，第一行为列名
+     */
+    CSV("text/csv", "csv");
+
+    private final String mediaType;
+
+    private final String extension;
+
+    ExportFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * 按名称或扩展名(忽略大小写)解析，为空时返回JSON_LINES
+     *
+     * @throws IllegalArgumentException
+     *             不支持的格式
+     */
+    public static ExportFormat of(String format) {
+        if (StringUtils.isBlank(format)) {
+            return JSON_LINES;
+        }
+        for (ExportFormat value : values()) {
+            if (value.name().equalsIgnoreCase(format) || value.extension.equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("unsupported export format: " + format);
+    }
+
+}
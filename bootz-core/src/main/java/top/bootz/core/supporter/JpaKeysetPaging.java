@@ -0,0 +1,148 @@
+package top.bootz.core.supporter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Table;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+/**
+ * mysql的游标分页，也支持偏移量分页
+ * <p>
+ * JpaSpecificationExecutor按Pageable分页时除第一页外每页都会执行count，这里用同样的{@link Specification}直接构造查询，
+ * 只按{@link PagingInfo#getCountMode()}决定是否统计总数。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public final class JpaKeysetPaging {
+
+    private JpaKeysetPaging() {
+    }
+
+    /**
+     * 从游标之后读取的条件，形如 k1 > v1 or (k1 = v1 and k2 > v2) or ...，降序的排序键使用 <；第一页没有条件
+     */
+    public static <T> Specification<T> after(PagingInfo paging, String idField) {
+        List<SortInfo> keys = KeysetPaging.sortKeys(paging, idField);
+        List<Object> after = KeysetPaging.afterKeys(paging, keys);
+        return (root, query, cb) -> {
+            if (after == null) {
+                return null;
+            }
+            List<Predicate> branches = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                List<Predicate> conditions = new ArrayList<>(i + 1);
+                for (int j = 0; j < i; j++) {
+                    conditions.add(cb.equal(path(root, keys.get(j).getSortFiled()), after.get(j)));
+                }
+                conditions.add(compare(cb, path(root, keys.get(i).getSortFiled()), after.get(i),
+                        KeysetPaging.direction(keys.get(i)).isAscending()));
+                branches.add(cb.and(conditions.toArray(new Predicate[0])));
+            }
+            return cb.or(branches.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * 按paging的分页方式读取一页，并按countMode统计总数。游标分页时paging中的nextCursor和hasNext会被更新，
+     * 偏移量分页时按offset和pageSize读取
+     *
+     * @param where
+     *            查询条件，可以为null
+     * @throws IllegalArgumentException
+     *             游标分页的排序键不是游标支持的类型
+     */
+    public static <T> List<T> find(EntityManager entityManager, Class<T> entityClass, Specification<T> where,
+            PagingInfo paging, String idField) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(entityClass);
+        Root<T> root = query.from(entityClass);
+        List<SortInfo> keys = paging.isKeyset() ? KeysetPaging.sortKeys(paging, idField)
+                : KeysetPaging.prioritized(paging);
+        if (paging.isKeyset()) {
+            // 在查询之前检查，避免读完一页后才发现无法生成下一页的游标
+            for (SortInfo key : keys) {
+                Class<?> type = path(root, key.getSortFiled()).getJavaType();
+                if (!SeekCursor.supports(type)) {
+                    throw new IllegalArgumentException("sort key [" + key.getSortFiled() + "] of type ["
+                            + type.getName() + "] is not supported in keyset paging");
+                }
+            }
+        }
+        count(entityManager, entityClass, where, paging);
+        Predicate predicate = paging.isKeyset()
+                ? Specification.where(where).and(after(paging, idField)).toPredicate(root, query, cb)
+                : where == null ? null : where.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(root).orderBy(QueryUtils.toOrders(KeysetPaging.toSort(keys), root, cb));
+        if (!paging.isKeyset()) {
+            return entityManager.createQuery(query).setFirstResult(paging.getOffset())
+                    .setMaxResults(paging.getPageSize()).getResultList();
+        }
+        List<T> rows = entityManager.createQuery(query).setMaxResults(paging.getPageSize() + 1).getResultList();
+        return KeysetPaging.complete(rows, paging, idField);
+    }
+
+    /**
+     * 按countMode统计总数：EXACT执行count，ESTIMATED读取information_schema中的表行数估计值
+     */
+    public static <T> void count(EntityManager entityManager, Class<T> entityClass, Specification<T> where,
+            PagingInfo paging) {
+        switch (paging.getCountMode()) {
+        case EXACT:
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Long> query = cb.createQuery(Long.class);
+            Root<T> root = query.from(entityClass);
+            Predicate predicate = where == null ? null : where.toPredicate(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            query.select(cb.count(root));
+            KeysetPaging.setTotal(paging, entityManager.createQuery(query).getSingleResult());
+            break;
+        case ESTIMATED:
+            KeysetPaging.setTotal(paging, estimatedCount(entityManager, entityClass));
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * @return innodb统计信息中的表行数，只是估计值
+     */
+    public static long estimatedCount(EntityManager entityManager, Class<?> entityClass) {
+        Table table = entityClass.getAnnotation(Table.class);
+        String tableName = table == null ? entityClass.getSimpleName() : table.name();
+        List<?> rows = entityManager
+                .createNativeQuery("SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE()"
+                        + " AND TABLE_NAME = ?1")
+                .setParameter(1, tableName).getResultList();
+        return rows.isEmpty() || rows.get(0) == null ? 0L : ((Number) rows.get(0)).longValue();
+    }
+
+    private static Path<Object> path(Root<?> root, String field) {
+        Path<Object> path = null;
+        for (String part : field.split("\\.")) {
+            path = path == null ? root.get(part) : path.get(part);
+        }
+        return path;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Predicate compare(CriteriaBuilder cb, Path<Object> path, Object value, boolean ascending) {
+        Path<Comparable> comparable = (Path<Comparable>) (Path) path;
+        return ascending ? cb.greaterThan(comparable, (Comparable) value) : cb.lessThan(comparable, (Comparable) value);
+    }
+
+}
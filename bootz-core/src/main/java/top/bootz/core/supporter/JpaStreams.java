@@ -0,0 +1,64 @@
+package top.bootz.core.supporter;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+/**
+ * mysql的流式读取
+ * <p>
+ * fetchSize为Integer.MIN_VALUE时mysql驱动逐行从服务端读取结果，不会把整个结果集加载到内存；
+ * 每条记录处理完后从持久化上下文中移除，内存占用与结果集的大小无关。必须在只读事务中调用，
+ * 读取期间该连接不能执行其他查询。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public final class JpaStreams {
+
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+    private JpaStreams() {
+    }
+
+    /**
+     * 按sort顺序逐条读取满足条件的记录
+     *
+     * @param where
+     *            查询条件，可以为null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void forEach(EntityManager entityManager, Class<T> entityClass, Specification<T> where,
+            Sort sort, Consumer<? super T> action) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(entityClass);
+        Root<T> root = query.from(entityClass);
+        Predicate predicate = where == null ? null : where.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(root);
+        if (sort != null && sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+        TypedQuery<T> typedQuery = entityManager.createQuery(query).setHint(QueryHints.HINT_FETCH_SIZE,
+                STREAMING_FETCH_SIZE).setHint(QueryHints.HINT_READONLY, true);
+        try (Stream<T> rows = typedQuery.unwrap(org.hibernate.query.Query.class).stream()) {
+            rows.forEach(row -> {
+                action.accept(row);
+                entityManager.detach(row);
+            });
+        }
+    }
+
+}
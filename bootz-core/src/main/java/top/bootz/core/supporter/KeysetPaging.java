@@ -0,0 +1,148 @@
+package top.bootz.core.supporter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.PropertyAccessor;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+
+/**
+ * 游标分页的通用部分：排序键、续读游标及结果整理，mysql和mongodb的查询条件分别由{@link JpaKeysetPaging}和
+ * {@link MongoKeysetPaging}生成
+ * <p>
+ * 排序键为{@link PagingInfo#getSorts()}按优先级排列后再追加主键，主键为雪花算法或ObjectId生成，保证排序键整体唯一。
+ * 每页多取一条记录用于判断是否还有下一页，下一页从本页最后一条记录的排序键之后开始读取，不需要offset和count。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public final class KeysetPaging {
+
+    private KeysetPaging() {
+    }
+
+    /**
+     * @return 按优先级排列的排序键，最后一个为主键，方向与前一个排序键一致
+     */
+    public static List<SortInfo> sortKeys(PagingInfo paging, String idField) {
+        List<SortInfo> keys = prioritized(paging);
+        keys.removeIf(key -> idField.equals(key.getSortFiled()));
+        Direction last = keys.isEmpty() ? Direction.ASC : direction(keys.get(keys.size() - 1));
+        keys.add(new SortInfo(idField, last.name(), Integer.MAX_VALUE));
+        return keys;
+    }
+
+    /**
+     * @return 按优先级排列的排序字段
+     */
+    public static List<SortInfo> prioritized(PagingInfo paging) {
+        if (paging.getSorts() == null) {
+            return new ArrayList<>();
+        }
+        return paging.getSorts().stream().filter(sort -> StringUtils.isNotBlank(sort.getSortFiled()))
+                .sorted(Comparator.comparing(SortInfo::getPriority, Comparator.nullsLast(Comparator.naturalOrder())))
+                .collect(Collectors.toList());
+    }
+
+    public static Direction direction(SortInfo key) {
+        return Direction.fromOptionalString(key.getDirection()).orElse(Direction.ASC);
+    }
+
+    public static Sort toSort(List<SortInfo> keys) {
+        List<Sort.Order> orders = new ArrayList<>(keys.size());
+        for (SortInfo key : keys) {
+            orders.add(new Sort.Order(direction(key), key.getSortFiled()));
+        }
+        return Sort.by(orders);
+    }
+
+    /**
+     * @return 游标中上一页最后一条记录的排序键，第一页返回null
+     * @throws IllegalArgumentException
+     *             游标不合法或与当前的排序方式不一致
+     */
+    public static List<Object> afterKeys(PagingInfo paging, List<SortInfo> keys) {
+        if (StringUtils.isBlank(paging.getCursor())) {
+            return null;
+        }
+        List<Object> values = SeekCursor.decode(paging.getCursor(), signature(keys)).getKeys();
+        if (values.size() != keys.size()) {
+            throw new IllegalArgumentException("cursor does not match the current sort: " + paging.getCursor());
+        }
+        return values;
+    }
+
+    /**
+     * 截掉多取的一条记录，并在paging中设置是否还有下一页及下一页的游标
+     *
+     * @return 本页的记录
+     */
+    public static <T> List<T> complete(List<T> rows, PagingInfo paging, String idField) {
+        boolean hasNext = rows.size() > paging.getPageSize();
+        List<T> page = hasNext ? new ArrayList<>(rows.subList(0, paging.getPageSize())) : rows;
+        paging.setHasNext(hasNext);
+        if (hasNext) {
+            List<SortInfo> keys = sortKeys(paging, idField);
+            paging.setNextCursor(new SeekCursor(signature(keys), keyValues(page.get(page.size() - 1), keys)).encode());
+        } else {
+            paging.setNextCursor(null);
+        }
+        return page;
+    }
+
+    /**
+     * 按排序键比较两条记录，用于合并多个来源的结果
+     */
+    public static <T> Comparator<T> comparator(List<SortInfo> keys) {
+        return (left, right) -> {
+            List<Object> leftValues = keyValues(left, keys);
+            List<Object> rightValues = keyValues(right, keys);
+            for (int i = 0; i < keys.size(); i++) {
+                int result = compare(leftValues.get(i), rightValues.get(i));
+                if (result != 0) {
+                    return direction(keys.get(i)).isAscending() ? result : -result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * 记录总数，并按每页条数计算总页数
+     */
+    public static void setTotal(PagingInfo paging, long totalCount) {
+        int total = (int) Math.min(Integer.MAX_VALUE, totalCount);
+        paging.setTotalCount(total);
+        paging.setTotalPages((total + paging.getPageSize() - 1) / paging.getPageSize());
+    }
+
+    static String signature(List<SortInfo> keys) {
+        return keys.stream().map(key -> key.getSortFiled() + ":" + direction(key).name())
+                .collect(Collectors.joining(","));
+    }
+
+    private static List<Object> keyValues(Object row, List<SortInfo> keys) {
+        PropertyAccessor accessor = PropertyAccessorFactory.forBeanPropertyAccess(row);
+        List<Object> values = new ArrayList<>(keys.size());
+        for (SortInfo key : keys) {
+            String field = key.getSortFiled();
+            Object value = accessor.isReadableProperty(field) ? accessor.getPropertyValue(field)
+                    : PropertyAccessorFactory.forDirectFieldAccess(row).getPropertyValue(field);
+            if (value == null) {
+                throw new IllegalStateException("sort key [" + field + "] must not be null in keyset paging");
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Object left, Object right) {
+        return ((Comparable) left).compareTo(right);
+    }
+
+}
@@ -0,0 +1,55 @@
+package top.bootz.core.supporter;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * mongodb的游标分页条件
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public final class MongoKeysetPaging {
+
+    private MongoKeysetPaging() {
+    }
+
+    /**
+     * 在query上追加从游标之后读取的条件、排序键排序，并多取一条记录。
+     * 条件形如 k1 > v1 or (k1 = v1 and k2 > v2) or ...，降序的排序键使用 <
+     */
+    public static Query apply(Query query, PagingInfo paging, String idField) {
+        List<SortInfo> keys = KeysetPaging.sortKeys(paging, idField);
+        List<Object> after = KeysetPaging.afterKeys(paging, keys);
+        if (after != null) {
+            Criteria[] branches = new Criteria[keys.size()];
+            for (int i = 0; i < keys.size(); i++) {
+                Criteria branch = null;
+                for (int j = 0; j < i; j++) {
+                    String field = keys.get(j).getSortFiled();
+                    branch = branch == null ? Criteria.where(field).is(after.get(j))
+                            : branch.and(field).is(after.get(j));
+                }
+                String field = keys.get(i).getSortFiled();
+                branch = branch == null ? Criteria.where(field) : branch.and(field);
+                branches[i] = KeysetPaging.direction(keys.get(i)).isAscending() ? branch.gt(after.get(i))
+                        : branch.lt(after.get(i));
+            }
+            query.addCriteria(new Criteria().orOperator(branches));
+        }
+        return query.with(KeysetPaging.toSort(keys)).limit(paging.getPageSize() + 1);
+    }
+
+    /**
+     * 按偏移量分页时的排序和范围
+     */
+    public static Query applyOffset(Query query, PagingInfo paging) {
+        List<SortInfo> sorts = KeysetPaging.prioritized(paging);
+        if (!sorts.isEmpty()) {
+            query.with(KeysetPaging.toSort(sorts));
+        }
+        return query.skip(paging.getOffset()).limit(paging.getPageSize());
+    }
+
+}
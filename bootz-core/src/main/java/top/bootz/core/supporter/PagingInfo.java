@@ -14,6 +14,28 @@ public class PagingInfo implements Serializable {
 
     public static final int DEFAULT_PAGESIZE = 20;
 
+    /**
+     * 分页方式
+     */
+    public enum Mode {
+        /** 按偏移量分页，翻到越深的页越慢 */
+        OFFSET,
+        /** 按游标分页：从上一页最后一条记录的排序键之后继续读取，任意深度的页开销相同 */
+        KEYSET
+    }
+
+    /**
+     * 总记录数的统计方式
+     */
+    public enum CountMode {
+        /** 精确统计，每页都要执行一次count */
+        EXACT,
+        /** 使用集合或表的元数据估算，不带查询条件 */
+        ESTIMATED,
+        /** 不统计 */
+        NONE
+    }
+
     private int pageSize; // 每页数据条数
 
     private int offset; // 当前页数据的偏移量
@@ -24,6 +46,16 @@ public class PagingInfo implements Serializable {
 
     private List<SortInfo> sorts; // 排序字段，支持多字段按照优先级排序
 
+    private Mode mode = Mode.OFFSET; // 分页方式
+
+    private CountMode countMode = CountMode.EXACT; // 总记录数的统计方式
+
+    private String cursor; // 游标分页时上一页返回的nextCursor，为空表示第一页
+
+    private String nextCursor; // 游标分页时读取下一页的游标，没有下一页时为空
+
+    private boolean hasNext; // 是否还有下一页
+
     public PagingInfo(int pageSize, int offset, List<SortInfo> sorts) {
         super();
         this.pageSize = pageSize;
@@ -31,6 +63,18 @@ public class PagingInfo implements Serializable {
         this.sorts = sorts;
     }
 
+    /**
+     * 游标分页，默认不统计总记录数
+     */
+    public PagingInfo(int pageSize, String cursor, List<SortInfo> sorts) {
+        super();
+        this.pageSize = pageSize;
+        this.cursor = cursor;
+        this.sorts = sorts;
+        this.mode = Mode.KEYSET;
+        this.countMode = CountMode.NONE;
+    }
+
     public int getPageSize() {
         if (pageSize <= 0) {
             this.pageSize = PagingInfo.DEFAULT_PAGESIZE;
@@ -40,13 +84,20 @@ public class PagingInfo implements Serializable {
         return pageSize;
     }
 
+    /**
+     * 没有统计总记录数时不按总记录数修正偏移量
+     */
     public int getOffset() {
         if (offset < 0) {
             this.offset = 0;
-        } else if (offset > totalCount) {
+        } else if (countMode != CountMode.NONE && offset > totalCount) {
             this.offset = totalCount;
         }
         return offset;
     }
 
+    public boolean isKeyset() {
+        return mode == Mode.KEYSET;
+    }
+
 }
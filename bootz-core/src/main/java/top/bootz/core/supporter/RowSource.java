@@ -0,0 +1,16 @@
+package top.bootz.core.supporter;
+
+import java.util.function.Consumer;
+
+/**
+ * 逐条产生记录的数据源，如jpa的Stream或mongodb的游标。
+ * 实现方负责在forEach返回前(包括action抛出异常时)关闭游标和事务
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@FunctionalInterface
+public interface RowSource<T> {
+
+    void forEach(Consumer<? super T> action);
+
+}
@@ -0,0 +1,193 @@
+package top.bootz.core.supporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Preconditions;
+
+/**
+ * 把记录逐条写到输出流，不在内存中累积结果
+ * <p>
+ * JSON_LINES直接用jackson的JsonGenerator序列化，每条记录一行；CSV先把记录转换为JsonNode再按列取值，
+ * 序列化规则(日期格式、枚举、忽略的字段)与接口返回的json一致。每写flushRows条记录flush一次，
+ * 输出流的缓冲区大小固定，客户端读得慢时阻塞在写操作上，上游的游标随之暂停读取。
+ * 写入失败(如客户端断开)时抛出{@link UncheckedIOException}，使数据源停止迭代并关闭游标。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public class RowStreamWriter<T> implements Consumer<T>, Closeable {
+
+    private static final int DEFAULT_FLUSH_ROWS = 500;
+
+    private static final char UTF8_BOM = '\uFEFF';
+
+    private final ExportFormat format;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 默认每写一个值都会flush，改为按flushRows分批flush
+     */
+    private final ObjectWriter objectWriter;
+
+    private final List<String> columns;
+
+    private final List<JsonPointer> pointers;
+
+    private final int flushRows;
+
+    private JsonGenerator generator;
+
+    private Writer writer;
+
+    private long rows;
+
+    /**
+     * @param columns
+     *            导出的字段，支持a.b形式的嵌套字段。CSV必须指定；JSON_LINES为空时输出整个对象，否则只输出这些字段
+     */
+    public RowStreamWriter(OutputStream out, ExportFormat format, ObjectMapper objectMapper, List<String> columns) {
+        this(out, format, objectMapper, columns, DEFAULT_FLUSH_ROWS);
+    }
+
+    public RowStreamWriter(OutputStream out, ExportFormat format, ObjectMapper objectMapper, List<String> columns,
+            int flushRows) {
+        Preconditions.checkNotNull(format, "format must not be null");
+        Preconditions.checkArgument(format != ExportFormat.CSV || (columns != null && !columns.isEmpty()),
+                "columns must not be empty when exporting csv");
+        Preconditions.checkArgument(flushRows > 0, "flushRows must be greater than 0");
+        this.format = format;
+        this.objectMapper = objectMapper;
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.columns = columns == null ? new ArrayList<>() : new ArrayList<>(columns);
+        this.pointers = new ArrayList<>(this.columns.size());
+        for (String column : this.columns) {
+            this.pointers.add(JsonPointer.compile("/" + column.replace('.', '/')));
+        }
+        this.flushRows = flushRows;
+        try {
+            if (format == ExportFormat.CSV) {
+                this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                // 带BOM时excel才能正确识别utf-8编码的中文
+                this.writer.write(UTF8_BOM);
+                writeCsvLine(this.columns);
+            } else {
+                this.generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+                this.generator.setRootValueSeparator(null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void accept(T row) {
+        try {
+            if (format == ExportFormat.CSV) {
+                JsonNode node = objectMapper.valueToTree(row);
+                List<String> values = new ArrayList<>(pointers.size());
+                for (JsonPointer pointer : pointers) {
+                    values.add(text(node.at(pointer)));
+                }
+                writeCsvLine(values);
+            } else {
+                if (columns.isEmpty()) {
+                    objectWriter.writeValue(generator, row);
+                } else {
+                    writeProjected(objectMapper.valueToTree(row));
+                }
+                generator.writeRaw('\n');
+            }
+            if (++rows % flushRows == 0) {
+                flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return 已经写出的记录数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void flush() throws IOException {
+        if (generator != null) {
+            generator.flush();
+        } else {
+            writer.flush();
+        }
+    }
+
+    /**
+     * 写出缓冲区中剩余的内容，不关闭底层的输出流
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void writeProjected(JsonNode node) throws IOException {
+        generator.writeStartObject();
+        for (int i = 0; i < columns.size(); i++) {
+            JsonNode value = node.at(pointers.get(i));
+            generator.writeFieldName(columns.get(i));
+            if (value.isMissingNode()) {
+                generator.writeNull();
+            } else {
+                objectWriter.writeValue(generator, value);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeCsvLine(List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeCsvValue(values.get(i));
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeCsvValue(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static String text(JsonNode value) {
+        if (value.isMissingNode() || value.isNull()) {
+            return "";
+        }
+        return value.isValueNode() ? value.asText() : value.toString();
+    }
+
+}
@@ -0,0 +1,179 @@
+package top.bootz.core.supporter;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.ClassUtils;
+
+import org.bson.types.ObjectId;
+
+import top.bootz.commons.helper.JsonHelper;
+
+/**
+ * 游标分页的续读游标
+ * <p>
+ * 由排序方式的签名和上一页最后一条记录的各个排序键(最后一个总是主键)组成，序列化为url安全的base64字符串，
+ * 对调用方不透明。每个排序键带有类型标记，解码后还原为原类型用于比较；排序方式变化后旧游标不能再使用。
+ * 支持的排序键类型见{@link #supports(Class)}。
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+public final class SeekCursor {
+
+    private final String signature;
+
+    private final List<Object> keys;
+
+    public SeekCursor(String signature, List<Object> keys) {
+        this.signature = signature;
+        this.keys = keys;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public List<Object> getKeys() {
+        return keys;
+    }
+
+    public String encode() {
+        List<String> tokens = new ArrayList<>(keys.size() + 1);
+        tokens.add(signature);
+        for (Object key : keys) {
+            tokens.add(tag(key) + value(key));
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(JsonHelper.toJSON(tokens).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             游标格式不正确，或者与当前的排序方式不一致
+     */
+    @SuppressWarnings("unchecked")
+    public static SeekCursor decode(String cursor, String expectedSignature) {
+        List<String> tokens;
+        try {
+            tokens = JsonHelper.fromJSON(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8),
+                    List.class, String.class);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("illegal cursor: " + cursor, e);
+        }
+        if (tokens == null || tokens.size() < 2 || !expectedSignature.equals(tokens.get(0))) {
+            throw new IllegalArgumentException("cursor does not match the current sort: " + cursor);
+        }
+        List<Object> keys = new ArrayList<>(tokens.size() - 1);
+        for (String token : tokens.subList(1, tokens.size())) {
+            try {
+                keys.add(parse(token));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("illegal cursor key: " + token, e);
+            }
+        }
+        return new SeekCursor(expectedSignature, keys);
+    }
+
+    /**
+     * @return 该类型的值能否作为排序键写入游标：字符串、整数、浮点数、布尔值、BigDecimal、日期时间、ObjectId及枚举
+     */
+    public static boolean supports(Class<?> type) {
+        Class<?> wrapped = ClassUtils.primitiveToWrapper(type);
+        return wrapped == String.class || wrapped == Long.class || wrapped == Integer.class || wrapped == Double.class
+                || wrapped == Boolean.class || wrapped == BigDecimal.class || wrapped == LocalDateTime.class
+                || wrapped == LocalDate.class || wrapped == ObjectId.class || Date.class.isAssignableFrom(wrapped)
+                || Enum.class.isAssignableFrom(wrapped);
+    }
+
+    private static char tag(Object key) {
+        if (key instanceof String) {
+            return 's';
+        } else if (key instanceof Long) {
+            return 'l';
+        } else if (key instanceof Integer) {
+            return 'i';
+        } else if (key instanceof Double) {
+            return 'd';
+        } else if (key instanceof Boolean) {
+            return 'b';
+        } else if (key instanceof LocalDateTime) {
+            return 't';
+        } else if (key instanceof ObjectId) {
+            return 'o';
+        } else if (key instanceof BigDecimal) {
+            return 'n';
+        } else if (key instanceof LocalDate) {
+            return 'a';
+        } else if (key instanceof Date) {
+            return 'D';
+        } else if (key instanceof Enum) {
+            return 'e';
+        }
+        throw new IllegalArgumentException("unsupported sort key: " + (key == null ? "null" : key.getClass()));
+    }
+
+    private static String value(Object key) {
+        if (key instanceof ObjectId) {
+            return ((ObjectId) key).toHexString();
+        } else if (key instanceof Date) {
+            return String.valueOf(((Date) key).getTime());
+        } else if (key instanceof Enum) {
+            // 常量带有方法体时getClass()是匿名子类，取声明的枚举类
+            return ((Enum<?>) key).getDeclaringClass().getName() + ":" + ((Enum<?>) key).name();
+        }
+        return key.toString();
+    }
+
+    private static Object parse(String token) {
+        String value = token.substring(1);
+        switch (token.charAt(0)) {
+        case 's':
+            return value;
+        case 'l':
+            return Long.valueOf(value);
+        case 'i':
+            return Integer.valueOf(value);
+        case 'd':
+            return Double.valueOf(value);
+        case 'b':
+            return Boolean.valueOf(value);
+        case 't':
+            return LocalDateTime.parse(value);
+        case 'o':
+            return new ObjectId(value);
+        case 'n':
+            return new BigDecimal(value);
+        case 'a':
+            return LocalDate.parse(value);
+        case 'D':
+            return new Date(Long.parseLong(value));
+        case 'e':
+            return parseEnum(value);
+        default:
+            throw new IllegalArgumentException("unknown cursor key type: " + token.charAt(0));
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object parseEnum(String value) {
+        int separator = value.lastIndexOf(':');
+        Class<?> type;
+        try {
+            // 游标来自客户端，只加载不初始化，确认是枚举后才使用
+            type = Class.forName(value.substring(0, separator), false, SeekCursor.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("unknown enum type: " + value, e);
+        }
+        if (!type.isEnum()) {
+            throw new IllegalArgumentException("not an enum type: " + type.getName());
+        }
+        return Enum.valueOf((Class<Enum>) type, value.substring(separator + 1));
+    }
+
+}
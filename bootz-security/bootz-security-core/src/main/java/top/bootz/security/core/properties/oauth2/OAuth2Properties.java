@@ -12,6 +12,11 @@ public class OAuth2Properties {
      */
     private OAuth2ClientProperties[] clients = {};
 
+    /**
+     * redis token存储配置
+     */
+    private TokenStoreProperties tokenStore = new TokenStoreProperties();
+
     public OAuth2ClientProperties[] getClients() {
         return clients;
     }
@@ -20,6 +25,14 @@ public class OAuth2Properties {
         this.clients = clients;
     }
 
+    public TokenStoreProperties getTokenStore() {
+        return tokenStore;
+    }
+
+    public void setTokenStore(TokenStoreProperties tokenStore) {
+        this.tokenStore = tokenStore;
+    }
+
     public String getJwtSigningKey() {
         return jwtSigningKey;
     }
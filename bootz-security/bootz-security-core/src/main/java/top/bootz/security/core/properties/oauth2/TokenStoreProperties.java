@@ -0,0 +1,85 @@
+package top.bootz.security.core.properties.oauth2;
+
+import lombok.Data;
+
+/**
+ * redis token存储的配置项
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@Data
+public class TokenStoreProperties {
+
+    public enum Serialization {
+        /**
+         * spring security oauth2默认的JDK序列化
+         */
+        JDK,
+
+        /**
+         * 紧凑的二进制格式，可以读取JDK序列化的数据
+         */
+        COMPACT
+    }
+
+    /**
+     * token的序列化方式。默认JDK，与升级前写入的数据一致
+     * <p>
+     * 旧版本的节点无法读取紧凑格式，滚动升级时分两步切换：先以JDK格式部署新版本(新版本能读取两种格式)，
+     * 所有节点升级完成后再改为COMPACT，并可开启migrateOnStartup转换已有的token
+     */
+    private Serialization serialization = Serialization.JDK;
+
+    /**
+     * auth_to_access:中按旧格式保存完整的access token，而不是token值。默认开启
+     * <p>
+     * 旧版本的节点从auth_to_access:中按序列化的token读取，无法读取token值，滚动升级时分两步切换：
+     * 先以默认值部署新版本(新版本能读取两种格式)，所有节点升级完成后再关闭，按旧格式保存的值随token过期或重新签发而替换
+     */
+    private boolean legacyAuthToAccess = true;
+
+    /**
+     * 启动时在后台把redis中已有的token转换为当前的序列化方式
+     */
+    private boolean migrateOnStartup = false;
+
+    /**
+     * 所有token键的前缀。redis集群中可以用hash tag(如"{token}:")把token的键放在同一个slot，以便使用lua脚本
+     */
+    private String prefix = "";
+
+    /**
+     * 存储和删除token时使用lua脚本，每个操作一次往返且原子执行。
+     * redis集群中只有prefix带hash tag时才生效，否则仍使用pipeline。带hash tag后所有token的键都在一个节点上，
+     * token的访问量超出单个节点的能力时应关闭
+     */
+    private boolean scripts = true;
+
+    /**
+     * 进程内的token近端缓存
+     */
+    private NearCacheProperties nearCache = new NearCacheProperties();
+
+    @Data
+    public static class NearCacheProperties {
+
+        private boolean enabled = true;
+
+        /**
+         * 缓存的token数上限，超过后按最近最少使用淘汰
+         */
+        private long maximumSize = 10000L;
+
+        /**
+         * 缓存的最长保留时间。token被删除时各节点通过redis的发布订阅立即失效，该时间只是漏收通知时过期数据的上限
+         */
+        private long ttlSeconds = 60L;
+
+        /**
+         * 发布token失效通知的redis频道
+         */
+        private String invalidationChannel = "bootz:token-store:invalidation";
+
+    }
+
+}
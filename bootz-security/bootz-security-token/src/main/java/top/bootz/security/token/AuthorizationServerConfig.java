@@ -1,13 +1,21 @@
 package top.bootz.security.token;
 
+import java.util.Collections;
+
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
@@ -20,7 +28,16 @@ import org.springframework.security.oauth2.provider.approval.JdbcApprovalStore;
 import org.springframework.security.oauth2.provider.client.JdbcClientDetailsService;
 import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
 import org.springframework.security.oauth2.provider.code.JdbcAuthorizationCodeServices;
-import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.redis.JdkSerializationStrategy;
+import org.springframework.security.oauth2.provider.token.store.redis.RedisTokenStoreSerializationStrategy;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import top.bootz.security.core.properties.SecurityProperties;
+import top.bootz.security.core.properties.oauth2.TokenStoreProperties;
+import top.bootz.security.core.properties.oauth2.TokenStoreProperties.NearCacheProperties;
+import top.bootz.security.token.serialization.CompactSerializationStrategy;
+import top.bootz.security.token.serialization.TokenStoreMigration;
 
 /**
  * OAtuh2 授权服务器
@@ -33,6 +50,10 @@ import org.springframework.security.oauth2.provider.token.TokenStore;
 @EnableAuthorizationServer
 public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdapter {
 
+    private static final String TOKEN_STORE_PREFIX = "bootz.security.oauth2.token-store";
+
+    private static final String NEAR_CACHE_PREFIX = TOKEN_STORE_PREFIX + ".near-cache";
+
     @Autowired
     private AuthenticationManager authenticationManager;
 
@@ -47,6 +68,9 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
     @Qualifier("dataSource")
     private DataSource dataSource;
 
+    @Autowired
+    private SecurityProperties securityProperties;
+
     @Override
     public void configure(AuthorizationServerSecurityConfigurer security) throws Exception {
         // 配置token获取和验证时的策略
@@ -68,8 +92,8 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
     public void configure(AuthorizationServerEndpointsConfigurer endpoints) throws Exception {
         // 配置tokenStore，保存到redis缓存中
         endpoints.authenticationManager(authenticationManager).userDetailsService(userDetailsService)
-                .tokenStore(redisTokenStore()).authorizationCodeServices(authorizationCodeServices())
-                .approvalStore(approvalStore());
+                .tokenStore(redisTokenStore()).tokenServices(tokenServices())
+                .authorizationCodeServices(authorizationCodeServices()).approvalStore(approvalStore());
     }
 
     @Bean
@@ -82,9 +106,81 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
         return new JdbcApprovalStore(dataSource);
     }
 
+    /**
+     * 与endpoints默认创建的DefaultTokenServices配置相同，校验token时一次读取token和authentication
+     */
     @Bean
-    public TokenStore redisTokenStore() {
-        return new CustomRedisTokenStore(redisConnectionFactory);
+    public RedisTokenServices tokenServices() {
+        RedisTokenServices tokenServices = new RedisTokenServices(redisTokenStore());
+        tokenServices.setSupportRefreshToken(true);
+        tokenServices.setReuseRefreshToken(true);
+        tokenServices.setClientDetailsService(clientDetails());
+        // 刷新token时重新加载用户
+        PreAuthenticatedAuthenticationProvider provider = new PreAuthenticatedAuthenticationProvider();
+        provider.setPreAuthenticatedUserDetailsService(
+                new UserDetailsByNameServiceWrapper<PreAuthenticatedAuthenticationToken>(userDetailsService));
+        tokenServices.setAuthenticationManager(new ProviderManager(Collections.singletonList(provider)));
+        return tokenServices;
+    }
+
+    @Bean
+    public CustomRedisTokenStore redisTokenStore() {
+        CustomRedisTokenStore tokenStore = new CustomRedisTokenStore(redisConnectionFactory);
+        tokenStore.setSerializationStrategy(tokenSerializationStrategy());
+        tokenStore.setPrefix(tokenStoreProperties().getPrefix());
+        tokenStore.setUseScripts(tokenStoreProperties().isScripts());
+        tokenStore.setLegacyAuthToAccess(tokenStoreProperties().isLegacyAuthToAccess());
+        if (nearCacheProperties().isEnabled()) {
+            tokenStore.setNearCache(tokenNearCache());
+        }
+        return tokenStore;
+    }
+
+    @Bean
+    public RedisTokenStoreSerializationStrategy tokenSerializationStrategy() {
+        return tokenStoreProperties().getSerialization() == TokenStoreProperties.Serialization.JDK
+                ? new JdkSerializationStrategy() : new CompactSerializationStrategy();
+    }
+
+    /**
+     * 切换序列化方式后在后台转换已有的token，转换期间两种格式都可以读取
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = TOKEN_STORE_PREFIX, name = "migrate-on-startup")
+    public ApplicationRunner tokenStoreMigrationRunner() {
+        TokenStoreMigration migration = new TokenStoreMigration(redisConnectionFactory, tokenSerializationStrategy());
+        migration.setPrefix(tokenStoreProperties().getPrefix());
+        return args -> {
+            Thread thread = new Thread(migration::migrate, "token-store-migration");
+            thread.setDaemon(true);
+            thread.start();
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = NEAR_CACHE_PREFIX, name = "enabled", matchIfMissing = true)
+    public TokenNearCache tokenNearCache() {
+        return new TokenNearCache(nearCacheProperties());
+    }
+
+    /**
+     * 订阅token失效通知，任意节点删除或重新存储token时清除本节点的近端缓存
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = NEAR_CACHE_PREFIX, name = "enabled", matchIfMissing = true)
+    public RedisMessageListenerContainer tokenInvalidationListenerContainer() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(tokenNearCache(), new ChannelTopic(tokenNearCache().getChannelName()));
+        return container;
+    }
+
+    private TokenStoreProperties tokenStoreProperties() {
+        return securityProperties.getOauth2().getTokenStore();
+    }
+
+    private NearCacheProperties nearCacheProperties() {
+        return tokenStoreProperties().getNearCache();
     }
 
 }
@@ -1,17 +1,22 @@
 package top.bootz.security.token;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.springframework.data.redis.connection.RedisClusterConnection;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
 import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
@@ -19,6 +24,21 @@ import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.security.oauth2.provider.token.store.redis.JdkSerializationStrategy;
 import org.springframework.security.oauth2.provider.token.store.redis.RedisTokenStoreSerializationStrategy;
 
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.security.token.serialization.CompactSerializationStrategy;
+
+/**
+ * redis token存储
+ * <p>
+ * 完整的token只保存在access:下，auth_to_access:保存token值，按用户和按客户端的索引是以token值为成员、
+ * 以过期时间为分值的有序集合。写入和查询索引时顺带删除已经过期的成员，查询时先按分值取出未过期的token值，
+ * 再用一次MGET读取token。升级前写入的列表形式的索引仍会被读取和清理，随其中最后一个token过期后由redis删除。
+ * <p>
+ * 开启脚本后，存储和删除token由{@link TokenStoreScripts}中的lua脚本完成，每个操作一次往返，并发刷新同一个refresh token时
+ * 只有一个调用能取到并删除旧的access token，其余的调用以InvalidGrantException失败。脚本启用前存储的token没有删除记录，
+ * 仍按原来的方式删除。
+ */
+@Slf4j
 public class CustomRedisTokenStore implements TokenStore {
     private static final String ACCESS = "access:";
     private static final String AUTH_TO_ACCESS = "auth_to_access:";
@@ -27,8 +47,19 @@ public class CustomRedisTokenStore implements TokenStore {
     private static final String ACCESS_TO_REFRESH = "access_to_refresh:";
     private static final String REFRESH = "refresh:";
     private static final String REFRESH_TO_ACCESS = "refresh_to_access:";
-    private static final String CLIENT_ID_TO_ACCESS = "client_id_to_access:";
-    private static final String UNAME_TO_ACCESS = "uname_to_access:";
+    private static final String CLIENT_ID_TO_ACCESS = "client_id_to_access_ids:";
+    private static final String UNAME_TO_ACCESS = "uname_to_access_ids:";
+    private static final String LEGACY_CLIENT_ID_TO_ACCESS = "client_id_to_access:";
+    private static final String LEGACY_UNAME_TO_ACCESS = "uname_to_access:";
+    private static final String ACCESS_KEYS = "access_keys:";
+    private static final String REFRESH_TO_ACCESS_KEYS = "refresh_to_access_keys:";
+
+    /**
+     * 没有过期时间的token在索引中的分值
+     */
+    private static final double NEVER_EXPIRES = Double.MAX_VALUE;
+
+    private static final byte[] EMPTY = new byte[0];
 
     private final RedisConnectionFactory connectionFactory;
     private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
@@ -36,6 +67,17 @@ public class CustomRedisTokenStore implements TokenStore {
 
     private String prefix = "";
 
+    private TokenNearCache nearCache;
+
+    private boolean useScripts = false;
+
+    private boolean legacyAuthToAccess = false;
+
+    /**
+     * 第一次存储或删除token时根据redis的部署方式确定是否真正使用脚本，避免在创建bean时访问redis
+     */
+    private volatile Boolean scriptsEnabled;
+
     public CustomRedisTokenStore(RedisConnectionFactory connectionFactory) {
         this.connectionFactory = connectionFactory;
     }
@@ -52,6 +94,56 @@ public class CustomRedisTokenStore implements TokenStore {
         this.prefix = prefix;
     }
 
+    /**
+     * 设置后readAccessToken和readAuthentication优先读取进程内缓存，token被重新存储或删除时通知所有节点失效
+     */
+    public void setNearCache(TokenNearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * 存储和删除token时使用lua脚本。脚本会访问同一个token的多个键，在redis集群中要求prefix带hash tag，
+     * 否则第一次使用时自动改用pipeline
+     */
+    public void setUseScripts(boolean useScripts) {
+        this.useScripts = useScripts;
+        this.scriptsEnabled = null;
+    }
+
+    /**
+     * auth_to_access:中保存完整的access token而不是token值，供滚动升级期间旧版本的节点读取
+     */
+    public void setLegacyAuthToAccess(boolean legacyAuthToAccess) {
+        this.legacyAuthToAccess = legacyAuthToAccess;
+    }
+
+    private boolean useScripts() {
+        Boolean enabled = scriptsEnabled;
+        if (enabled == null) {
+            enabled = useScripts && (isHashTagged(prefix) || !isCluster());
+            scriptsEnabled = enabled;
+        }
+        return enabled;
+    }
+
+    private boolean isCluster() {
+        RedisConnection conn = getConnection();
+        try {
+            if (conn instanceof RedisClusterConnection) {
+                log.warn("token store scripts disabled, redis cluster requires a hash-tagged prefix like '{token}:'");
+                return true;
+            }
+            return false;
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static boolean isHashTagged(String prefix) {
+        int open = prefix.indexOf('{');
+        return open >= 0 && prefix.indexOf('}', open) > open + 1;
+    }
+
     private RedisConnection getConnection() {
         return connectionFactory.getConnection();
     }
@@ -95,9 +187,10 @@ public class CustomRedisTokenStore implements TokenStore {
         } finally {
             conn.close();
         }
-        OAuth2AccessToken accessToken = deserializeAccessToken(bytes);
-        if (accessToken != null
-                && !key.equals(authenticationKeyGenerator.extractKey(readAuthentication(accessToken.getValue())))) {
+        TokenAndAuthentication stored = readIndexedToken(bytes);
+        OAuth2AccessToken accessToken = stored.getAccessToken();
+        if (accessToken != null && (stored.getAuthentication() == null
+                || !key.equals(authenticationKeyGenerator.extractKey(stored.getAuthentication())))) {
             // Keep the stores consistent (maybe the same user is
             // represented by this authentication but the details have
             // changed)
@@ -106,6 +199,48 @@ public class CustomRedisTokenStore implements TokenStore {
         return accessToken;
     }
 
+    /**
+     * auth_to_access:中保存的是token值，升级前保存的是完整的token
+     */
+    private TokenAndAuthentication readIndexedToken(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return TokenAndAuthentication.EMPTY;
+        }
+        if (isSerializedObject(bytes)) {
+            OAuth2AccessToken accessToken = deserializeAccessToken(bytes);
+            return new TokenAndAuthentication(accessToken, readAuthentication(accessToken.getValue()));
+        }
+        return readTokenAndAuthentication(deserializeString(bytes));
+    }
+
+    /**
+     * 用一次MGET同时读取access token和authentication，校验token时代替先后调用readAccessToken和readAuthentication
+     */
+    public TokenAndAuthentication readTokenAndAuthentication(String tokenValue) {
+        return nearCache == null ? loadTokenAndAuthentication(tokenValue) : nearCache.getTokenAndAuthentication(
+                tokenValue, this::loadTokenAndAuthentication);
+    }
+
+    private TokenAndAuthentication loadTokenAndAuthentication(String tokenValue) {
+        List<byte[]> values;
+        RedisConnection conn = getConnection();
+        try {
+            values = conn.mGet(serializeKey(ACCESS + tokenValue), serializeKey(AUTH + tokenValue));
+        } finally {
+            conn.close();
+        }
+        if (values == null || values.size() < 2) {
+            return TokenAndAuthentication.EMPTY;
+        }
+        return new TokenAndAuthentication(deserializeAccessToken(values.get(0)),
+                deserializeAuthentication(values.get(1)));
+    }
+
+    private static boolean isSerializedObject(byte[] bytes) {
+        return CompactSerializationStrategy.isCompact(bytes)
+                || (bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED);
+    }
+
     @Override
     public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
         return readAuthentication(token.getValue());
@@ -113,6 +248,11 @@ public class CustomRedisTokenStore implements TokenStore {
 
     @Override
     public OAuth2Authentication readAuthentication(String token) {
+        return nearCache == null ? loadAuthentication(token) : nearCache.getAuthentication(token,
+                this::loadAuthentication);
+    }
+
+    private OAuth2Authentication loadAuthentication(String token) {
         byte[] bytes = null;
         RedisConnection conn = getConnection();
         try {
@@ -142,22 +282,34 @@ public class CustomRedisTokenStore implements TokenStore {
     public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
         byte[] serializedAccessToken = serialize(token);
         byte[] serializedAuth = serialize(authentication);
+        byte[] tokenValue = serialize(token.getValue());
         byte[] accessKey = serializeKey(ACCESS + token.getValue());
         byte[] authKey = serializeKey(AUTH + token.getValue());
         byte[] authToAccessKey = serializeKey(AUTH_TO_ACCESS + authenticationKeyGenerator.extractKey(authentication));
         byte[] approvalKey = serializeKey(UNAME_TO_ACCESS + getApprovalKey(authentication));
         byte[] clientId = serializeKey(CLIENT_ID_TO_ACCESS + authentication.getOAuth2Request().getClientId());
+        byte[] authToAccessValue = legacyAuthToAccess ? serializedAccessToken : tokenValue;
+
+        if (useScripts()) {
+            storeAccessTokenByScript(token, authentication, serializedAccessToken, serializedAuth, tokenValue,
+                    authToAccessValue, accessKey, authKey, authToAccessKey, approvalKey, clientId);
+            return;
+        }
 
         RedisConnection conn = getConnection();
         try {
             conn.openPipeline();
             conn.stringCommands().set(accessKey, serializedAccessToken);
             conn.stringCommands().set(authKey, serializedAuth);
-            conn.stringCommands().set(authToAccessKey, serializedAccessToken);
+            conn.stringCommands().set(authToAccessKey, authToAccessValue);
+            double score = token.getExpiration() == null ? NEVER_EXPIRES : token.getExpiration().getTime();
+            double now = System.currentTimeMillis();
             if (!authentication.isClientOnly()) {
-                conn.rPush(approvalKey, serializedAccessToken);
+                conn.zAdd(approvalKey, score, tokenValue);
+                conn.zRemRangeByScore(approvalKey, 0, now);
             }
-            conn.rPush(clientId, serializedAccessToken);
+            conn.zAdd(clientId, score, tokenValue);
+            conn.zRemRangeByScore(clientId, 0, now);
             if (token.getExpiration() != null) {
                 int seconds = token.getExpiresIn();
                 conn.expire(accessKey, seconds);
@@ -184,10 +336,69 @@ public class CustomRedisTokenStore implements TokenStore {
                     }
                 }
             }
+            if (nearCache != null) {
+                // 同一个token可能以新的authentication重新存储
+                nearCache.publishInvalidation(conn, token.getValue());
+            }
             conn.closePipeline();
         } finally {
             conn.close();
         }
+        if (nearCache != null) {
+            nearCache.invalidate(token.getValue());
+        }
+    }
+
+    private void storeAccessTokenByScript(OAuth2AccessToken token, OAuth2Authentication authentication,
+            byte[] serializedAccessToken, byte[] serializedAuth, byte[] tokenValue, byte[] authToAccessValue,
+            byte[] accessKey, byte[] authKey, byte[] authToAccessKey, byte[] approvalKey, byte[] clientId) {
+        double score = token.getExpiration() == null ? NEVER_EXPIRES : token.getExpiration().getTime();
+        byte[] seconds = token.getExpiration() == null ? EMPTY : bytes(token.getExpiresIn());
+        List<byte[]> keys = new ArrayList<>(9);
+        Collections.addAll(keys, accessKey, authKey, authToAccessKey, clientId, approvalKey,
+                serializeKey(ACCESS_KEYS + token.getValue()), serializeKey(ACCESS_TO_REFRESH + token.getValue()));
+        byte[] refresh = EMPTY;
+        byte[] refreshSeconds = EMPTY;
+        OAuth2RefreshToken refreshToken = token.getRefreshToken();
+        if (refreshToken != null && refreshToken.getValue() != null) {
+            keys.add(serializeKey(REFRESH_TO_ACCESS + refreshToken.getValue()));
+            keys.add(serializeKey(REFRESH_TO_ACCESS_KEYS + refreshToken.getValue()));
+            refresh = serialize(refreshToken.getValue());
+            refreshSeconds = refreshTokenSeconds(refreshToken);
+        }
+        List<byte[]> keysAndArgs = new ArrayList<>(keys);
+        Collections.addAll(keysAndArgs, serializedAccessToken, serializedAuth, tokenValue, bytes(score),
+                bytes(System.currentTimeMillis()), seconds, bytes(authentication.isClientOnly() ? 1 : 0),
+                bytes(token.getValue()), invalidationChannel(), refresh, refreshSeconds, authToAccessValue);
+
+        RedisConnection conn = getConnection();
+        try {
+            TokenStoreScripts.STORE_ACCESS.execute(conn, ReturnType.INTEGER, keys.size(),
+                    keysAndArgs.toArray(new byte[keysAndArgs.size()][]));
+        } finally {
+            conn.close();
+        }
+        if (nearCache != null) {
+            nearCache.invalidate(token.getValue());
+        }
+    }
+
+    private static byte[] refreshTokenSeconds(OAuth2RefreshToken refreshToken) {
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+            Date expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+            if (expiration != null) {
+                return bytes((expiration.getTime() - System.currentTimeMillis()) / 1000L);
+            }
+        }
+        return EMPTY;
+    }
+
+    private byte[] invalidationChannel() {
+        return nearCache == null ? EMPTY : bytes(nearCache.getChannelName());
+    }
+
+    private static byte[] bytes(Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
     }
 
     private static String getApprovalKey(OAuth2Authentication authentication) {
@@ -207,6 +418,11 @@ public class CustomRedisTokenStore implements TokenStore {
 
     @Override
     public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return nearCache == null ? loadAccessToken(tokenValue) : nearCache.getAccessToken(tokenValue,
+                this::loadAccessToken);
+    }
+
+    private OAuth2AccessToken loadAccessToken(String tokenValue) {
         byte[] key = serializeKey(ACCESS + tokenValue);
         byte[] bytes = null;
         RedisConnection conn = getConnection();
@@ -219,6 +435,9 @@ public class CustomRedisTokenStore implements TokenStore {
     }
 
     public void removeAccessToken(String tokenValue) {
+        if (useScripts() && removeAccessTokenByScript(tokenValue)) {
+            return;
+        }
         byte[] accessKey = serializeKey(ACCESS + tokenValue);
         byte[] authKey = serializeKey(AUTH + tokenValue);
         byte[] accessToRefreshKey = serializeKey(ACCESS_TO_REFRESH + tokenValue);
@@ -231,6 +450,9 @@ public class CustomRedisTokenStore implements TokenStore {
             conn.del(accessToRefreshKey);
             // Don't remove the refresh token - it's up to the caller to do that
             conn.del(authKey);
+            if (nearCache != null) {
+                nearCache.publishInvalidation(conn, tokenValue);
+            }
             List<Object> results = conn.closePipeline();
             byte[] access = (byte[]) results.get(0);
             byte[] auth = (byte[]) results.get(1);
@@ -239,18 +461,47 @@ public class CustomRedisTokenStore implements TokenStore {
             if (authentication != null) {
                 String key = authenticationKeyGenerator.extractKey(authentication);
                 byte[] authToAccessKey = serializeKey(AUTH_TO_ACCESS + key);
-                byte[] unameKey = serializeKey(UNAME_TO_ACCESS + getApprovalKey(authentication));
-                byte[] clientId = serializeKey(CLIENT_ID_TO_ACCESS + authentication.getOAuth2Request().getClientId());
+                String approvalKey = getApprovalKey(authentication);
+                String clientIdValue = authentication.getOAuth2Request().getClientId();
+                byte[] value = serialize(tokenValue);
                 conn.openPipeline();
                 conn.del(authToAccessKey);
-                conn.lRem(unameKey, 1, access);
-                conn.lRem(clientId, 1, access);
+                conn.zRem(serializeKey(UNAME_TO_ACCESS + approvalKey), value);
+                conn.zRem(serializeKey(CLIENT_ID_TO_ACCESS + clientIdValue), value);
+                if (access != null) {
+                    conn.lRem(serializeKey(LEGACY_UNAME_TO_ACCESS + approvalKey), 1, access);
+                    conn.lRem(serializeKey(LEGACY_CLIENT_ID_TO_ACCESS + clientIdValue), 1, access);
+                }
                 conn.del(serialize(ACCESS + key));
                 conn.closePipeline();
             }
         } finally {
             conn.close();
         }
+        if (nearCache != null) {
+            nearCache.invalidate(tokenValue);
+        }
+    }
+
+    /**
+     * @return false表示token是脚本启用前存储的，没有删除记录
+     */
+    private boolean removeAccessTokenByScript(String tokenValue) {
+        Long removed;
+        RedisConnection conn = getConnection();
+        try {
+            removed = TokenStoreScripts.REMOVE_ACCESS.execute(conn, ReturnType.INTEGER, 1,
+                    serializeKey(ACCESS_KEYS + tokenValue), invalidationChannel());
+        } finally {
+            conn.close();
+        }
+        if (removed == null || removed != 1L) {
+            return false;
+        }
+        if (nearCache != null) {
+            nearCache.invalidate(tokenValue);
+        }
+        return true;
     }
 
     @Override
@@ -259,6 +510,15 @@ public class CustomRedisTokenStore implements TokenStore {
         byte[] refreshAuthKey = serializeKey(REFRESH_AUTH + refreshToken.getValue());
         byte[] serializedRefreshToken = serialize(refreshToken);
         RedisConnection conn = getConnection();
+        if (useScripts()) {
+            try {
+                TokenStoreScripts.STORE_REFRESH.execute(conn, ReturnType.INTEGER, 2, refreshKey, refreshAuthKey,
+                        serializedRefreshToken, serialize(authentication), refreshTokenSeconds(refreshToken));
+            } finally {
+                conn.close();
+            }
+            return;
+        }
         try {
             conn.openPipeline();
             conn.stringCommands().set(refreshKey, serializedRefreshToken);
@@ -301,14 +561,11 @@ public class CustomRedisTokenStore implements TokenStore {
         byte[] refreshAuthKey = serializeKey(REFRESH_AUTH + tokenValue);
         byte[] refresh2AccessKey = serializeKey(REFRESH_TO_ACCESS + tokenValue);
         byte[] access2RefreshKey = serializeKey(ACCESS_TO_REFRESH + tokenValue);
+        byte[] refresh2AccessKeysKey = serializeKey(REFRESH_TO_ACCESS_KEYS + tokenValue);
         RedisConnection conn = getConnection();
         try {
-            conn.openPipeline();
-            conn.del(refreshKey);
-            conn.del(refreshAuthKey);
-            conn.del(refresh2AccessKey);
-            conn.del(access2RefreshKey);
-            conn.closePipeline();
+            // 一条DEL命令删除全部键，本身就是原子的
+            conn.del(refreshKey, refreshAuthKey, refresh2AccessKey, access2RefreshKey, refresh2AccessKeysKey);
         } finally {
             conn.close();
         }
@@ -320,6 +577,10 @@ public class CustomRedisTokenStore implements TokenStore {
     }
 
     private void removeAccessTokenUsingRefreshToken(String refreshToken) {
+        if (useScripts()) {
+            removeAccessTokenUsingRefreshTokenByScript(refreshToken);
+            return;
+        }
         byte[] key = serializeKey(REFRESH_TO_ACCESS + refreshToken);
         List<Object> results = null;
         RedisConnection conn = getConnection();
@@ -341,45 +602,87 @@ public class CustomRedisTokenStore implements TokenStore {
         }
     }
 
-    @Override
-    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
-        byte[] approvalKey = serializeKey(UNAME_TO_ACCESS + getApprovalKey(clientId, userName));
-        List<byte[]> byteList = null;
+    /**
+     * refresh token对应的键已被并发的刷新取走时抛出InvalidGrantException，只有一个刷新能继续签发新的access token
+     */
+    private void removeAccessTokenUsingRefreshTokenByScript(String refreshToken) {
+        List<Object> results;
         RedisConnection conn = getConnection();
         try {
-            byteList = conn.lRange(approvalKey, 0, -1);
+            results = TokenStoreScripts.REMOVE_ACCESS_USING_REFRESH.execute(conn, ReturnType.MULTI, 2,
+                    serializeKey(REFRESH_TO_ACCESS + refreshToken), serializeKey(REFRESH_TO_ACCESS_KEYS + refreshToken),
+                    invalidationChannel());
         } finally {
             conn.close();
         }
-        if (CollectionUtils.isEmpty(byteList)) {
-            return Collections.<OAuth2AccessToken>emptySet();
+        if (CollectionUtils.isEmpty(results)) {
+            throw new InvalidGrantException("Invalid refresh token: " + refreshToken);
         }
-        List<OAuth2AccessToken> accessTokens = new ArrayList<>(byteList.size());
-        for (byte[] bytes : byteList) {
-            OAuth2AccessToken accessToken = deserializeAccessToken(bytes);
-            accessTokens.add(accessToken);
+        byte[] value = (byte[]) results.get(1);
+        if (Long.valueOf(1L).equals(results.get(0))) {
+            if (nearCache != null && value.length > 0) {
+                nearCache.invalidate(new String(value, StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        String accessToken = deserializeString(value);
+        if (accessToken != null) {
+            removeAccessToken(accessToken);
         }
-        return Collections.<OAuth2AccessToken>unmodifiableCollection(accessTokens);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        String approvalKey = getApprovalKey(clientId, userName);
+        return findTokens(UNAME_TO_ACCESS + approvalKey, LEGACY_UNAME_TO_ACCESS + approvalKey);
     }
 
     @Override
     public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
-        byte[] key = serializeKey(CLIENT_ID_TO_ACCESS + clientId);
-        List<byte[]> byteList = null;
+        return findTokens(CLIENT_ID_TO_ACCESS + clientId, LEGACY_CLIENT_ID_TO_ACCESS + clientId);
+    }
+
+    /**
+     * 删除索引中已过期的成员并取出其余的token值，连同升级前的列表在一个pipeline中读取，再用MGET读取token
+     */
+    @SuppressWarnings("unchecked")
+    private Collection<OAuth2AccessToken> findTokens(String index, String legacyIndex) {
+        byte[] indexKey = serializeKey(index);
+        double now = System.currentTimeMillis();
+        List<OAuth2AccessToken> accessTokens = new ArrayList<>();
         RedisConnection conn = getConnection();
         try {
-            byteList = conn.lRange(key, 0, -1);
+            conn.openPipeline();
+            conn.zRemRangeByScore(indexKey, 0, now);
+            conn.zRangeByScore(indexKey, now, NEVER_EXPIRES);
+            conn.lRange(serializeKey(legacyIndex), 0, -1);
+            List<Object> results = conn.closePipeline();
+            Set<byte[]> values = (Set<byte[]>) results.get(1);
+            List<byte[]> legacy = (List<byte[]>) results.get(2);
+            if (!CollectionUtils.isEmpty(values)) {
+                byte[][] accessKeys = new byte[values.size()][];
+                int i = 0;
+                for (byte[] value : values) {
+                    accessKeys[i++] = serializeKey(ACCESS + deserializeString(value));
+                }
+                for (byte[] bytes : conn.mGet(accessKeys)) {
+                    OAuth2AccessToken accessToken = deserializeAccessToken(bytes);
+                    if (accessToken != null) {
+                        accessTokens.add(accessToken);
+                    }
+                }
+            }
+            if (!CollectionUtils.isEmpty(legacy)) {
+                for (byte[] bytes : legacy) {
+                    accessTokens.add(deserializeAccessToken(bytes));
+                }
+            }
         } finally {
             conn.close();
         }
-        if (CollectionUtils.isEmpty(byteList)) {
+        if (accessTokens.isEmpty()) {
             return Collections.<OAuth2AccessToken>emptySet();
         }
-        List<OAuth2AccessToken> accessTokens = new ArrayList<>(byteList.size());
-        for (byte[] bytes : byteList) {
-            OAuth2AccessToken accessToken = deserializeAccessToken(bytes);
-            accessTokens.add(accessToken);
-        }
         return Collections.<OAuth2AccessToken>unmodifiableCollection(accessTokens);
     }
 }
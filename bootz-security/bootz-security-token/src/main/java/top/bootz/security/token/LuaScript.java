@@ -0,0 +1,49 @@
+package top.bootz.security.token;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.DigestUtils;
+
+/**
+ * 按SHA1执行的lua脚本
+ * <p>
+ * 先用EVALSHA执行，redis中还没有缓存该脚本(首次执行或redis重启后)时返回NOSCRIPT，改用EVAL执行一次，
+ * EVAL会把脚本缓存在redis中，之后的调用只传SHA1。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+final class LuaScript {
+
+    private final byte[] script;
+
+    private final String sha1;
+
+    LuaScript(String script) {
+        this.script = script.getBytes(StandardCharsets.UTF_8);
+        this.sha1 = DigestUtils.sha1DigestAsHex(script);
+    }
+
+    <T> T execute(RedisConnection conn, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        try {
+            return conn.evalSha(sha1, returnType, numKeys, keysAndArgs);
+        } catch (DataAccessException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            return conn.eval(script, returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
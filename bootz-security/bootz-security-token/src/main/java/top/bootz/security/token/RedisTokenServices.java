@@ -0,0 +1,72 @@
+package top.bootz.security.token;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+
+/**
+ * 基于{@link CustomRedisTokenStore}的token服务
+ * <p>
+ * 校验token时用{@link CustomRedisTokenStore#readTokenAndAuthentication(String)}一次读取access token和authentication，
+ * 每次校验只访问一次redis，开启近端缓存时命中的token不访问redis。签发和刷新token仍由{@link DefaultTokenServices}完成。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+public class RedisTokenServices extends DefaultTokenServices {
+
+    private final CustomRedisTokenStore tokenStore;
+
+    private ClientDetailsService clientDetailsService;
+
+    public RedisTokenServices(CustomRedisTokenStore tokenStore) {
+        this.tokenStore = tokenStore;
+        setTokenStore(tokenStore);
+    }
+
+    @Override
+    public void setClientDetailsService(ClientDetailsService clientDetailsService) {
+        super.setClientDetailsService(clientDetailsService);
+        this.clientDetailsService = clientDetailsService;
+    }
+
+    /**
+     * check_token先调用本方法再调用loadAuthentication，这里同时读出authentication，开启近端缓存时第二次读取直接命中
+     */
+    @Override
+    public OAuth2AccessToken readAccessToken(String accessToken) {
+        return tokenStore.readTokenAndAuthentication(accessToken).getAccessToken();
+    }
+
+    @Override
+    public OAuth2Authentication loadAuthentication(String accessTokenValue)
+            throws AuthenticationException, InvalidTokenException {
+        TokenAndAuthentication stored = tokenStore.readTokenAndAuthentication(accessTokenValue);
+        OAuth2AccessToken accessToken = stored.getAccessToken();
+        if (accessToken == null) {
+            throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+        } else if (accessToken.isExpired()) {
+            tokenStore.removeAccessToken(accessToken);
+            throw new InvalidTokenException("Access token expired: " + accessTokenValue);
+        }
+
+        OAuth2Authentication result = stored.getAuthentication();
+        if (result == null) {
+            // in case of race condition
+            throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
+        }
+        if (clientDetailsService != null) {
+            String clientId = result.getOAuth2Request().getClientId();
+            try {
+                clientDetailsService.loadClientByClientId(clientId);
+            } catch (ClientRegistrationException e) {
+                throw new InvalidTokenException("Client not valid: " + clientId, e);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,32 @@
+package top.bootz.security.token;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * 一次读取的access token及其authentication，token不存在时两者都为null
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+public final class TokenAndAuthentication {
+
+    static final TokenAndAuthentication EMPTY = new TokenAndAuthentication(null, null);
+
+    private final OAuth2AccessToken accessToken;
+
+    private final OAuth2Authentication authentication;
+
+    public TokenAndAuthentication(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        this.accessToken = accessToken;
+        this.authentication = authentication;
+    }
+
+    public OAuth2AccessToken getAccessToken() {
+        return accessToken;
+    }
+
+    public OAuth2Authentication getAuthentication() {
+        return authentication;
+    }
+
+}
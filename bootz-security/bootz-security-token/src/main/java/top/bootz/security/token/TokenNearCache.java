@@ -0,0 +1,162 @@
+package top.bootz.security.token;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.security.core.properties.oauth2.TokenStoreProperties.NearCacheProperties;
+
+/**
+ * {@link CustomRedisTokenStore}的进程内近端缓存
+ * <p>
+ * 以token值为键缓存反序列化后的access token和authentication，重复校验同一个token时不需要访问redis，也不需要反序列化。
+ * 容量有上限，条目在配置的保留时间或token过期时失效，取两者中较早的一个。
+ * token被重新存储或删除时，在同一个pipeline中向失效频道发布token值，所有节点(包括本节点)收到后删除本地缓存。
+ * <p>
+ * 每次失效都会增加一个全局版本号，从redis读取前记下版本号，读取期间发生过失效时不把结果放入缓存，
+ * 避免并发的读取把已经删除的token重新放回缓存。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@Slf4j
+public class TokenNearCache implements MessageListener {
+
+    private final Cache<String, Entry<OAuth2AccessToken>> accessTokens;
+
+    private final Cache<String, Entry<OAuth2Authentication>> authentications;
+
+    private final byte[] channel;
+
+    private final String channelName;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    public TokenNearCache(NearCacheProperties properties) {
+        this.accessTokens = CacheBuilder.newBuilder().maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtlSeconds(), TimeUnit.SECONDS).build();
+        this.authentications = CacheBuilder.newBuilder().maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtlSeconds(), TimeUnit.SECONDS).build();
+        this.channelName = properties.getInvalidationChannel();
+        this.channel = channelName.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    /**
+     * 读取access token，未命中时由loader从redis读取，读到的结果放入缓存
+     */
+    public OAuth2AccessToken getAccessToken(String tokenValue, Function<String, OAuth2AccessToken> loader) {
+        Entry<OAuth2AccessToken> entry = accessTokens.getIfPresent(tokenValue);
+        if (entry != null && !entry.isExpired()) {
+            return entry.value;
+        }
+        long stamp = generation.get();
+        OAuth2AccessToken accessToken = loader.apply(tokenValue);
+        if (accessToken != null && !accessToken.isExpired() && generation.get() == stamp) {
+            accessTokens.put(tokenValue, new Entry<>(accessToken, expiresAt(accessToken)));
+        }
+        return accessToken;
+    }
+
+    /**
+     * 读取token对应的authentication，未命中时由loader从redis读取。authentication随token一起过期，
+     * 本地已缓存token时使用token的过期时间，否则只受缓存保留时间的限制
+     */
+    public OAuth2Authentication getAuthentication(String tokenValue, Function<String, OAuth2Authentication> loader) {
+        Entry<OAuth2Authentication> entry = authentications.getIfPresent(tokenValue);
+        if (entry != null && !entry.isExpired()) {
+            return entry.value;
+        }
+        long stamp = generation.get();
+        OAuth2Authentication authentication = loader.apply(tokenValue);
+        if (authentication != null && generation.get() == stamp) {
+            Entry<OAuth2AccessToken> accessToken = accessTokens.getIfPresent(tokenValue);
+            authentications.put(tokenValue,
+                    new Entry<>(authentication, accessToken == null ? Long.MAX_VALUE : accessToken.expiresAt));
+        }
+        return authentication;
+    }
+
+    /**
+     * 同时读取access token和authentication，两者都已缓存时直接返回，否则由loader一次从redis读取两者
+     */
+    public TokenAndAuthentication getTokenAndAuthentication(String tokenValue,
+            Function<String, TokenAndAuthentication> loader) {
+        Entry<OAuth2AccessToken> accessToken = accessTokens.getIfPresent(tokenValue);
+        Entry<OAuth2Authentication> authentication = authentications.getIfPresent(tokenValue);
+        if (accessToken != null && !accessToken.isExpired() && authentication != null
+                && !authentication.isExpired()) {
+            return new TokenAndAuthentication(accessToken.value, authentication.value);
+        }
+        long stamp = generation.get();
+        TokenAndAuthentication loaded = loader.apply(tokenValue);
+        OAuth2AccessToken loadedToken = loaded.getAccessToken();
+        if (loadedToken != null && !loadedToken.isExpired() && loaded.getAuthentication() != null
+                && generation.get() == stamp) {
+            long expiresAt = expiresAt(loadedToken);
+            accessTokens.put(tokenValue, new Entry<>(loadedToken, expiresAt));
+            authentications.put(tokenValue, new Entry<>(loaded.getAuthentication(), expiresAt));
+        }
+        return loaded;
+    }
+
+    /**
+     * 在conn上发布token的失效通知。在写入token的pipeline中调用，通知在写入之后到达其他节点
+     */
+    public void publishInvalidation(RedisConnection conn, String tokenValue) {
+        conn.publish(channel, tokenValue.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 删除本地缓存的token，应在redis中的写入完成之后调用
+     */
+    public void invalidate(String tokenValue) {
+        generation.incrementAndGet();
+        accessTokens.invalidate(tokenValue);
+        authentications.invalidate(tokenValue);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String tokenValue = new String(message.getBody(), StandardCharsets.UTF_8);
+        invalidate(tokenValue);
+        log.trace("token [{}] invalidated by notification", tokenValue);
+    }
+
+    private static long expiresAt(OAuth2AccessToken accessToken) {
+        Date expiration = accessToken.getExpiration();
+        return expiration == null ? Long.MAX_VALUE : expiration.getTime();
+    }
+
+    private static final class Entry<T> {
+
+        private final T value;
+
+        private final long expiresAt;
+
+        Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return expiresAt != Long.MAX_VALUE && System.currentTimeMillis() >= expiresAt;
+        }
+
+    }
+
+}
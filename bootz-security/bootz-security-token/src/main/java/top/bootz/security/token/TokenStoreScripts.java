@@ -0,0 +1,116 @@
+package top.bootz.security.token;
+
+/**
+ * {@link CustomRedisTokenStore}使用的lua脚本
+ * <p>
+ * 存储access token时在access_keys:下记录删除它需要的全部键，删除时由脚本读取记录并在redis中一次完成，
+ * 不需要先把authentication读回来计算键。记录是一个列表，依次为：索引成员(序列化的token值)、access键、auth键、
+ * access_to_refresh键、auth_to_access键、按客户端的索引、按用户的索引(仅客户端的token为空)、token值、
+ * auth_to_access中保存的值(按旧格式保存完整token时才有，否则与索引成员相同)。
+ * <p>
+ * 删除脚本访问的键是从记录中读出的(REMOVE_ACCESS_FUNCTION)，存储脚本把access_keys键作为值写入refresh_to_access_keys，
+ * 这些键没有全部通过KEYS传入。调用方只知道token值，若要全部通过KEYS传入，需要先读出记录再执行脚本，每个操作多一次往返，
+ * 并且要在脚本中比较记录是否被并发修改，因此这里有意从记录中取键。redis只在这些键与KEYS在同一个slot时才能正确执行：
+ * 单机redis没有限制；集群中prefix必须带hash tag，所有token的键因此落在同一个slot、同一个主节点上，成为热点slot，
+ * token的读写无法分散到其他节点，该节点的容量和吞吐量就是token存储的上限。按客户端和按用户的索引本身就由多个token共享，
+ * 即使全部键通过KEYS传入也无法按token分散到不同的slot。token的访问量超出单个节点时应关闭脚本，改用pipeline，
+ * 见{@link CustomRedisTokenStore#setUseScripts(boolean)}。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+final class TokenStoreScripts {
+
+    /**
+     * 按记录删除access token及其索引，auth_to_access只在仍指向该token时删除，返回token值，没有记录时返回空串
+     */
+    private static final String REMOVE_ACCESS_FUNCTION = "local function removeAccess(record, channel) "
+            + "local k = redis.call('lrange', record, 0, -1) "
+            + "redis.call('del', record) "
+            + "if #k < 8 then return '' end "
+            + "redis.call('del', k[2], k[3], k[4]) "
+            + "if redis.call('get', k[5]) == (k[9] or k[1]) then redis.call('del', k[5]) end "
+            + "redis.call('zrem', k[6], k[1]) "
+            + "if k[7] ~= '' then redis.call('zrem', k[7], k[1]) end "
+            + "if channel ~= '' then redis.call('publish', channel, k[8]) end "
+            + "return k[8] end ";
+
+    /**
+     * KEYS: access, auth, auth_to_access, 按客户端的索引, 按用户的索引, access_keys, access_to_refresh,
+     * [refresh_to_access, refresh_to_access_keys]
+     * <p>
+     * ARGV: access token, authentication, 索引成员, 过期时间戳, 当前时间戳, 有效秒数(空串表示不过期), 是否仅客户端,
+     * token值, 失效频道(空串表示不发布), refresh token值, refresh token有效秒数, auth_to_access中保存的值
+     */
+    static final LuaScript STORE_ACCESS = new LuaScript("local function expire(key, seconds) "
+            + "if seconds ~= '' then redis.call('expire', key, seconds) end end "
+            + "redis.call('set', KEYS[1], ARGV[1]) "
+            + "redis.call('set', KEYS[2], ARGV[2]) "
+            + "redis.call('set', KEYS[3], ARGV[12]) "
+            + "local approval = '' "
+            + "if ARGV[7] == '0' then "
+            + "approval = KEYS[5] "
+            + "redis.call('zadd', KEYS[5], ARGV[4], ARGV[3]) "
+            + "redis.call('zremrangebyscore', KEYS[5], 0, ARGV[5]) "
+            + "expire(KEYS[5], ARGV[6]) end "
+            + "redis.call('zadd', KEYS[4], ARGV[4], ARGV[3]) "
+            + "redis.call('zremrangebyscore', KEYS[4], 0, ARGV[5]) "
+            + "redis.call('del', KEYS[6]) "
+            + "redis.call('rpush', KEYS[6], ARGV[3], KEYS[1], KEYS[2], KEYS[7], KEYS[3], KEYS[4], approval, ARGV[8]) "
+            + "if ARGV[12] ~= ARGV[3] then redis.call('rpush', KEYS[6], ARGV[12]) end "
+            + "for i = 1, 4 do expire(KEYS[i], ARGV[6]) end "
+            + "expire(KEYS[6], ARGV[6]) "
+            + "if #KEYS > 7 then "
+            + "redis.call('set', KEYS[8], ARGV[3]) "
+            + "redis.call('set', KEYS[7], ARGV[10]) "
+            + "redis.call('set', KEYS[9], KEYS[6]) "
+            + "expire(KEYS[7], ARGV[11]) "
+            + "expire(KEYS[8], ARGV[11]) "
+            + "expire(KEYS[9], ARGV[11]) end "
+            + "if ARGV[9] ~= '' then redis.call('publish', ARGV[9], ARGV[8]) end "
+            + "return 1");
+
+    /**
+     * KEYS: access_keys
+     * <p>
+     * ARGV: 失效频道
+     * <p>
+     * 返回1表示已删除，0表示没有记录(升级前存储的token)，由调用方按原来的方式删除
+     */
+    static final LuaScript REMOVE_ACCESS = new LuaScript(REMOVE_ACCESS_FUNCTION
+            + "if redis.call('exists', KEYS[1]) == 0 then return 0 end "
+            + "removeAccess(KEYS[1], ARGV[1]) "
+            + "return 1");
+
+    /**
+     * KEYS: refresh_to_access, refresh_to_access_keys
+     * <p>
+     * ARGV: 失效频道
+     * <p>
+     * 取出并删除refresh token对应的access token，并发刷新时只有一个调用能取到。
+     * 返回{1, token值}表示已按记录删除；{0, 序列化的token值}表示升级前存储的token，由调用方删除；空列表表示没有对应的token，
+     * 通常是已被并发的刷新取走
+     */
+    static final LuaScript REMOVE_ACCESS_USING_REFRESH = new LuaScript(REMOVE_ACCESS_FUNCTION
+            + "local record = redis.call('get', KEYS[2]) "
+            + "local access = redis.call('get', KEYS[1]) "
+            + "redis.call('del', KEYS[1], KEYS[2]) "
+            + "if record then return {1, removeAccess(record, ARGV[1])} end "
+            + "if access then return {0, access} end "
+            + "return {}");
+
+    /**
+     * KEYS: refresh, refresh_auth
+     * <p>
+     * ARGV: refresh token, authentication, 有效秒数(空串表示不过期)
+     */
+    static final LuaScript STORE_REFRESH = new LuaScript("redis.call('set', KEYS[1], ARGV[1]) "
+            + "redis.call('set', KEYS[2], ARGV[2]) "
+            + "if ARGV[3] ~= '' then "
+            + "redis.call('expire', KEYS[1], ARGV[3]) "
+            + "redis.call('expire', KEYS[2], ARGV[3]) end "
+            + "return 1");
+
+    private TokenStoreScripts() {
+    }
+
+}
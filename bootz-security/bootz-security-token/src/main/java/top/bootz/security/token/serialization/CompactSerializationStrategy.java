@@ -0,0 +1,526 @@
+package top.bootz.security.token.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.token.store.redis.JdkSerializationStrategy;
+import org.springframework.security.oauth2.provider.token.store.redis.StandardStringSerializationStrategy;
+
+import top.bootz.security.token.CustomGrantedAuthority;
+
+/**
+ * redis token存储的紧凑二进制序列化
+ * <p>
+ * JDK序列化会为对象图中的每个类写入完整的类描述，OAuth2Authentication序列化后通常有数KB。这里只写入字段值：
+ * 头部为魔数BZ、格式版本和对象类型，之后按固定顺序写入各字段，长度和整数使用变长编码。
+ * 常见的值类型(字符串、数字、日期、集合、SimpleGrantedAuthority、userdetails.User等)直接编码，
+ * 其余对象(如应用自定义的principal)退回JDK序列化后作为字节块嵌入。
+ * <p>
+ * 读取时按头部识别格式，JDK序列化的数据(以0xACED开头)交给{@link JdkSerializationStrategy}，
+ * 切换序列化方式后已有的token仍然可以读取，也可以用{@link TokenStoreMigration}提前转换。
+ * 字符串和键仍按utf-8编码，与JdkSerializationStrategy一致。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+public class CompactSerializationStrategy extends StandardStringSerializationStrategy {
+
+    static final byte MAGIC_0 = 'B';
+
+    static final byte MAGIC_1 = 'Z';
+
+    static final byte VERSION = 1;
+
+    private static final byte TYPE_ACCESS_TOKEN = 1;
+    private static final byte TYPE_REFRESH_TOKEN = 2;
+    private static final byte TYPE_AUTHENTICATION = 3;
+    private static final byte TYPE_VALUE = 4;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte DATE = 6;
+    private static final byte LIST = 7;
+    private static final byte SET = 8;
+    private static final byte MAP = 9;
+    private static final byte SIMPLE_AUTHORITY = 10;
+    private static final byte CUSTOM_AUTHORITY = 11;
+    private static final byte USER = 12;
+    private static final byte JDK = 13;
+
+    private static final byte NO_USER_AUTHENTICATION = 0;
+    private static final byte USERNAME_PASSWORD = 1;
+    private static final byte OTHER_AUTHENTICATION = 2;
+
+    private static final byte NO_REFRESH_TOKEN = 0;
+    private static final byte REFRESH_TOKEN = 1;
+    private static final byte EXPIRING_REFRESH_TOKEN = 2;
+
+    private final JdkSerializationStrategy jdk = new JdkSerializationStrategy();
+
+    /**
+     * @return bytes是否为本格式
+     */
+    public static boolean isCompact(byte[] bytes) {
+        return bytes != null && bytes.length >= 4 && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    @Override
+    protected byte[] serializeInternal(Object object) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC_0);
+            out.writeByte(MAGIC_1);
+            out.writeByte(VERSION);
+            if (object instanceof OAuth2AccessToken) {
+                out.writeByte(TYPE_ACCESS_TOKEN);
+                writeAccessToken(out, (OAuth2AccessToken) object);
+            } else if (object instanceof OAuth2RefreshToken) {
+                out.writeByte(TYPE_REFRESH_TOKEN);
+                writeRefreshToken(out, (OAuth2RefreshToken) object);
+            } else if (object instanceof OAuth2Authentication) {
+                out.writeByte(TYPE_AUTHENTICATION);
+                writeAuthentication(out, (OAuth2Authentication) object);
+            } else {
+                out.writeByte(TYPE_VALUE);
+                writeValue(out, object);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize " + object.getClass(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    protected <T> T deserializeInternal(byte[] bytes, Class<T> clazz) {
+        if (!isCompact(bytes)) {
+            return jdk.deserialize(bytes, clazz);
+        }
+        if (bytes[2] > VERSION) {
+            throw new SerializationException("Unsupported token format version: " + bytes[2]);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 4, bytes.length - 4))) {
+            Object value;
+            switch (bytes[3]) {
+            case TYPE_ACCESS_TOKEN:
+                value = readAccessToken(in);
+                break;
+            case TYPE_REFRESH_TOKEN:
+                value = readRefreshToken(in);
+                break;
+            case TYPE_AUTHENTICATION:
+                value = readAuthentication(in);
+                break;
+            case TYPE_VALUE:
+                value = readValue(in);
+                break;
+            default:
+                throw new SerializationException("Unknown token type: " + bytes[3]);
+            }
+            return clazz.cast(value);
+        } catch (IOException | ClassCastException e) {
+            throw new SerializationException("Cannot deserialize " + clazz, e);
+        }
+    }
+
+    private void writeAccessToken(DataOutputStream out, OAuth2AccessToken token) throws IOException {
+        writeString(out, token.getValue());
+        writeString(out, token.getTokenType());
+        writeDate(out, token.getExpiration());
+        writeStrings(out, token.getScope());
+        writeRefreshToken(out, token.getRefreshToken());
+        Map<String, Object> additional = token.getAdditionalInformation();
+        writeValue(out, additional == null || additional.isEmpty() ? null : additional);
+    }
+
+    @SuppressWarnings("unchecked")
+    private OAuth2AccessToken readAccessToken(DataInputStream in) throws IOException {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(readString(in));
+        token.setTokenType(readString(in));
+        token.setExpiration(readDate(in));
+        token.setScope(readStrings(in));
+        token.setRefreshToken(readRefreshToken(in));
+        Map<String, Object> additional = (Map<String, Object>) readValue(in);
+        if (additional != null) {
+            token.setAdditionalInformation(additional);
+        }
+        return token;
+    }
+
+    private void writeRefreshToken(DataOutputStream out, OAuth2RefreshToken token) throws IOException {
+        if (token == null) {
+            out.writeByte(NO_REFRESH_TOKEN);
+        } else if (token instanceof ExpiringOAuth2RefreshToken) {
+            out.writeByte(EXPIRING_REFRESH_TOKEN);
+            writeString(out, token.getValue());
+            writeDate(out, ((ExpiringOAuth2RefreshToken) token).getExpiration());
+        } else {
+            out.writeByte(REFRESH_TOKEN);
+            writeString(out, token.getValue());
+        }
+    }
+
+    private OAuth2RefreshToken readRefreshToken(DataInputStream in) throws IOException {
+        switch (in.readByte()) {
+        case NO_REFRESH_TOKEN:
+            return null;
+        case REFRESH_TOKEN:
+            return new DefaultOAuth2RefreshToken(readString(in));
+        case EXPIRING_REFRESH_TOKEN:
+            return new DefaultExpiringOAuth2RefreshToken(readString(in), readDate(in));
+        default:
+            throw new IOException("corrupted refresh token");
+        }
+    }
+
+    private void writeAuthentication(DataOutputStream out, OAuth2Authentication authentication) throws IOException {
+        OAuth2Request request = authentication.getOAuth2Request();
+        writeStringMap(out, request.getRequestParameters());
+        writeString(out, request.getClientId());
+        writeValue(out, new ArrayList<>(request.getAuthorities()));
+        out.writeBoolean(request.isApproved());
+        writeStrings(out, request.getScope());
+        writeStrings(out, request.getResourceIds());
+        writeString(out, request.getRedirectUri());
+        writeStrings(out, request.getResponseTypes());
+        writeValue(out, request.getExtensions().isEmpty() ? null : request.getExtensions());
+        TokenRequest refresh = request.getRefreshTokenRequest();
+        out.writeBoolean(refresh != null);
+        if (refresh != null) {
+            writeStringMap(out, refresh.getRequestParameters());
+            writeString(out, refresh.getClientId());
+            writeStrings(out, refresh.getScope());
+            writeString(out, refresh.getGrantType());
+        }
+
+        Authentication user = authentication.getUserAuthentication();
+        if (user == null) {
+            out.writeByte(NO_USER_AUTHENTICATION);
+        } else if (user.getClass() == UsernamePasswordAuthenticationToken.class) {
+            out.writeByte(USERNAME_PASSWORD);
+            writeValue(out, user.getPrincipal());
+            writeValue(out, user.getCredentials());
+            writeValue(out, new ArrayList<>(user.getAuthorities()));
+            out.writeBoolean(user.isAuthenticated());
+            writeValue(out, user.getDetails());
+        } else {
+            out.writeByte(OTHER_AUTHENTICATION);
+            writeJdk(out, user);
+        }
+        writeValue(out, authentication.getDetails());
+    }
+
+    @SuppressWarnings("unchecked")
+    private OAuth2Authentication readAuthentication(DataInputStream in) throws IOException {
+        Map<String, String> parameters = readStringMap(in);
+        String clientId = readString(in);
+        Collection<GrantedAuthority> authorities = (Collection<GrantedAuthority>) readValue(in);
+        boolean approved = in.readBoolean();
+        Set<String> scope = readStrings(in);
+        Set<String> resourceIds = readStrings(in);
+        String redirectUri = readString(in);
+        Set<String> responseTypes = readStrings(in);
+        Map<String, Serializable> extensions = (Map<String, Serializable>) readValue(in);
+        OAuth2Request request = new OAuth2Request(parameters, clientId, authorities, approved, scope, resourceIds,
+                redirectUri, responseTypes, extensions);
+        if (in.readBoolean()) {
+            request = request.refresh(new TokenRequest(readStringMap(in), readString(in), readStrings(in),
+                    readString(in)));
+        }
+
+        Authentication user;
+        switch (in.readByte()) {
+        case NO_USER_AUTHENTICATION:
+            user = null;
+            break;
+        case USERNAME_PASSWORD:
+            Object principal = readValue(in);
+            Object credentials = readValue(in);
+            Collection<GrantedAuthority> userAuthorities = (Collection<GrantedAuthority>) readValue(in);
+            UsernamePasswordAuthenticationToken token = in.readBoolean()
+                    ? new UsernamePasswordAuthenticationToken(principal, credentials, userAuthorities)
+                    : new UsernamePasswordAuthenticationToken(principal, credentials);
+            token.setDetails(readValue(in));
+            user = token;
+            break;
+        case OTHER_AUTHENTICATION:
+            user = (Authentication) readJdk(in);
+            break;
+        default:
+            throw new IOException("corrupted user authentication");
+        }
+        OAuth2Authentication authentication = new OAuth2Authentication(request, user);
+        authentication.setDetails(readValue(in));
+        return authentication;
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            writeVarLong(out, (Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, (Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            writeVarLong(out, ((Date) value).getTime());
+        } else if (value instanceof List || value instanceof Set) {
+            out.writeByte(value instanceof Set ? SET : LIST);
+            Collection<?> collection = (Collection<?>) value;
+            writeVarInt(out, collection.size());
+            for (Object element : collection) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (value.getClass() == SimpleGrantedAuthority.class) {
+            out.writeByte(SIMPLE_AUTHORITY);
+            writeString(out, ((SimpleGrantedAuthority) value).getAuthority());
+        } else if (value.getClass() == CustomGrantedAuthority.class) {
+            out.writeByte(CUSTOM_AUTHORITY);
+            writeString(out, ((CustomGrantedAuthority) value).getRoleId());
+            writeString(out, ((CustomGrantedAuthority) value).getMenuId());
+        } else if (value.getClass() == User.class) {
+            User user = (User) value;
+            out.writeByte(USER);
+            writeString(out, user.getUsername());
+            writeString(out, user.getPassword());
+            out.writeByte((user.isEnabled() ? 1 : 0) | (user.isAccountNonExpired() ? 2 : 0)
+                    | (user.isCredentialsNonExpired() ? 4 : 0) | (user.isAccountNonLocked() ? 8 : 0));
+            writeValue(out, new ArrayList<>(user.getAuthorities()));
+        } else {
+            out.writeByte(JDK);
+            writeJdk(out, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case INT:
+            return (int) readVarLong(in);
+        case LONG:
+            return readVarLong(in);
+        case BOOLEAN:
+            return in.readBoolean();
+        case DOUBLE:
+            return in.readDouble();
+        case DATE:
+            return new Date(readVarLong(in));
+        case LIST:
+        case SET:
+            int size = readVarInt(in);
+            Collection<Object> collection = type == SET ? new LinkedHashSet<>(size * 4 / 3 + 1)
+                    : new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue(in));
+            }
+            return collection;
+        case MAP:
+            int entries = readVarInt(in);
+            Map<Object, Object> map = new LinkedHashMap<>(entries * 4 / 3 + 1);
+            for (int i = 0; i < entries; i++) {
+                map.put(readValue(in), readValue(in));
+            }
+            return map;
+        case SIMPLE_AUTHORITY:
+            return new SimpleGrantedAuthority(readString(in));
+        case CUSTOM_AUTHORITY:
+            return new CustomGrantedAuthority(readString(in), readString(in));
+        case USER:
+            String username = readString(in);
+            String password = readString(in);
+            int flags = in.readByte();
+            Collection<GrantedAuthority> authorities = (Collection<GrantedAuthority>) readValue(in);
+            // User不接受null的密码，擦除过的密码先用空串构造再擦除
+            User user = new User(username, password == null ? "" : password, (flags & 1) != 0, (flags & 2) != 0,
+                    (flags & 4) != 0, (flags & 8) != 0, authorities);
+            if (password == null) {
+                user.eraseCredentials();
+            }
+            return user;
+        case JDK:
+            return readJdk(in);
+        default:
+            throw new IOException("unknown value type: " + type);
+        }
+    }
+
+    private void writeJdk(DataOutputStream out, Object value) throws IOException {
+        byte[] bytes = jdk.serialize(value);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private Object readJdk(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return jdk.deserialize(bytes, Object.class);
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        writeVarInt(out, map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readStringMap(DataInputStream in) throws IOException {
+        int size = readVarInt(in);
+        Map<String, String> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        if (strings == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int size = readVarInt(in);
+        Set<String> strings = new LinkedHashSet<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static void writeDate(DataOutputStream out, Date date) throws IOException {
+        writeVarLong(out, date == null ? -1L : date.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        long time = readVarLong(in);
+        return time == -1L ? null : new Date(time);
+    }
+
+    /**
+     * 长度加1后写入，0表示null
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * zigzag编码，负数(如表示null的-1)也只占一个字节
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("malformed varlong");
+    }
+
+}
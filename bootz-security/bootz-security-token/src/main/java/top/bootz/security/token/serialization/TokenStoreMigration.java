@@ -0,0 +1,185 @@
+package top.bootz.security.token.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.security.oauth2.provider.token.store.redis.RedisTokenStoreSerializationStrategy;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 把redis中已有的token转换为目标序列化格式
+ * <p>
+ * 用SCAN逐批遍历token相关的键，格式与目标不一致的值用{@link CompactSerializationStrategy}读出(两种格式都能读取)
+ * 再按目标格式写回。写回由lua脚本完成：只有值没有被并发修改时才覆盖，并保留原有的过期时间，
+ * 因此可以在服务运行期间执行，也可以把目标设为JdkSerializationStrategy回退到JDK格式。
+ * 不是序列化对象的值(如auth_to_access:中的token值)保持不变；无法读取的值记录日志后跳过，不影响其余的键。
+ *
+ * @author Zhangq<momogoing@163.com>
+ */
+@Slf4j
+public class TokenStoreMigration {
+
+    /**
+     * 保存单个对象的键。auth_to_access:现在保存token值，只有按旧格式保存的完整token需要转换
+     */
+    private static final String[] VALUE_KEYS = { "access:", "auth:", "auth_to_access:", "refresh:",
+            "refresh_auth:" };
+
+    /**
+     * 保存token列表的键
+     */
+    private static final String[] LIST_KEYS = { "uname_to_access:", "client_id_to_access:" };
+
+    private static final byte[] REPLACE_VALUE = ("if redis.call('get', KEYS[1]) == ARGV[1] then "
+            + "local ttl = redis.call('pttl', KEYS[1]) "
+            + "if ttl > 0 then redis.call('set', KEYS[1], ARGV[2], 'PX', ttl) "
+            + "else redis.call('set', KEYS[1], ARGV[2]) end "
+            + "return 1 end return 0").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] REPLACE_ELEMENT = ("if redis.call('lindex', KEYS[1], ARGV[1]) == ARGV[2] then "
+            + "redis.call('lset', KEYS[1], ARGV[1], ARGV[3]) return 1 end return 0")
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private static final int SCAN_COUNT = 500;
+
+    private final RedisConnectionFactory connectionFactory;
+
+    private final RedisTokenStoreSerializationStrategy target;
+
+    private final boolean targetCompact;
+
+    private final CompactSerializationStrategy reader = new CompactSerializationStrategy();
+
+    private String prefix = "";
+
+    public TokenStoreMigration(RedisConnectionFactory connectionFactory, RedisTokenStoreSerializationStrategy target) {
+        this.connectionFactory = connectionFactory;
+        this.target = target;
+        this.targetCompact = target instanceof CompactSerializationStrategy;
+    }
+
+    /**
+     * 与token存储的prefix一致
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return 转换的值的个数(列表按元素计)
+     */
+    public long migrate() {
+        long migrated = 0L;
+        for (String key : VALUE_KEYS) {
+            migrated += migrateValues(prefix + key + "*");
+        }
+        for (String key : LIST_KEYS) {
+            migrated += migrateLists(prefix + key + "*");
+        }
+        log.info("token store migration finished, {} values converted", migrated);
+        return migrated;
+    }
+
+    private long migrateValues(String pattern) {
+        long migrated = 0L;
+        RedisConnection scanConn = connectionFactory.getConnection();
+        RedisConnection conn = connectionFactory.getConnection();
+        try (Cursor<byte[]> keys = scanConn.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build())) {
+            while (keys.hasNext()) {
+                byte[] key = keys.next();
+                byte[] value = conn.get(key);
+                if (!needsConversion(value)) {
+                    continue;
+                }
+                byte[] converted = convert(key, value);
+                if (converted == null) {
+                    continue;
+                }
+                Long replaced = conn.eval(REPLACE_VALUE, ReturnType.INTEGER, 1, key, value, converted);
+                if (replaced != null && replaced == 1L) {
+                    migrated++;
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("token store migration failed on " + pattern, e);
+        } finally {
+            conn.close();
+            scanConn.close();
+        }
+        log.info("[{}] migrated, {} values converted", pattern, migrated);
+        return migrated;
+    }
+
+    private long migrateLists(String pattern) {
+        long migrated = 0L;
+        RedisConnection scanConn = connectionFactory.getConnection();
+        RedisConnection conn = connectionFactory.getConnection();
+        try (Cursor<byte[]> keys = scanConn.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build())) {
+            while (keys.hasNext()) {
+                byte[] key = keys.next();
+                List<byte[]> elements = conn.lRange(key, 0, -1);
+                if (elements == null) {
+                    continue;
+                }
+                for (int i = 0; i < elements.size(); i++) {
+                    byte[] element = elements.get(i);
+                    if (!needsConversion(element)) {
+                        continue;
+                    }
+                    byte[] converted = convert(key, element);
+                    if (converted == null) {
+                        continue;
+                    }
+                    // 元素被并发删除导致下标移动时脚本不会覆盖，未转换的元素仍然可以读取
+                    Long replaced = conn.eval(REPLACE_ELEMENT, ReturnType.INTEGER, 1, key,
+                            String.valueOf(i).getBytes(StandardCharsets.UTF_8), element, converted);
+                    if (replaced != null && replaced == 1L) {
+                        migrated++;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("token store migration failed on " + pattern, e);
+        } finally {
+            conn.close();
+            scanConn.close();
+        }
+        log.info("[{}] migrated, {} elements converted", pattern, migrated);
+        return migrated;
+    }
+
+    /**
+     * 只转换格式与目标不一致的序列化对象，普通字符串不需要转换
+     */
+    private boolean needsConversion(byte[] value) {
+        if (value == null || value.length == 0) {
+            return false;
+        }
+        boolean compact = CompactSerializationStrategy.isCompact(value);
+        return (compact || isJdkSerialized(value)) && compact != targetCompact;
+    }
+
+    private static boolean isJdkSerialized(byte[] value) {
+        return value.length > 1 && value[0] == (byte) 0xAC && value[1] == (byte) 0xED;
+    }
+
+    /**
+     * @return 目标格式的值，无法读取时返回null
+     */
+    private byte[] convert(byte[] key, byte[] value) {
+        try {
+            return target.serialize(reader.deserialize(value, Object.class));
+        } catch (Exception e) {
+            log.warn("token store migration skipped [{}], the value can not be converted: {}",
+                    new String(key, StandardCharsets.UTF_8), e.getMessage());
+            return null;
+        }
+    }
+
+}
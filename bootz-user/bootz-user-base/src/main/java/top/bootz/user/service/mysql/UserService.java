@@ -1,12 +1,22 @@
 package top.bootz.user.service.mysql;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import top.bootz.core.supporter.JpaKeysetPaging;
+import top.bootz.core.supporter.JpaStreams;
+import top.bootz.core.supporter.PagingInfo;
 import top.bootz.user.entity.mysql.user.User;
 import top.bootz.user.repository.mysql.user.UserRepository;
 
@@ -22,6 +32,9 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Transactional(readOnly = false)
     public User saveUser(User user) {
         return userRepository.save(user);
@@ -43,4 +56,18 @@ public class UserService {
         return userRepository.findById(id);
     }
 
+    /**
+     * 按游标分页查询用户，翻页开销与页数无关，总数按paging的countMode统计
+     */
+    public List<User> findUsers(Specification<User> where, PagingInfo paging) {
+        return JpaKeysetPaging.find(entityManager, User.class, where, paging, "id");
+    }
+
+    /**
+     * 在只读事务中按主键顺序流式读取用户，用于导出
+     */
+    public void forEachUser(Specification<User> where, Consumer<? super User> action) {
+        JpaStreams.forEach(entityManager, User.class, where, Sort.by("id"), action);
+    }
+
 }
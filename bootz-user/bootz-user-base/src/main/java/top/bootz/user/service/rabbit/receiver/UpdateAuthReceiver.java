@@ -1,23 +1,17 @@
 package top.bootz.user.service.rabbit.receiver;
 
-import java.io.IOException;
+import java.util.List;
 
-import org.springframework.amqp.core.ExchangeTypes;
-import org.springframework.amqp.rabbit.annotation.Exchange;
-import org.springframework.amqp.rabbit.annotation.Queue;
-import org.springframework.amqp.rabbit.annotation.QueueBinding;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
-import com.rabbitmq.client.Channel;
-
-import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import top.bootz.core.base.message.BaseReceiver;
+import top.bootz.core.base.message.BaseBatchReceiver;
+import top.bootz.core.base.message.BatchReceiverSettings;
+import top.bootz.core.base.message.ProcessedMessageFilter;
 import top.bootz.core.base.message.RabbitMessage;
 import top.bootz.core.log.RabbitMessageLogService;
 import top.bootz.user.commons.constants.RabbitConstants;
@@ -30,40 +24,20 @@ import top.bootz.user.commons.constants.RabbitConstants;
 
 @Slf4j
 @Component
-@NoArgsConstructor
-public class UpdateAuthReceiver extends BaseReceiver {
+public class UpdateAuthReceiver extends BaseBatchReceiver {
 
 	@Autowired
-	public UpdateAuthReceiver(RabbitMessageLogService rabbitMessageLogService) {
-		super(rabbitMessageLogService);
+	public UpdateAuthReceiver(ConnectionFactory connectionFactory, MessageConverter messageConverter,
+			RabbitMessageLogService rabbitMessageLogService, BatchReceiverSettings batchReceiverSettings,
+			ObjectProvider<ProcessedMessageFilter> processedMessageFilterProvider) {
+		super(RabbitConstants.Queue.UC_UPDATE_AUTH, connectionFactory, messageConverter, rabbitMessageLogService,
+				batchReceiverSettings, processedMessageFilterProvider.getIfAvailable());
 	}
 
-	@RabbitListener(returnExceptions = "true", bindings = @QueueBinding(value = @Queue(value = RabbitConstants.Queue.UC_UPDATE_AUTH, autoDelete = "false", durable = "true"), exchange = @Exchange(value = RabbitConstants.Exchange.DIRECT, type = ExchangeTypes.DIRECT, autoDelete = "false", durable = "true"), key = RabbitConstants.RoutingKey.UC_DIRECT_UPDATE_AUTH))
-	public void onMessage(@Payload RabbitMessage message, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag,
-			Channel channel) {
-		try {
-			if (message == null) {
-				log.error("The received message is illegal. {}", message);
-				channel.basicNack(deliveryTag, false, false);
-				return;
-			}
-
-			log.debug("监听处理消息。exchange [" + RabbitConstants.Exchange.DIRECT + "] queue ["
-					+ RabbitConstants.Queue.UC_UPDATE_AUTH + "]");
-
-			afterRecivedMessage(message);
-
-			// 确认接收处理消息成功
-			channel.basicAck(deliveryTag, false);
-		} catch (Exception e) {
-			log.error("An unknown error has occurred when handle message. exchange [" + RabbitConstants.Exchange.DIRECT
-					+ "] queue [" + RabbitConstants.Queue.UC_UPDATE_AUTH + "]", e);
-			try {
-				channel.basicNack(deliveryTag, false, false);
-			} catch (IOException e1) {
-				log.error("basic nack message fail.", e1);
-			}
-		}
+	@Override
+	protected void onMessages(List<RabbitMessage> messages) {
+		log.debug("监听处理消息。exchange [" + RabbitConstants.Exchange.DIRECT + "] queue ["
+				+ RabbitConstants.Queue.UC_UPDATE_AUTH + "] count [" + messages.size() + "]");
 	}
 
 }
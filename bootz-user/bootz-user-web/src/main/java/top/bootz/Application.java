@@ -12,7 +12,11 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import top.bootz.commons.helper.SpringHelper;
 import top.bootz.user.config.*;
+import top.bootz.user.config.properties.AccessLogProperties;
 import top.bootz.user.config.properties.IdGeneratorProperties;
+import top.bootz.user.config.properties.MessageDedupProperties;
+import top.bootz.user.config.properties.OutboxProperties;
+import top.bootz.user.config.properties.RabbitMessageLogProperties;
 import top.bootz.user.config.properties.TaskThreadPoolConfigProperties;
 
 @EnableRetry
@@ -21,9 +25,10 @@ import top.bootz.user.config.properties.TaskThreadPoolConfigProperties;
 @EnableSpringDataWebSupport
 @EnableAspectJAutoProxy(exposeProxy = true)
 @SpringBootApplication(scanBasePackages = {"top.bootz"})
-@EnableConfigurationProperties({IdGeneratorProperties.class, TaskThreadPoolConfigProperties.class})
-@Import(value = {AsyncConfig.class, CacheConfig.class, ElasticConfiguration.class, IdGeneratorConfig.class, JpaConfig
-        .class, MongoConfig.class, RabbitmqConfig.class, RedisConfig.class})
+@EnableConfigurationProperties({AccessLogProperties.class, IdGeneratorProperties.class, MessageDedupProperties.class,
+        OutboxProperties.class, RabbitMessageLogProperties.class, TaskThreadPoolConfigProperties.class})
+@Import(value = {AccessLogConfig.class, AsyncConfig.class, CacheConfig.class, ElasticConfiguration.class, IdGeneratorConfig.class, JpaConfig
+        .class, LogPartitionConfig.class, MongoConfig.class, OutboxRelayConfig.class, RabbitmqConfig.class, RabbitMessageLogConfig.class, RedisConfig.class})
 public class Application {
 
     public static void main(String[] args) {
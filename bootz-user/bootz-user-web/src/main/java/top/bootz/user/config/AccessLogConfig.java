@@ -0,0 +1,90 @@
+package top.bootz.user.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import top.bootz.core.log.AccessLogPipeline;
+import top.bootz.core.log.AccessLogService;
+import top.bootz.core.log.CapturePolicyRegistry;
+import top.bootz.user.config.properties.AccessLogProperties;
+
+/**
+ * 访问日志配置：批量写入管道及请求参数、返回值的采集策略
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Configuration
+public class AccessLogConfig {
+
+    /**
+     * spring cloud刷新配置(/actuator/refresh或配置中心推送)后发布的事件，没有引入spring-cloud-context时不存在
+     */
+    private static final String ENVIRONMENT_CHANGE_EVENT = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
+
+    @Autowired
+    private AccessLogProperties accessLogProperties;
+
+    @Bean
+    public CapturePolicyRegistry capturePolicyRegistry() {
+        return new CapturePolicyRegistry(accessLogProperties.getDefaultCapture(), accessLogProperties.getCaptures());
+    }
+
+    /**
+     * 配置刷新后重新绑定custom.access-log并替换采集策略，不需要重启应用。只在引入spring-cloud-context时生效，
+     * 否则修改采集策略配置后需要重启
+     */
+    @Bean
+    @ConditionalOnClass(name = ENVIRONMENT_CHANGE_EVENT)
+    public ApplicationListener<ApplicationEvent> capturePolicyRefresher(CapturePolicyRegistry capturePolicyRegistry,
+            Environment environment) {
+        return event -> {
+            if (!ENVIRONMENT_CHANGE_EVENT.equals(event.getClass().getName())) {
+                return;
+            }
+            AccessLogProperties refreshed = Binder.get(environment)
+                    .bind("custom.access-log", AccessLogProperties.class).orElseGet(AccessLogProperties::new);
+            capturePolicyRegistry.update(refreshed.getDefaultCapture(), refreshed.getCaptures());
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "custom.access-log", name = "pipelined", matchIfMissing = true)
+    public AccessLogPipeline accessLogPipeline(AccessLogService accessLogService) {
+        return new AccessLogPipeline(accessLogService, accessLogProperties.getCapacity(),
+                accessLogProperties.getBatchSize(), accessLogProperties.getFlushIntervalMillis(),
+                accessLogProperties.getOverloadPolicy(), accessLogProperties.getSampleRatio());
+    }
+
+    /**
+     * 访问日志管道的运行指标：缓冲区长度、丢弃数、写入数及写入失败数
+     */
+    @Bean
+    public MeterBinder accessLogPipelineMetrics(ObjectProvider<AccessLogPipeline> accessLogPipelineProvider) {
+        return registry -> {
+            AccessLogPipeline accessLogPipeline = accessLogPipelineProvider.getIfAvailable();
+            if (accessLogPipeline == null) {
+                return;
+            }
+            Gauge.builder("bootz.access.log.queued", accessLogPipeline, AccessLogPipeline::getQueuedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.access.log.dropped", accessLogPipeline, AccessLogPipeline::getDroppedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.access.log.flushed", accessLogPipeline, AccessLogPipeline::getFlushedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.access.log.failed", accessLogPipeline, AccessLogPipeline::getFailedCount)
+                    .register(registry);
+        };
+    }
+
+}
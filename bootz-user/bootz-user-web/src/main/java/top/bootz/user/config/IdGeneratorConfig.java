@@ -1,12 +1,23 @@
 package top.bootz.user.config;
 
+import java.nio.file.Paths;
+
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import top.bootz.commons.snowflake.AtomicIdGenerator;
 import top.bootz.commons.snowflake.IdGenerator;
+import top.bootz.core.generator.LocalFileWorkerIdAssigner;
+import top.bootz.core.generator.RedisWorkerIdAssigner;
+import top.bootz.core.generator.WorkerIdAssigner;
 import top.bootz.user.config.properties.IdGeneratorProperties;
 
 /**
@@ -21,23 +32,87 @@ public class IdGeneratorConfig {
     @Autowired
     private IdGeneratorProperties idGeneratorProperties;
 
+    /**
+     * 节点槽位分配器：优先通过Redis租约领取，Redis不可用时降级为本地文件
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public WorkerIdAssigner workerIdAssigner(ObjectProvider<RedisConnectionFactory> redisConnectionFactory) {
+        WorkerIdAssigner fileAssigner = new LocalFileWorkerIdAssigner(
+                Paths.get(idGeneratorProperties.getWorkerIdFile()));
+        RedisConnectionFactory connectionFactory = redisConnectionFactory.getIfAvailable();
+        if (connectionFactory == null) {
+            return fileAssigner;
+        }
+        return new RedisWorkerIdAssigner(connectionFactory, idGeneratorProperties.getLeaseMillis(), fileAssigner);
+    }
+
     @Bean
     @ConditionalOnMissingBean
-    public IdGenerator idGenerator() {
-        IdGenerator idGenerator = new IdGenerator();
-        idGenerator.setWorkerId(getWorkId());
-        idGenerator.setDataCenterId(getDataCenterId());
+    public IdGenerator idGenerator(WorkerIdAssigner workerIdAssigner) {
+        IdGenerator idGenerator;
+        if (idGeneratorProperties.isLockFree()) {
+            AtomicIdGenerator atomicIdGenerator = new AtomicIdGenerator();
+            atomicIdGenerator.setStripes(idGeneratorProperties.getStripes());
+            idGenerator = atomicIdGenerator;
+        } else {
+            idGenerator = new IdGenerator();
+        }
+        String workerId = getExplicitId("bootz.id.snowflake.worker.id", "BOOTZ_ID_GENERATOR_WORKER_ID");
+        String dataCenterId = getExplicitId("bootz.id.snowflake.datacenter.id", "BOOTZ_ID_GENERATOR_DATACENTER_ID");
+        if (idGeneratorProperties.isAutoAssign() && (workerId == null || dataCenterId == null)) {
+            // 没有通过启动参数或环境变量显式指定时，自动领取一个唯一槽位
+            int slot = workerIdAssigner.assign();
+            idGenerator.setWorkerId(WorkerIdAssigner.workerIdOf(slot));
+            idGenerator.setDataCenterId(WorkerIdAssigner.dataCenterIdOf(slot));
+            // 租约丢失时暂停发号，重新领取到槽位后切换到新槽位
+            workerIdAssigner.setSlotListener(leased -> {
+                if (leased < 0) {
+                    idGenerator.suspend();
+                } else {
+                    idGenerator.setNode(WorkerIdAssigner.dataCenterIdOf(leased), WorkerIdAssigner.workerIdOf(leased));
+                }
+            });
+        } else {
+            idGenerator.setWorkerId(getWorkId(workerId));
+            idGenerator.setDataCenterId(getDataCenterId(dataCenterId));
+        }
+        idGenerator.setMaxLeadMillis(idGeneratorProperties.getMaxLeadMillis());
+        idGenerator.setClock(idGeneratorProperties.isClock());
         return idGenerator;
     }
 
-    private long getWorkId() {
-        String workerId = System.getProperty("bootz.id.snowflake.worker.id");
-        if (StringUtils.isNotBlank(workerId)) {
-            return Long.valueOf(workerId);
+    /**
+     * 主键生成器的运行指标：等待下一毫秒次数、时钟回拨次数、借用未来时间次数及当前领先毫秒数
+     */
+    @Bean
+    public MeterBinder idGeneratorMetrics(IdGenerator idGenerator) {
+        return registry -> {
+            FunctionCounter.builder("bootz.id.wait.next.millis", idGenerator, IdGenerator::getWaitForNextMillisCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.id.clock.backward.jumps", idGenerator, IdGenerator::getBackwardJumpCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.id.borrowed.millis", idGenerator, IdGenerator::getBorrowedMillisCount)
+                    .register(registry);
+            Gauge.builder("bootz.id.clock.lead.millis", idGenerator, IdGenerator::getCurrentLeadMillis)
+                    .register(registry);
+        };
+    }
 
+    private String getExplicitId(String propertyName, String envName) {
+        String id = System.getProperty(propertyName);
+        if (StringUtils.isNotBlank(id)) {
+            return id;
+        }
+        id = System.getenv(envName);
+        if (StringUtils.isNotBlank(id)) {
+            return id;
         }
-        workerId = System.getenv("BOOTZ_ID_GENERATOR_WORKER_ID");
-        if (StringUtils.isNotBlank(workerId)) {
+        return null;
+    }
+
+    private long getWorkId(String workerId) {
+        if (workerId != null) {
             return Long.valueOf(workerId);
         }
         if (idGeneratorProperties.getWorkerId() != null) {
@@ -46,13 +121,8 @@ public class IdGeneratorConfig {
         throw new IllegalArgumentException("workerId must not be null or blank!");
     }
 
-    private long getDataCenterId() {
-        String dataCenterId = System.getProperty("bootz.id.snowflake.datacenter.id");
-        if (StringUtils.isNotBlank(dataCenterId)) {
-            return Long.valueOf(dataCenterId);
-        }
-        dataCenterId = System.getenv("BOOTZ_ID_GENERATOR_DATACENTER_ID");
-        if (StringUtils.isNotBlank(dataCenterId)) {
+    private long getDataCenterId(String dataCenterId) {
+        if (dataCenterId != null) {
             return Long.valueOf(dataCenterId);
         }
         if (idGeneratorProperties.getDataCenterId() != null) {
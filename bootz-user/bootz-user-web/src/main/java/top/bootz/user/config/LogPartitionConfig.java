@@ -0,0 +1,68 @@
+package top.bootz.user.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import lombok.extern.slf4j.Slf4j;
+import top.bootz.core.log.AccessLogService;
+import top.bootz.core.log.LogPartitionSettings;
+import top.bootz.core.log.RabbitMessageLogService;
+
+/**
+ * 访问日志和消息日志的分区配置：分区参数、定期的分区维护及分区之前的旧集合的迁移
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Slf4j
+@Configuration
+public class LogPartitionConfig {
+
+    @Autowired
+    private AccessLogService accessLogService;
+
+    @Autowired
+    private RabbitMessageLogService rabbitMessageLogService;
+
+    @Bean
+    @ConfigurationProperties(prefix = "custom.log-partition")
+    public LogPartitionSettings logPartitionSettings() {
+        return new LogPartitionSettings();
+    }
+
+    /**
+     * 启动完成后在后台线程中把分区之前的accessLog、rabbitMessageLog集合迁移到各分区，迁移完成前旧集合中的日志暂时查询不到。
+     * 旧集合不存在时立即结束，中途失败的迁移在下次启动时继续
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateLegacyLogs() {
+        Thread thread = new Thread(() -> {
+            try {
+                accessLogService.migrateLegacyCollection();
+                rabbitMessageLogService.migrateLegacyCollection();
+            } catch (Exception e) {
+                log.error("migrate legacy log collections failed", e);
+            }
+        }, "log-partition-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 预建下一个分区，使分区切换时的写入不需要等待索引创建，并整体删除过期的分区
+     */
+    @Scheduled(fixedDelayString = "${custom.log-partition.maintenance-interval-millis:3600000}")
+    public void maintainPartitions() {
+        try {
+            accessLogService.maintainPartitions();
+            rabbitMessageLogService.maintainPartitions();
+        } catch (Exception e) {
+            log.error("maintain log partitions failed", e);
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package top.bootz.user.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import top.bootz.core.annotation.EnableOutbox;
+import top.bootz.core.outbox.OutboxRelay;
+import top.bootz.core.outbox.OutboxService;
+import top.bootz.user.config.properties.OutboxProperties;
+import top.bootz.user.service.rabbit.sender.OutboxRelayMessageSender;
+
+/**
+ * 消息发件箱中继配置
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Configuration
+@EnableOutbox
+public class OutboxRelayConfig {
+
+    @Autowired
+    private OutboxProperties outboxProperties;
+
+    @Bean
+    @ConditionalOnProperty(prefix = "custom.outbox", name = "relay-enabled", matchIfMissing = true)
+    public OutboxRelay outboxRelay(OutboxService outboxService, OutboxRelayMessageSender outboxRelayMessageSender) {
+        return new OutboxRelay(outboxService, outboxRelayMessageSender, outboxProperties.getParallelism(),
+                outboxProperties.getBatchSize(), outboxProperties.getPollIntervalMillis(),
+                outboxProperties.getMaxAttempts(), outboxProperties.getRetryBackoffMillis(),
+                outboxProperties.getConfirmTimeoutMillis(), outboxProperties.getLeaseMillis());
+    }
+
+    /**
+     * 发件箱中继的运行指标：最早一条待发送消息的等待时间、已发送数、重试次数、放弃数及被退回数
+     */
+    @Bean
+    public MeterBinder outboxRelayMetrics(ObjectProvider<OutboxRelay> outboxRelayProvider) {
+        return registry -> {
+            OutboxRelay outboxRelay = outboxRelayProvider.getIfAvailable();
+            if (outboxRelay == null) {
+                return;
+            }
+            Gauge.builder("bootz.outbox.lag.millis", outboxRelay, OutboxRelay::getLagMillis).register(registry);
+            FunctionCounter.builder("bootz.outbox.relayed", outboxRelay, OutboxRelay::getRelayedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.outbox.retried", outboxRelay, OutboxRelay::getRetriedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.outbox.exhausted", outboxRelay, OutboxRelay::getExhaustedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.outbox.returned", outboxRelay, OutboxRelay::getReturnedCount)
+                    .register(registry);
+        };
+    }
+
+}
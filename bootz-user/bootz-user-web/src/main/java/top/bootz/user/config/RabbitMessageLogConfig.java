@@ -0,0 +1,74 @@
+package top.bootz.user.config;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import top.bootz.core.base.message.BaseMessageSender;
+import top.bootz.core.log.RabbitMessageLogService;
+import top.bootz.core.log.RabbitMessageLogWriter;
+import top.bootz.core.log.RabbitMessageLogWriterSettings;
+import top.bootz.user.config.properties.RabbitMessageLogProperties;
+
+/**
+ * Rabbitmq消息日志配置：确认超时清理、批量写入器的参数及运行指标
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@Configuration
+public class RabbitMessageLogConfig {
+
+    @Autowired
+    private RabbitMessageLogProperties rabbitMessageLogProperties;
+
+    @Autowired(required = false)
+    private List<BaseMessageSender> messageSenders = Collections.emptyList();
+
+    /**
+     * 静态方法，不依赖本配置类的实例，避免与注入了消息发送器的字段形成循环依赖
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "custom.rabbit-message-log.writer")
+    public static RabbitMessageLogWriterSettings rabbitMessageLogWriterSettings() {
+        return new RabbitMessageLogWriterSettings();
+    }
+
+    /**
+     * 定期把超时未确认的消息移出待确认表，防止broker丢失确认时待确认表无限增长
+     */
+    @Scheduled(fixedDelayString = "${custom.rabbit-message-log.sweep-interval-millis:10000}")
+    public void expireOutstandingConfirms() {
+        for (BaseMessageSender messageSender : messageSenders) {
+            messageSender.expireOutstandingConfirms(rabbitMessageLogProperties.getConfirmTimeoutMillis());
+        }
+    }
+
+    /**
+     * 待确认消息数，以及消息日志写入器的缓冲区长度、丢弃数、写入数及写入失败数
+     */
+    @Bean
+    public MeterBinder rabbitMessageLogMetrics(RabbitMessageLogService rabbitMessageLogService) {
+        return registry -> {
+            Gauge.builder("bootz.rabbit.confirms.outstanding", BaseMessageSender.class,
+                    clz -> BaseMessageSender.getOutstandingConfirmCount()).register(registry);
+            RabbitMessageLogWriter writer = rabbitMessageLogService.getWriter();
+            Gauge.builder("bootz.rabbit.message.log.queued", writer, RabbitMessageLogWriter::getQueuedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.rabbit.message.log.dropped", writer, RabbitMessageLogWriter::getDroppedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.rabbit.message.log.flushed", writer, RabbitMessageLogWriter::getFlushedCount)
+                    .register(registry);
+            FunctionCounter.builder("bootz.rabbit.message.log.failed", writer, RabbitMessageLogWriter::getFailedCount)
+                    .register(registry);
+        };
+    }
+
+}
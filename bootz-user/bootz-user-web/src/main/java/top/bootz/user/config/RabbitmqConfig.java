@@ -9,23 +9,30 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.PropertyMapper;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Scope;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import top.bootz.core.base.message.BatchReceiverSettings;
+import top.bootz.core.base.message.ProcessedMessageFilter;
 import top.bootz.user.commons.constants.RabbitConstants;
+import top.bootz.user.config.properties.MessageDedupProperties;
 
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Rabbitmq 配置
@@ -37,12 +44,37 @@ import java.time.Duration;
 @Configuration
 public class RabbitmqConfig {
 
+    @Autowired
+    private MessageDedupProperties messageDedupProperties;
+
     @Bean
     @Primary
     public MessageConverter jsonMessageConverter(ObjectMapper objectMapper) {
         return new Jackson2JsonMessageConverter(objectMapper);
     }
 
+    /**
+     * 批量消费者的并发数、预取数及批量大小
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "custom.rabbit-receiver")
+    public BatchReceiverSettings batchReceiverSettings() {
+        return new BatchReceiverSettings();
+    }
+
+    /**
+     * 消费端去重过滤器，批量消费者据此跳过已经处理过的重复投递
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "custom.message-dedup", name = "enabled", matchIfMissing = true)
+    public ProcessedMessageFilter processedMessageFilter(ObjectProvider<StringRedisTemplate> redisTemplateProvider) {
+        StringRedisTemplate redisTemplate = messageDedupProperties.isRedisEnabled()
+                ? redisTemplateProvider.getIfAvailable() : null;
+        return new ProcessedMessageFilter(messageDedupProperties.getExpectedInsertions(),
+                messageDedupProperties.getFpp(), redisTemplate,
+                TimeUnit.SECONDS.toMillis(messageDedupProperties.getTtlSeconds()));
+    }
+
     @Configuration
     protected static class RabbitTemplateConfiguration {
 
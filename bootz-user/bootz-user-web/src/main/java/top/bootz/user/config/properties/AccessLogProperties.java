@@ -0,0 +1,79 @@
+package top.bootz.user.config.properties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import top.bootz.core.log.AccessLogPipeline.OverloadPolicy;
+import top.bootz.core.log.CapturePolicy;
+
+/**
+ * 访问日志批量写入管道配置
+ *
+ * @author John
+ */
+
+@Data
+@NoArgsConstructor
+@Validated
+@ConfigurationProperties(prefix = "custom.access-log")
+public class AccessLogProperties {
+
+    /**
+     * 是否启用批量写入管道，关闭时退回到逐条异步保存
+     */
+    private boolean pipelined = true;
+
+    /**
+     * 缓冲区最多容纳的日志条数
+     */
+    @Min(1)
+    private int capacity = 10000;
+
+    /**
+     * 每次批量插入的最大条数
+     */
+    @Min(1)
+    private int batchSize = 200;
+
+    /**
+     * 不足一批时的最长等待时间(毫秒)
+     */
+    @Min(1)
+    private long flushIntervalMillis = 1000L;
+
+    /**
+     * 过载策略：DROP-缓冲区满时丢弃，SAMPLE-缓冲区过半后成功请求的日志按比例采样
+     */
+    @NotNull
+    private OverloadPolicy overloadPolicy = OverloadPolicy.DROP;
+
+    /**
+     * SAMPLE策略下成功请求日志的保留比例
+     */
+    @DecimalMin("0")
+    @DecimalMax("1")
+    private double sampleRatio = 0.1D;
+
+    /**
+     * 默认的请求参数及返回值采集策略
+     */
+    @NotNull
+    private CapturePolicy defaultCapture = new CapturePolicy();
+
+    /**
+     * 按接口指定的采集策略，优先于方法上的注解。key为"简单类名.方法名"或"简单类名"，
+     * 含有"."的key需要写成"[UserController.list]"的形式。引入spring-cloud-context时配置刷新后立即生效，否则需要重启
+     */
+    private Map<String, CapturePolicy> captures = new HashMap<>();
+
+}
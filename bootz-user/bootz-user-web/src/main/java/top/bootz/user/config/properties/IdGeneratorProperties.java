@@ -1,11 +1,14 @@
 package top.bootz.user.config.properties;
 
+import javax.validation.constraints.Min;
+
 import org.hibernate.validator.constraints.Range;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import top.bootz.commons.snowflake.AtomicIdGenerator;
 import top.bootz.commons.snowflake.IdGenerator;
 
 /**
@@ -26,4 +29,42 @@ public class IdGeneratorProperties {
     @Range(min = 0, max = IdGenerator.MAX_DATACENTER_ID)
     private Long dataCenterId;
 
+    /**
+     * 是否使用无锁(CAS)的ID生成器
+     */
+    private boolean lockFree = false;
+
+    /**
+     * 无锁模式下的序列条带数，按线程拆分毫秒内序列以消除线程间竞争，1表示不拆分
+     */
+    @Range(min = 1, max = AtomicIdGenerator.MAX_STRIPES)
+    private int stripes = 1;
+
+    /**
+     * 逻辑时钟允许领先系统时钟的最大毫秒数，大于0时时钟回拨不再阻塞或报错，0表示关闭
+     */
+    @Min(0)
+    private long maxLeadMillis = 0L;
+
+    /**
+     * 是否使用粗粒度时钟(SystemClock后台线程缓存的时间戳)取代System.currentTimeMillis()
+     */
+    private boolean clock = false;
+
+    /**
+     * 是否自动领取workerId和dataCenterId(启动参数或环境变量显式指定时除外)
+     */
+    private boolean autoAssign = false;
+
+    /**
+     * Redis租约时长(毫秒)，心跳线程每隔1/3租约时长续约一次
+     */
+    @Min(3000)
+    private long leaseMillis = 30000L;
+
+    /**
+     * Redis不可用时，本地文件分配器保存槽位的文件路径
+     */
+    private String workerIdFile = System.getProperty("java.io.tmpdir") + "/bootz-snowflake-worker-id";
+
 }
@@ -0,0 +1,54 @@
+package top.bootz.user.config.properties;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 消费端消息去重配置
+ *
+ * @author John
+ */
+
+@Data
+@NoArgsConstructor
+@Validated
+@ConfigurationProperties(prefix = "custom.message-dedup")
+public class MessageDedupProperties {
+
+    /**
+     * 是否跳过已经处理过的重复消息
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每一代布隆过滤器容纳的消息数，每个队列保留两代，只在不使用redis时生效
+     */
+    @Min(1)
+    private int expectedInsertions = 200000;
+
+    /**
+     * 布隆过滤器的误判率
+     */
+    @DecimalMin(value = "0", inclusive = false)
+    @DecimalMax(value = "1", inclusive = false)
+    private double fpp = 0.000001D;
+
+    /**
+     * 是否以redis中的记录为准去重，关闭时只使用本进程内存中的布隆过滤器，命中即视为重复，只适用于单实例部署
+     */
+    private boolean redisEnabled = true;
+
+    /**
+     * redis中已处理记录的最短保留时间(秒)
+     */
+    @Min(1)
+    private long ttlSeconds = 86400L;
+
+}
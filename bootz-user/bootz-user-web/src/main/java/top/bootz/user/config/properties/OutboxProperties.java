@@ -0,0 +1,70 @@
+package top.bootz.user.config.properties;
+
+import javax.validation.constraints.Min;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 消息发件箱中继配置
+ *
+ * @author John
+ */
+
+@Data
+@NoArgsConstructor
+@Validated
+@ConfigurationProperties(prefix = "custom.outbox")
+public class OutboxProperties {
+
+    /**
+     * 是否启动发件箱中继
+     */
+    private boolean relayEnabled = true;
+
+    /**
+     * 中继线程数
+     */
+    @Min(1)
+    private int parallelism = 2;
+
+    /**
+     * 每个线程每次取出并批量发送的最大消息数
+     */
+    @Min(1)
+    private int batchSize = 200;
+
+    /**
+     * 发件箱为空时两次查询之间的间隔(毫秒)
+     */
+    @Min(1)
+    private long pollIntervalMillis = 1000L;
+
+    /**
+     * 每条消息最多尝试发送的次数
+     */
+    @Min(1)
+    private int maxAttempts = 10;
+
+    /**
+     * 发送失败后推迟重试的时间(毫秒)
+     */
+    @Min(0)
+    private long retryBackoffMillis = 5000L;
+
+    /**
+     * 每批消息等待broker确认的超时时间(毫秒)
+     */
+    @Min(1)
+    private long confirmTimeoutMillis = 30000L;
+
+    /**
+     * 中继认领一批消息的时长(毫秒)，须大于发送一批消息所需的时间，进程中途退出时到期后由其他中继重新认领
+     */
+    @Min(1)
+    private long leaseMillis = 300000L;
+
+}
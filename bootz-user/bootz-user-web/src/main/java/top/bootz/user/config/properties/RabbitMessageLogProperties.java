@@ -0,0 +1,29 @@
+package top.bootz.user.config.properties;
+
+import javax.validation.constraints.Min;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Rabbitmq消息日志配置
+ *
+ * @author John
+ */
+
+@Data
+@NoArgsConstructor
+@Validated
+@ConfigurationProperties(prefix = "custom.rabbit-message-log")
+public class RabbitMessageLogProperties {
+
+    /**
+     * 发送后超过该时间(毫秒)仍未收到broker确认的消息记为确认失败
+     */
+    @Min(1)
+    private long confirmTimeoutMillis = 30000L;
+
+}
@@ -0,0 +1,84 @@
+package top.bootz.user.controller.log;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import top.bootz.core.log.AccessLogService;
+import top.bootz.core.log.RabbitMessageLogService;
+import top.bootz.core.supporter.ExportFormat;
+import top.bootz.user.controller.UserBaseController;
+
+/**
+ * 访问日志和消息日志的导出
+ *
+ * @author Zhangq <momogoing@163.com>
+ */
+@RestController
+@RequestMapping(value = "/logs")
+public class LogController extends UserBaseController {
+
+	private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+	private static final List<String> ACCESS_LOG_COLUMNS = Arrays.asList("id", "visitor", "requestIp", "requestUrl",
+			"className", "methodName", "tookMillSeconds", "successed", "errMsg", "createTime");
+
+	private static final List<String> RABBIT_MESSAGE_LOG_COLUMNS = Arrays.asList("id", "message.id", "exchange",
+			"routingKey", "sent", "sentTime", "confirmed", "confirmedTime", "unconfirmedCause", "returned",
+			"returnedTime", "returnedCause", "received", "receivedTime", "createTime");
+
+	@Autowired
+	private AccessLogService accessLogService;
+
+	@Autowired
+	private RabbitMessageLogService rabbitMessageLogService;
+
+	/**
+	 * 流式导出from到to之间的访问日志，从新到旧
+	 *
+	 * @param format jsonl或csv，默认jsonl
+	 */
+	@GetMapping(path = "/access/export")
+	public ResponseEntity<StreamingResponseBody> exportAccessLogs(
+			@RequestParam @DateTimeFormat(pattern = DATE_TIME_PATTERN) LocalDateTime from,
+			@RequestParam @DateTimeFormat(pattern = DATE_TIME_PATTERN) LocalDateTime to,
+			@RequestParam(required = false) String format) {
+		return buildStreamingResponse("access-logs", ExportFormat.of(format), ACCESS_LOG_COLUMNS,
+				action -> accessLogService.forEachBetween(between(from, to), from, to, action));
+	}
+
+	/**
+	 * 流式导出from到to之间的消息日志，从新到旧
+	 *
+	 * @param format jsonl或csv，默认jsonl
+	 */
+	@GetMapping(path = "/rabbit-messages/export")
+	public ResponseEntity<StreamingResponseBody> exportRabbitMessageLogs(
+			@RequestParam @DateTimeFormat(pattern = DATE_TIME_PATTERN) LocalDateTime from,
+			@RequestParam @DateTimeFormat(pattern = DATE_TIME_PATTERN) LocalDateTime to,
+			@RequestParam(required = false) String format) {
+		return buildStreamingResponse("rabbit-message-logs", ExportFormat.of(format), RABBIT_MESSAGE_LOG_COLUMNS,
+				action -> rabbitMessageLogService.forEachBetween(between(from, to), from, to, action));
+	}
+
+	/**
+	 * 分区按从新到旧读取，分区内按主键降序，整体从新到旧；首尾两个分区中超出范围的记录按创建时间过滤掉
+	 */
+	private static Query between(LocalDateTime from, LocalDateTime to) {
+		return Query.query(Criteria.where("createTime").gte(from).lte(to)).with(Sort.by(Direction.DESC, "id"));
+	}
+
+}
@@ -1,5 +1,7 @@
 package top.bootz.user.controller.user;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import javax.servlet.http.HttpServletRequest;
@@ -9,16 +11,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import top.bootz.commons.helper.BeanHelper;
 import top.bootz.commons.helper.RandomHelper;
 import top.bootz.commons.helper.RsaHelper;
 import top.bootz.core.dictionary.GenderEnum;
+import top.bootz.core.supporter.ExportFormat;
 import top.bootz.user.controller.UserBaseController;
 import top.bootz.user.entity.mysql.user.User;
 import top.bootz.user.service.mysql.UserService;
@@ -28,6 +34,12 @@ import top.bootz.user.view.user.User4Add;
 @RequestMapping(value = "/users")
 public class UserController extends UserBaseController {
 
+	/**
+	 * 导出的字段，不包含密码
+	 */
+	private static final List<String> EXPORT_COLUMNS = Arrays.asList("id", "username", "realName", "gender", "mobile",
+			"email", "disable", "lastLoginTime", "createTime");
+
 	@Autowired
 	private UserService userService;
 
@@ -54,4 +66,15 @@ public class UserController extends UserBaseController {
 		return buildCreateSuccessResponse(buildLocation(request, user.getId()));
 	}
 
+	/**
+	 * 流式导出全部用户
+	 *
+	 * @param format jsonl或csv，默认jsonl
+	 */
+	@GetMapping(path = "/export")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) String format) {
+		return buildStreamingResponse("users", ExportFormat.of(format), EXPORT_COLUMNS,
+				action -> userService.forEachUser(null, action));
+	}
+
 }